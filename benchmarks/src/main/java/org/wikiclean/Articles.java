@@ -0,0 +1,106 @@
+/**
+ * WikiClean: A Java Wikipedia markup to plain text converter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wikiclean;
+
+import org.apache.commons.io.IOUtils;
+import org.wikiclean.languages.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Articles of the golden tests, which are bundled with the benchmarks, by language.
+ */
+final class Articles {
+  private static final String[] FILES = { "brwiki-test.xml", "cawiki-test.xml",
+      "dewiki-20130602-id1.xml", "dewiki-20130602-id111.xml", "dewiki-20130602-id5.xml",
+      "dewiki-20130602-id81.xml", "dewiki-20130602-id89.xml", "elwiki-test.xml",
+      "enwiki-20120104-id12.xml", "enwiki-20120104-id1718.xml", "enwiki-20120104-id290.xml",
+      "enwiki-20120104-id303.xml", "enwiki-20120104-id39.xml", "enwiki-20120104-id586.xml",
+      "enwiki-20120104-id655.xml", "eowiki-test.xml", "eswiki-test.xml",
+      "frwiki-20121230-id3.xml", "glwiki-test.xml", "itwiki-test.xml", "knwiki-20180614-id1.xml",
+      "nlwiki-test.xml", "plwiki-test.xml", "ptwiki-test.xml", "ruwiki-test.xml",
+      "ukwiki-test.xml", "zhwiki-20150423-id13.xml" };
+
+  private static final Language[] LANGUAGES = { new Breton(), new Catalan(), new Chinese(),
+      new Dutch(), new English(), new Esperanto(), new French(), new Galician(), new German(),
+      new Greek(), new Italian(), new Kannada(), new Polish(), new Portuguese(), new Russian(),
+      new Spanish(), new Ukrainian() };
+
+  private Articles() {}
+
+  /**
+   * Returns a language.
+   * @param code ISO 639-1 code of the language
+   * @return language
+   */
+  static Language language(String code) {
+    for (Language lang : LANGUAGES) {
+      if (lang.getCode().equals(code)) {
+        return lang;
+      }
+    }
+    throw new IllegalArgumentException("Unknown language: " + code);
+  }
+
+  /**
+   * Returns the articles in a language, as raw XML.
+   * @param code ISO 639-1 code of the language
+   * @return articles
+   * @throws IOException if the articles cannot be read
+   */
+  static List<String> articles(String code) throws IOException {
+    List<String> articles = new ArrayList<>();
+    for (String file : FILES) {
+      if (file.startsWith(code + "wiki")) {
+        try (InputStream in = open(file)) {
+          articles.add(IOUtils.toString(in, StandardCharsets.UTF_8));
+        }
+      }
+    }
+    return articles;
+  }
+
+  /**
+   * Copies a bundled file to a temporary file, e.g., a dump that is read from a file.
+   * @param name name of the bundled file
+   * @return temporary file, which is deleted on exit
+   * @throws IOException if the file cannot be copied
+   */
+  static File copy(String name) throws IOException {
+    File file = File.createTempFile("wikiclean", name);
+    file.deleteOnExit();
+    try (InputStream in = open(name)) {
+      Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+    return file;
+  }
+
+  private static InputStream open(String name) throws IOException {
+    InputStream in = Articles.class.getResourceAsStream("/" + name);
+    if (in == null) {
+      throw new IOException("Not found: " + name);
+    }
+    return in;
+  }
+}
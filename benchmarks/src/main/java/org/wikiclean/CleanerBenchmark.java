@@ -0,0 +1,79 @@
+/**
+ * WikiClean: A Java Wikipedia markup to plain text converter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wikiclean;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cleans whole articles, one operation being all the test articles of a language.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CleanerBenchmark {
+  @Param({ "br", "ca", "de", "el", "en", "eo", "es", "fr", "gl", "it", "kn", "nl", "pl", "pt",
+      "ru", "uk", "zh" })
+  public String language;
+
+  @Param({ "REGEX", "LEXER" })
+  public WikiClean.Engine engine;
+
+  private List<String> articles;
+  private WikiClean cleaner;
+  private final StringBuilder out = new StringBuilder();
+
+  @Setup
+  public void setup() throws IOException {
+    articles = Articles.articles(language);
+    cleaner = new WikiClean.Builder().withLanguage(Articles.language(language))
+        .withEngine(engine).build();
+  }
+
+  @Benchmark
+  public void clean(Blackhole blackhole) {
+    for (String article : articles) {
+      blackhole.consume(cleaner.clean(article));
+    }
+  }
+
+  @Benchmark
+  public void cleanIntoBuffer(Blackhole blackhole) {
+    for (String article : articles) {
+      out.setLength(0);
+      cleaner.clean(article, out);
+      blackhole.consume(out);
+    }
+  }
+}
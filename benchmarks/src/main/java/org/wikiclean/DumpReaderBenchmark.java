@@ -0,0 +1,103 @@
+/**
+ * WikiClean: A Java Wikipedia markup to plain text converter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wikiclean;
+
+import org.apache.tools.bzip2.CBZip2OutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads a small dump, made of copies of the test articles of all languages, either bz2-compressed
+ * or uncompressed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DumpReaderBenchmark {
+  private static final String[] LANGUAGES = { "br", "ca", "de", "el", "en", "eo", "es", "fr", "gl",
+      "it", "kn", "nl", "pl", "pt", "ru", "uk", "zh" };
+
+  @Param({ "bz2", "xml" })
+  public String format;
+
+  @Param({ "10" })
+  public int copies;
+
+  private File dump;
+
+  @Setup
+  public void setup() throws IOException {
+    dump = File.createTempFile("wikiclean", "." + format);
+    try (OutputStream out = open(dump)) {
+      out.write("<mediawiki>\n".getBytes(StandardCharsets.UTF_8));
+      for (int i = 0; i < copies; i++) {
+        for (String language : LANGUAGES) {
+          for (String article : Articles.articles(language)) {
+            out.write(article.getBytes(StandardCharsets.UTF_8));
+          }
+        }
+      }
+      out.write("</mediawiki>\n".getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  private OutputStream open(File file) throws IOException {
+    OutputStream out = new FileOutputStream(file);
+    if (format.equals("bz2")) {
+      // The stream expects the magic number to be written by the caller.
+      out.write('B');
+      out.write('Z');
+      out = new CBZip2OutputStream(out);
+    }
+    return out;
+  }
+
+  @TearDown
+  public void tearDown() {
+    dump.delete();
+  }
+
+  @Benchmark
+  public long stream() throws IOException {
+    return new WikipediaArticlesDump(dump).stream().mapToLong(String::length).sum();
+  }
+
+  @Benchmark
+  public long pages() throws IOException {
+    return new WikipediaArticlesDump(dump).pages().mapToLong(Page::getId).sum();
+  }
+}
@@ -0,0 +1,73 @@
+/**
+ * WikiClean: A Java Wikipedia markup to plain text converter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wikiclean;
+
+import org.apache.commons.lang3.StringEscapeUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodes the entities of the test articles of a language twice, with {@link HtmlEntities} and
+ * with {@code StringEscapeUtils.unescapeHtml4}, which it replaced.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HtmlEntitiesBenchmark {
+  @Param({ "en", "de" })
+  public String language;
+
+  private List<String> articles;
+  private final StringBuilder out = new StringBuilder();
+
+  @Setup
+  public void setup() throws IOException {
+    articles = Articles.articles(language);
+  }
+
+  @Benchmark
+  public void unescapeHtml4Twice(Blackhole blackhole) {
+    for (String article : articles) {
+      blackhole.consume(StringEscapeUtils.unescapeHtml4(StringEscapeUtils.unescapeHtml4(article)));
+    }
+  }
+
+  @Benchmark
+  public void unescapeTwice(Blackhole blackhole) {
+    for (String article : articles) {
+      out.setLength(0);
+      blackhole.consume(HtmlEntities.unescapeTwice(article, out));
+    }
+  }
+}
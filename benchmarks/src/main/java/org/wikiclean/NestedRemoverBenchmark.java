@@ -0,0 +1,96 @@
+/**
+ * WikiClean: A Java Wikipedia markup to plain text converter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wikiclean;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wikiclean.languages.English;
+import org.wikiclean.languages.Language;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Removes deeply nested templates, captions and tables from synthetic markup, in which 100
+ * constructs, each nested {@code depth} deep, are separated by text.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NestedRemoverBenchmark {
+  private static final int CONSTRUCTS = 100;
+
+  @Param({ "1", "10", "100", "1000" })
+  public int depth;
+
+  private final Language lang = new English();
+  private String templates;
+  private String captions;
+  private String tables;
+  private final StringBuilder out = new StringBuilder();
+
+  @Setup
+  public void setup() {
+    templates = nest("{{Infobox ", "| key = value ", "}}");
+    captions = nest("[[File:Image.png|thumb|", "A [[link]] in a caption ", "]]");
+    tables = nest("{| class=\"wikitable\"\n|-\n| cell ", "\n| cell ", "|}");
+  }
+
+  private String nest(String open, String body, String close) {
+    StringBuilder b = new StringBuilder();
+    for (int i = 0; i < CONSTRUCTS; i++) {
+      b.append("Some text between the constructs. ");
+      for (int j = 0; j < depth; j++) {
+        b.append(open);
+      }
+      b.append(body);
+      for (int j = 0; j < depth; j++) {
+        b.append(close);
+      }
+    }
+    return b.toString();
+  }
+
+  @Benchmark
+  public boolean templates() {
+    out.setLength(0);
+    return WikiClean.Stage.TEMPLATES.clean(templates, out, lang);
+  }
+
+  @Benchmark
+  public boolean captions() {
+    out.setLength(0);
+    return WikiClean.Stage.IMAGE_CAPTIONS.clean(captions, out, lang);
+  }
+
+  @Benchmark
+  public boolean tables() {
+    out.setLength(0);
+    return WikiClean.Stage.TABLES.clean(tables, out, lang);
+  }
+}
@@ -0,0 +1,103 @@
+/**
+ * WikiClean: A Java Wikipedia markup to plain text converter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wikiclean;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.wikiclean.languages.Language;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a single cleaning stage on the test articles of a language, as the stages before it left
+ * them. Only English by default; other languages can be chosen with {@code -p language=de,fr}.
+ * The scratch the stage rewrites is reused, and the trigger literals of each article are looked
+ * for once, as when a whole article is cleaned; copying the article into the scratch is the only
+ * work that is measured besides the stage.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StageBenchmark {
+  @Param({ "en" })
+  public String language;
+
+  @Param({ "REFS", "INTER_WIKI_LINKS", "PARENTHETICALS", "UNIT_CONVERSION", "IMAGE_CAPTIONS",
+      "TEMPLATES", "HTML_COMMENTS", "EMPHASIS", "HEADINGS", "CATEGORY_LINKS", "LINKS", "MATH",
+      "GALLERY", "NO_TOC", "INDENTATION", "TABLES", "HTML_ENTITIES", "HTML_TAGS",
+      "MULTIPLE_NEWLINES" })
+  public WikiClean.Stage stage;
+
+  private Language lang;
+  private final List<String> inputs = new ArrayList<>();
+  // Trigger literals that occur in each input.
+  private long[] triggers;
+  private final WikiClean.Scratch scratch = new WikiClean.Scratch();
+
+  @Setup
+  public void setup() throws IOException {
+    lang = Articles.language(language);
+    WikiClean cleaner = new WikiClean.Builder().withLanguage(lang).build();
+    for (String article : Articles.articles(language)) {
+      // The footer is removed before the stages run.
+      StringBuilder text = new StringBuilder();
+      if (!lang.removeFooter(cleaner.getWikiMarkup(article), text)) {
+        text.append(cleaner.getWikiMarkup(article));
+      }
+      for (WikiClean.Stage previous : WikiClean.Stage.values()) {
+        if (previous == stage) {
+          break;
+        }
+        StringBuilder next = new StringBuilder();
+        if (previous.clean(text, next, lang)) {
+          text = next;
+        }
+      }
+      inputs.add(text.toString());
+    }
+    triggers = new long[inputs.size()];
+    for (int i = 0; i < inputs.size(); i++) {
+      scratch.set(inputs.get(i), 0);
+      triggers[i] = scratch.triggers();
+    }
+  }
+
+  @Benchmark
+  public void clean(Blackhole blackhole) {
+    for (int i = 0; i < inputs.size(); i++) {
+      scratch.set(inputs.get(i), triggers[i]);
+      blackhole.consume(stage.clean(scratch, lang));
+      blackhole.consume(scratch.text());
+    }
+  }
+}
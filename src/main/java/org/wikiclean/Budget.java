@@ -0,0 +1,126 @@
+/**
+ * WikiClean: A Java Wikipedia markup to plain text converter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wikiclean;
+
+/**
+ * Limit on the work of cleaning one article, in characters read by each step and in time. Steps
+ * that may read the text more than a few times, i.e., those that use regular expressions that
+ * backtrack, read it through {@link #wrap}, which throws {@link Exceeded} once the limit is
+ * reached. Each step has a limit of its own, so that a step that takes quadratic time on some
+ * markup runs out of budget after reading the text as many times as any step may, rather than as
+ * many times as all of them together. The time is looked at every few thousand characters and
+ * before each step.
+ */
+final class Budget implements CharSequence {
+  // Characters read between two looks at the clock.
+  private static final int CLOCK_INTERVAL = 1 << 14;
+
+  /**
+   * Thrown when the budget of an article is used up. It has no stack trace, and a single instance
+   * is thrown, so that running out of budget costs nothing to report.
+   */
+  static final class Exceeded extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private Exceeded() {
+      super("Cleaning budget exceeded", null, false, false);
+    }
+  }
+
+  private static final Exceeded EXCEEDED = new Exceeded();
+
+  private CharSequence text = "";
+  // Characters that can still be read, besides those left until the next look at the clock.
+  private long steps;
+  private int untilClock;
+  private boolean timed;
+  private long deadline;
+
+  /**
+   * Starts the budget of an article.
+   * @param nanos time the article can take, or 0 for no limit
+   */
+  void start(long nanos) {
+    this.timed = nanos > 0;
+    this.deadline = System.nanoTime() + nanos;
+  }
+
+  /**
+   * Starts the budget of a step, once the time is checked.
+   * @param steps number of characters the step can read
+   * @throws Exceeded if the time is up
+   */
+  void startStep(long steps) {
+    check();
+    this.steps = steps;
+    this.untilClock = 0;
+  }
+
+  /**
+   * Returns a text that reads through this budget.
+   * @param text text to read
+   * @return the text, counted against this budget until the next call
+   */
+  CharSequence wrap(CharSequence text) {
+    this.text = text;
+    return this;
+  }
+
+  /**
+   * Checks whether the time is up.
+   * @throws Exceeded if the time is up
+   */
+  void check() {
+    if (timed && System.nanoTime() - deadline > 0) {
+      throw EXCEEDED;
+    }
+  }
+
+  @Override
+  public char charAt(int index) {
+    if (--untilClock < 0) {
+      refill();
+    }
+    return text.charAt(index);
+  }
+
+  private void refill() {
+    if (steps <= 0) {
+      throw EXCEEDED;
+    }
+    check();
+    int n = (int) Math.min(steps, CLOCK_INTERVAL);
+    steps -= n;
+    // This read counts as well.
+    untilClock = n - 1;
+  }
+
+  @Override
+  public int length() {
+    return text.length();
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    return text.subSequence(start, end);
+  }
+
+  @Override
+  public String toString() {
+    return text.toString();
+  }
+}
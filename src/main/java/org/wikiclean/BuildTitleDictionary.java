@@ -0,0 +1,58 @@
+/**
+ * WikiClean: A Java Wikipedia markup to plain text converter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wikiclean;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.kohsuke.args4j.ParserProperties;
+
+import java.io.File;
+
+/**
+ * Simple program for building a {@link TitleDictionary} from the article titles written by
+ * {@link DumpEnWikiArticleTitles}, to be passed to {@link ExtractEnWikiLinkGraph} instead of them.
+ */
+public class BuildTitleDictionary {
+  private BuildTitleDictionary() {}
+
+  private static final class Args {
+    @Option(name = "-input", metaVar = "[path]", required = true, usage = "article titles")
+    File input;
+
+    @Option(name = "-output", metaVar = "[path]", required = true, usage = "dictionary path")
+    File output;
+  }
+
+  public static void main(String[] argv) throws Exception {
+    final Args args = new Args();
+    CmdLineParser parser = new CmdLineParser(args, ParserProperties.defaults().withUsageWidth(100));
+
+    try {
+      parser.parseArgument(argv);
+    } catch (CmdLineException e) {
+      System.err.println(e.getMessage());
+      parser.printUsage(System.err);
+      System.exit(-1);
+    }
+
+    new TitleDictionary.Builder().addAll(args.input).write(args.output);
+    TitleDictionary titles = TitleDictionary.open(args.output);
+    System.err.println(String.format("Wrote %d titles to %s (%d bytes)", titles.size(),
+        args.output, args.output.length()));
+  }
+}
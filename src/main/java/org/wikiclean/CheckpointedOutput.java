@@ -0,0 +1,342 @@
+/**
+ * WikiClean: A Java Wikipedia markup to plain text converter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wikiclean;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.LongStream;
+
+/**
+ * Output of a command-line tool that is checkpointed together with the dump it is written from.
+ * Every {@link #CHECKPOINT_INTERVAL} articles, the output is flushed to disk and a
+ * {@link DumpCheckpoint} is written. When resuming, the dump continues after the last checkpoint
+ * and the output is truncated to its size at that point, discarding partial output. The output is
+ * either a single file or a {@link ShardedOutput} of part files, or several of these, e.g., one
+ * for each sink of {@link ExtractEnWiki}, which share a checkpoint.
+ */
+final class CheckpointedOutput implements Closeable {
+  static final int CHECKPOINT_INTERVAL = 10000;
+
+  /**
+   * File or files that an output is written to.
+   */
+  interface Target extends Closeable {
+    /**
+     * Opens the files, either anew or to resume after a checkpoint.
+     * @param sizes sizes from {@link #sync()} at the checkpoint, or null to start anew
+     * @throws IOException if any file-related errors are encountered
+     */
+    void open(long[] sizes) throws IOException;
+
+    /**
+     * @param pageId page id of an article
+     * @return writer for the output of the article
+     */
+    PrintWriter writer(long pageId);
+
+    /**
+     * Marks the output of an article as complete.
+     * @throws IOException if any file-related errors are encountered
+     */
+    void commit() throws IOException;
+
+    /**
+     * Writes all output so far to disk, for a checkpoint.
+     * @return sizes of the files in bytes
+     * @throws IOException if any file-related errors are encountered
+     */
+    long[] sync() throws IOException;
+  }
+
+  private final WikipediaArticlesDump dump;
+  private final File checkpoint;
+  private final Target[] targets;
+  private int marked = 0;
+
+  /**
+   * Class constructor.
+   * @param dump dump the output is written from, before any articles are read
+   * @param output path to output file, or null for standard output, which is never truncated
+   * @param checkpoint path to checkpoint file, or null to disable checkpoints
+   * @param resume whether to resume from the checkpoint file, if it exists
+   * @throws IOException if any file-related errors are encountered
+   */
+  CheckpointedOutput(WikipediaArticlesDump dump, File output, File checkpoint, boolean resume)
+      throws IOException {
+    this(dump, Collections.singletonList(new FileTarget(output)), checkpoint, resume);
+  }
+
+  /**
+   * Class constructor for output to part files.
+   * @param dump dump the output is written from, before any articles are read
+   * @param output part files, not opened yet
+   * @param checkpoint path to checkpoint file, or null to disable checkpoints
+   * @param resume whether to resume from the checkpoint file, if it exists
+   * @throws IOException if any file-related errors are encountered
+   */
+  CheckpointedOutput(WikipediaArticlesDump dump, ShardedOutput output, File checkpoint,
+      boolean resume) throws IOException {
+    this(dump, Collections.singletonList(output), checkpoint, resume);
+  }
+
+  /**
+   * Class constructor for several outputs, written from the same articles.
+   * @param dump dump the output is written from, before any articles are read
+   * @param targets files of each output, not opened yet
+   * @param checkpoint path to checkpoint file, or null to disable checkpoints
+   * @param resume whether to resume from the checkpoint file, if it exists
+   * @throws IOException if any file-related errors are encountered
+   */
+  CheckpointedOutput(WikipediaArticlesDump dump, List<? extends Target> targets, File checkpoint,
+      boolean resume) throws IOException {
+    this.dump = dump;
+    this.checkpoint = checkpoint;
+    this.targets = targets.toArray(new Target[0]);
+
+    long[][] sizes = new long[this.targets.length][];
+    if (resume && checkpoint != null && checkpoint.exists()) {
+      DumpCheckpoint last = DumpCheckpoint.read(checkpoint);
+      System.err.println("Resuming from checkpoint: " + last);
+      sizes = split(last.getOutputs(), this.targets.length);
+      dump.resume(last);
+    } else if (resume) {
+      System.err.println("No checkpoint found, starting from the beginning");
+    }
+
+    for (int i = 0; i < this.targets.length; i++) {
+      this.targets[i].open(sizes[i]);
+    }
+  }
+
+  /**
+   * @param output path to output file, or null for standard output, which is never truncated
+   * @return single file that an output is written to, not opened yet
+   */
+  static Target file(File output) {
+    return new FileTarget(output);
+  }
+
+  // The sizes of several outputs are each preceded by their number in a checkpoint; those of a
+  // single output are not, as before there could be several.
+  private static long[] join(long[][] sizes) {
+    if (sizes.length == 1) {
+      return sizes[0];
+    }
+    return Arrays.stream(sizes)
+        .flatMapToLong(s -> LongStream.concat(LongStream.of(s.length), Arrays.stream(s)))
+        .toArray();
+  }
+
+  private static long[][] split(long[] outputs, int targets) throws IOException {
+    if (targets == 1) {
+      return new long[][] {outputs};
+    }
+    long[][] sizes = new long[targets][];
+    int from = 0;
+    for (int i = 0; i < targets; i++) {
+      int n = from < outputs.length ? (int) outputs[from++] : -1;
+      if (n < 0 || from + n > outputs.length) {
+        throw new IOException("Checkpoint does not match the outputs");
+      }
+      sizes[i] = Arrays.copyOfRange(outputs, from, from + n);
+      from += n;
+    }
+    if (from != outputs.length) {
+      throw new IOException("Checkpoint does not match the outputs");
+    }
+    return sizes;
+  }
+
+  /**
+   * @return writer for the output
+   * @throws IllegalStateException if the output is not written to a single file
+   */
+  PrintWriter writer() {
+    if (targets.length != 1 || !(targets[0] instanceof FileTarget)) {
+      throw new IllegalStateException("Output is not a single file");
+    }
+    return ((FileTarget) targets[0]).writer;
+  }
+
+  /**
+   * Returns the writer for the output of an article, which is the same for all articles unless
+   * the output is written to part files.
+   * @param pageId page id of the article
+   * @return writer for the output of the article
+   */
+  PrintWriter writer(long pageId) {
+    return writer(0, pageId);
+  }
+
+  /**
+   * Returns the writer for one of several outputs of an article.
+   * @param output index of the output
+   * @param pageId page id of the article
+   * @return writer for the output of the article
+   */
+  PrintWriter writer(int output, long pageId) {
+    return targets[output].writer(pageId);
+  }
+
+  /**
+   * Marks the output of the last article read from the dump as complete, and writes a checkpoint
+   * every {@link #CHECKPOINT_INTERVAL} articles.
+   * @throws UncheckedIOException if the checkpoint cannot be written
+   */
+  void commit() {
+    commit(mark());
+  }
+
+  /**
+   * Returns a checkpoint after the last article read from the dump every
+   * {@link #CHECKPOINT_INTERVAL} articles, to be passed to {@link #commit(DumpCheckpoint)} once the
+   * output of the article is written. This is for tools that write articles on another thread
+   * than the one they are read on, in the same order; this method is called on the latter.
+   * @return checkpoint after the last article read, or null if none is due
+   */
+  DumpCheckpoint mark() {
+    if (checkpoint == null || ++marked % CHECKPOINT_INTERVAL != 0) {
+      return null;
+    }
+    return dump.checkpoint();
+  }
+
+  /**
+   * Marks the output of an article as complete, and writes the checkpoint taken after it, if any.
+   * @param mark checkpoint from {@link #mark()} after the article was read, or null
+   * @throws UncheckedIOException if the checkpoint cannot be written
+   */
+  void commit(DumpCheckpoint mark) {
+    try {
+      for (Target target : targets) {
+        target.commit();
+      }
+      if (mark == null) {
+        return;
+      }
+
+      // The output has to be on disk before the checkpoint that refers to it.
+      long[][] sizes = new long[targets.length][];
+      for (int i = 0; i < targets.length; i++) {
+        sizes[i] = targets[i].sync();
+      }
+      mark.withOutputs(join(sizes)).write(checkpoint);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Closes the output after all articles have been written, and removes the checkpoint file.
+   * @throws IOException if any file-related errors are encountered
+   */
+  @Override
+  public void close() throws IOException {
+    IOException error = null;
+    for (Target target : targets) {
+      try {
+        target.close();
+      } catch (IOException e) {
+        error = error == null ? e : error;
+      }
+    }
+    if (error != null) {
+      throw error;
+    }
+    if (checkpoint != null) {
+      Files.deleteIfExists(checkpoint.toPath());
+    }
+  }
+
+  // Single file, or standard output.
+  private static final class FileTarget implements Target {
+    private final File file;
+    // Null when writing to standard output.
+    private FileOutputStream stream;
+    private PrintWriter writer;
+
+    private FileTarget(File file) {
+      this.file = file;
+    }
+
+    @Override
+    public void open(long[] sizes) throws IOException {
+      boolean append = false;
+      if (sizes != null && file != null) {
+        truncate(file, sizes.length > 0 ? sizes[0] : 0);
+        append = true;
+      }
+      stream = file == null ? null : new FileOutputStream(file, append);
+      writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+          stream == null ? System.out : stream, StandardCharsets.UTF_8)));
+    }
+
+    private static void truncate(File output, long size) throws IOException {
+      try (FileChannel channel = FileChannel.open(output.toPath(), StandardOpenOption.WRITE)) {
+        if (channel.size() < size) {
+          throw new IOException("Output " + output + " is shorter than at the checkpoint");
+        }
+        channel.truncate(size);
+      }
+    }
+
+    @Override
+    public PrintWriter writer(long pageId) {
+      return writer;
+    }
+
+    @Override
+    public void commit() {}
+
+    @Override
+    public long[] sync() throws IOException {
+      writer.flush();
+      if (writer.checkError()) {
+        throw new IOException("Error writing output");
+      }
+      if (stream == null) {
+        return new long[] {0};
+      }
+      stream.getChannel().force(false);
+      return new long[] {stream.getChannel().position()};
+    }
+
+    @Override
+    public void close() throws IOException {
+      writer.flush();
+      if (stream != null) {
+        writer.close();
+      }
+      if (writer.checkError()) {
+        throw new IOException("Error writing output");
+      }
+    }
+  }
+}
@@ -0,0 +1,185 @@
+/**
+ * WikiClean: A Java Wikipedia markup to plain text converter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wikiclean;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Snapshot of the time a {@link WikiClean} spent on each of its stages, from the statistics it
+ * collects when built with {@link WikiClean.Builder#withStats}. Times are kept in histograms with
+ * four buckets per power of two, so percentiles are accurate to within 25%.
+ */
+public final class CleanerStats {
+  private final Stage article;
+  private final List<Stage> stages;
+
+  CleanerStats(Stage article, List<Stage> stages) {
+    this.article = article;
+    this.stages = Collections.unmodifiableList(stages);
+  }
+
+  /**
+   * Returns the number of articles cleaned.
+   * @return number of articles cleaned
+   */
+  public long getArticles() {
+    return article.getCalls();
+  }
+
+  /**
+   * Returns the statistics of cleaning whole articles, from their markup to the cleaned text.
+   * @return statistics of whole articles
+   */
+  public Stage getArticle() {
+    return article;
+  }
+
+  /**
+   * Returns the statistics of the stages that ran, in order. Besides the stages of the cleaner,
+   * these include removing the footer ({@code FOOTER}) and the lexer ({@code LEXER}).
+   * @return statistics of each stage
+   */
+  public List<Stage> getStages() {
+    return stages;
+  }
+
+  /**
+   * Returns the stages that took the most time in total.
+   * @param n number of stages
+   * @return statistics of at most {@code n} stages, slowest first
+   */
+  public List<Stage> getSlowestStages(int n) {
+    List<Stage> slowest = new ArrayList<>(stages);
+    slowest.sort(Comparator.comparingLong(Stage::getNanos).reversed());
+    return slowest.subList(0, Math.min(n, slowest.size()));
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder b = new StringBuilder();
+    b.append(String.format("%-20s %10s %10s %6s %10s %10s %10s %12s %12s%n", "stage", "calls",
+        "total ms", "%", "mean us", "p50 us", "p99 us", "chars in", "chars out"));
+    for (Stage stage : stages) {
+      append(b, stage);
+    }
+    append(b, article);
+    return b.toString();
+  }
+
+  private void append(StringBuilder b, Stage stage) {
+    b.append(String.format("%-20s %10d %10.1f %6.1f %10.1f %10.1f %10.1f %12d %12d%n",
+        stage.getName(), stage.getCalls(), stage.getNanos() / 1e6,
+        article.getNanos() == 0 ? 0 : 100.0 * stage.getNanos() / article.getNanos(),
+        stage.getMeanNanos() / 1e3, stage.getPercentileNanos(50) / 1e3,
+        stage.getPercentileNanos(99) / 1e3, stage.getCharsIn(), stage.getCharsOut()));
+  }
+
+  /**
+   * Statistics of one stage.
+   */
+  public static final class Stage {
+    private final String name;
+    private final long calls;
+    private final long nanos;
+    private final long charsIn;
+    private final long charsOut;
+    private final long[] histogram;
+
+    Stage(String name, long calls, long nanos, long charsIn, long charsOut, long[] histogram) {
+      this.name = name;
+      this.calls = calls;
+      this.nanos = nanos;
+      this.charsIn = charsIn;
+      this.charsOut = charsOut;
+      this.histogram = histogram;
+    }
+
+    /**
+     * Returns the name of the stage, e.g., the name of a {@link WikiClean.Stage}.
+     * @return name of the stage
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * Returns the number of times the stage ran.
+     * @return number of runs
+     */
+    public long getCalls() {
+      return calls;
+    }
+
+    /**
+     * Returns the total time spent in the stage.
+     * @return total time in nanoseconds
+     */
+    public long getNanos() {
+      return nanos;
+    }
+
+    /**
+     * Returns the mean time of a run of the stage.
+     * @return mean time in nanoseconds
+     */
+    public double getMeanNanos() {
+      return calls == 0 ? 0 : (double) nanos / calls;
+    }
+
+    /**
+     * Returns a percentile of the time of a run of the stage, e.g., 99 for the time that 99% of
+     * the runs took at most.
+     * @param percentile percentile, between 0 and 100
+     * @return upper bound of the percentile in nanoseconds, or 0 if the stage never ran
+     */
+    public long getPercentileNanos(double percentile) {
+      long rank = (long) Math.ceil(calls * Math.min(Math.max(percentile, 0), 100) / 100);
+      long seen = 0;
+      for (int bucket = 0; bucket < histogram.length; bucket++) {
+        seen += histogram[bucket];
+        if (seen >= Math.max(rank, 1)) {
+          return StatsRecorder.upperBound(bucket);
+        }
+      }
+      return 0;
+    }
+
+    /**
+     * Returns the total length of the text the stage was given.
+     * @return number of characters in
+     */
+    public long getCharsIn() {
+      return charsIn;
+    }
+
+    /**
+     * Returns the total length of the text the stage left.
+     * @return number of characters out
+     */
+    public long getCharsOut() {
+      return charsOut;
+    }
+
+    @Override
+    public String toString() {
+      return name + ": " + calls + " calls, " + nanos + " ns";
+    }
+  }
+}
@@ -0,0 +1,36 @@
+/**
+ * WikiClean: A Java Wikipedia markup to plain text converter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wikiclean;
+
+import org.wikiclean.languages.Language;
+
+/**
+ * One step of cleaning an article, e.g., removing tables. {@link WikiClean} runs its stages in
+ * order on the markup of the article, each on the output of the previous one. The built-in stages
+ * are in {@link WikiClean.Stage}; others can be added with {@link WikiClean.Builder#addStage}.
+ */
+@FunctionalInterface
+public interface CleaningStage {
+  /**
+   * Cleans a text.
+   * @param text text, as left by the previous stages
+   * @param out buffer the cleaned text is appended to
+   * @param lang language of the article
+   * @return false if the stage leaves the text as it is, in which case nothing is appended
+   */
+  boolean clean(CharSequence text, StringBuilder out, Language lang);
+}
@@ -0,0 +1,146 @@
+/**
+ * WikiClean: A Java Wikipedia markup to plain text converter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wikiclean;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * Point in a dump from which reading can be resumed, obtained from
+ * {@link WikipediaArticlesDump#checkpoint()} and passed to
+ * {@link WikipediaArticlesDump#resume(DumpCheckpoint)}. Besides the position in the dump, a
+ * checkpoint records the sizes of any output files at that point, so that partial output written
+ * after it can be truncated on resume.
+ */
+public final class DumpCheckpoint {
+  private final long position;
+  private final long pageId;
+  private final long pages;
+  private final long[] outputs;
+
+  /**
+   * Class constructor.
+   * @param position position in the decompressed dump after the last page read, or -1 for
+   *     multistream dumps, which are resumed by page id
+   * @param pageId id of the last page read, or -1 if none
+   * @param pages number of pages read
+   * @param outputs sizes of output files in bytes
+   */
+  public DumpCheckpoint(long position, long pageId, long pages, long... outputs) {
+    this.position = position;
+    this.pageId = pageId;
+    this.pages = pages;
+    this.outputs = outputs.clone();
+  }
+
+  /**
+   * @return position in the decompressed dump after the last page read, or -1 for multistream
+   *     dumps
+   */
+  public long getPosition() {
+    return position;
+  }
+
+  /**
+   * @return id of the last page read, or -1 if none
+   */
+  public long getPageId() {
+    return pageId;
+  }
+
+  /**
+   * @return number of pages read
+   */
+  public long getPages() {
+    return pages;
+  }
+
+  /**
+   * @return sizes of output files in bytes
+   */
+  public long[] getOutputs() {
+    return outputs.clone();
+  }
+
+  /**
+   * Returns a copy of this checkpoint with the given sizes of output files.
+   * @param outputs sizes of output files in bytes
+   * @return a copy of this checkpoint
+   */
+  public DumpCheckpoint withOutputs(long... outputs) {
+    return new DumpCheckpoint(position, pageId, pages, outputs);
+  }
+
+  /**
+   * Writes this checkpoint to a file. The file is replaced atomically, so that it always holds
+   * either the previous or this checkpoint.
+   * @param file path to checkpoint file
+   * @throws IOException if any file-related errors are encountered
+   */
+  public void write(File file) throws IOException {
+    Properties properties = new Properties();
+    properties.setProperty("position", Long.toString(position));
+    properties.setProperty("pageId", Long.toString(pageId));
+    properties.setProperty("pages", Long.toString(pages));
+    properties.setProperty("outputs", Arrays.toString(outputs).replaceAll("[\\[\\] ]", ""));
+
+    Path path = file.getAbsoluteFile().toPath();
+    Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+    try (OutputStream out = Files.newOutputStream(temp)) {
+      properties.store(out, "WikiClean checkpoint");
+    }
+    Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Reads a checkpoint from a file.
+   * @param file path to checkpoint file
+   * @return the checkpoint
+   * @throws IOException if any file-related errors are encountered
+   */
+  public static DumpCheckpoint read(File file) throws IOException {
+    Properties properties = new Properties();
+    try (InputStream in = Files.newInputStream(file.toPath())) {
+      properties.load(in);
+    }
+
+    try {
+      String outputs = properties.getProperty("outputs", "");
+      return new DumpCheckpoint(
+          Long.parseLong(properties.getProperty("position")),
+          Long.parseLong(properties.getProperty("pageId")),
+          Long.parseLong(properties.getProperty("pages")),
+          outputs.isEmpty() ? new long[0] :
+              Arrays.stream(outputs.split(",")).mapToLong(Long::parseLong).toArray());
+    } catch (NumberFormatException | NullPointerException e) {
+      throw new IOException("Invalid checkpoint file: " + file, e);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format("position %d, page id %d, %d pages, outputs %s", position, pageId, pages,
+        Arrays.toString(outputs));
+  }
+}
@@ -20,10 +20,10 @@ import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
 import org.kohsuke.args4j.Option;
 import org.kohsuke.args4j.ParserProperties;
-import org.wikiclean.WikiClean.WikiLanguage;
+import org.wikiclean.languages.English;
+import org.wikiclean.languages.Language;
 
 import java.io.File;
-import java.io.PrintWriter;
 
 /**
  * Simple program for dumping the titles of English Wikipedia articles.
@@ -31,17 +31,32 @@ import java.io.PrintWriter;
 public class DumpEnWikiArticleTitles {
   private DumpEnWikiArticleTitles() {};
 
-  private static final class Args {
+  private static final class Args extends OutputArgs {
     @Option(name = "-input", metaVar = "[path]", required = true, usage = "input path")
     File input;
 
-    @Option(name = "-output", metaVar = "[path]", required = true, usage = "output path")
-    String output;
-
     @Option(name = "-keepRedirects", usage = "keep redirects")
     boolean keepRedirects = false;
   }
 
+  /**
+   * Returns the sink that writes the id and title of each article on a line of its own.
+   * Articles are not cleaned: redirects are told apart by their redirect element, or else by a
+   * redirect magic word at the start of their markup.
+   * @param language language of the articles, whose magic words start redirects
+   * @param keepRedirects whether to write redirects too
+   * @return sink of the articles
+   */
+  static PageSink sink(Language language, boolean keepRedirects) {
+    return (page, text) -> {
+      if (!keepRedirects && (page.isRedirect() || language.isRedirect(page.getWikiMarkup()))) {
+        return null;
+      }
+      return page.getId() + "\t" + page.getTitle().replaceAll("\\n+", " ")
+          + System.lineSeparator();
+    };
+  }
+
   public static void main(String[] argv) throws Exception {
     final Args args = new Args();
     CmdLineParser parser = new CmdLineParser(args, ParserProperties.defaults().withUsageWidth(100));
@@ -54,21 +69,25 @@ public class DumpEnWikiArticleTitles {
       System.exit(-1);
     }
 
-    final WikiClean cleaner = new WikiClean.Builder().withLanguage(WikiLanguage.EN)
-        .withTitle(false).withFooter(false).build();
-
-    PrintWriter writer = new PrintWriter(args.output, "UTF-8");
     WikipediaArticlesDump wikipedia = new WikipediaArticlesDump(args.input);
+    CheckpointedOutput output = args.open(wikipedia, 1, true);
+
+    // Other namespaces and redirects are skipped by the reader, without buffering their text.
+    PageHeaderFilter.Builder filter = new PageHeaderFilter.Builder().withNamespaces(0);
+    if (!args.keepRedirects) {
+      filter.skipRedirects();
+    }
 
-    wikipedia.stream()
-        .filter(page -> !page.contains("<ns>") || page.contains("<ns>0</ns>"))
-        .filter(page -> args.keepRedirects ? true :
-            !cleaner.clean(page).replaceAll("\\n+", " ").startsWith("#REDIRECT"))
+    PageSink sink = sink(new English(), args.keepRedirects);
+    wikipedia.pages(filter.build())
         .forEach(page -> {
-          writer.println(cleaner.getId(page) + "\t" +
-              cleaner.getTitle(page).replaceAll("\\n+", " "));
+          String line = sink.apply(page, PageSink.cleaned(page));
+          if (line != null) {
+            output.writer(page.getId()).print(line);
+          }
+          output.commit();
         });
 
-    writer.close();
+    output.close();
   }
 }
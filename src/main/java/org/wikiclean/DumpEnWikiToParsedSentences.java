@@ -26,7 +26,6 @@ import org.kohsuke.args4j.ParserProperties;
 import org.wikiclean.WikiClean.WikiLanguage;
 
 import java.io.File;
-import java.io.PrintWriter;
 import java.io.Reader;
 import java.io.StringReader;
 import java.util.List;
@@ -37,12 +36,36 @@ import java.util.List;
 public class DumpEnWikiToParsedSentences {
   private DumpEnWikiToParsedSentences() {}
 
-  private static final class Args {
+  private static final class Args extends OutputArgs {
     @Option(name = "-input", metaVar = "[path]", required = true, usage = "input path")
     File input;
+  }
+
+  /**
+   * Returns the sink that writes each sentence of an article on a line of its own, after the
+   * title of the article and the number of the sentence. Redirects are skipped.
+   * @param cleaner cleaner of the articles
+   * @return sink of the articles
+   */
+  static PageSink sink(WikiClean cleaner) {
+    return (page, text) -> {
+      if (cleaner.isRedirect(page)) {
+        return null;
+      }
+      String s = text.apply(cleaner);
 
-    @Option(name = "-output", metaVar = "[path]", required = true, usage = "output path")
-    String output;
+      String title = page.getTitle().replaceAll("\\n+", " ");
+      StringBuilder lines = new StringBuilder();
+      int cnt = 0;
+      Reader reader = new StringReader(s);
+      DocumentPreprocessor dp = new DocumentPreprocessor(reader);
+      for (List<HasWord> sentence : dp) {
+        lines.append(String.format("%s.%04d\t%s\n", title, cnt,
+            SentenceUtils.listToString(sentence)));
+        cnt++;
+      }
+      return lines.toString();
+    };
   }
 
   public static void main(String[] argv) throws Exception {
@@ -60,25 +83,20 @@ public class DumpEnWikiToParsedSentences {
     final WikiClean cleaner = new WikiClean.Builder().withLanguage(WikiLanguage.EN)
         .withTitle(false).withFooter(false).build();
 
-    PrintWriter writer = new PrintWriter(args.output, "UTF-8");
     WikipediaArticlesDump wikipedia = new WikipediaArticlesDump(args.input);
+    CheckpointedOutput output = args.open(wikipedia, 1, true);
 
-    wikipedia.stream()
-        .filter(page -> !page.contains("<ns>") || page.contains("<ns>0</ns>"))
+    PageSink sink = sink(cleaner);
+    // Other namespaces and redirects are skipped by the reader, without buffering their text.
+    wikipedia.pages(new PageHeaderFilter.Builder().withNamespaces(0).skipRedirects().build())
         .forEach(page -> {
-          String s = cleaner.clean(page);
-          if (s.startsWith("#REDIRECT")) return;
-
-          String title = cleaner.getTitle(page).replaceAll("\\n+", " ");
-          int cnt = 0;
-          Reader reader = new StringReader(s);
-          DocumentPreprocessor dp = new DocumentPreprocessor(reader);
-          for (List<HasWord> sentence : dp) {
-            writer.print(String.format("%s.%04d\t%s\n", title, cnt, SentenceUtils.listToString(sentence)));
-            cnt++;
+          String lines = sink.apply(page, PageSink.cleaned(page));
+          if (lines != null) {
+            output.writer(page.getId()).print(lines);
           }
+          output.commit();
         });
 
-    writer.close();
+    output.close();
   }
 }
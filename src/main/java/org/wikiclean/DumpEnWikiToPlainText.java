@@ -23,7 +23,7 @@ import org.kohsuke.args4j.ParserProperties;
 import org.wikiclean.WikiClean.WikiLanguage;
 
 import java.io.File;
-import java.io.PrintWriter;
+import java.util.stream.Stream;
 
 /**
  * Simple program for dumping English Wikipedia articles to plain text, one article per line.
@@ -31,12 +31,35 @@ import java.io.PrintWriter;
 public class DumpEnWikiToPlainText {
   private DumpEnWikiToPlainText() {}
 
-  private static final class Args {
+  private static final class Args extends OutputArgs {
     @Option(name = "-input", metaVar = "[path]", required = true, usage = "input path")
     File input;
 
-    @Option(name = "-output", metaVar = "[path]", required = true, usage = "output path")
-    String output;
+    @Option(name = "-stats", usage = "print the time spent on each cleaning stage at the end")
+    boolean stats = false;
+
+    @Option(name = "-threads", metaVar = "[num]", usage = "number of cleaning threads")
+    int threads = 1;
+
+    @Option(name = "-unordered", usage = "write articles as soon as they are cleaned, "
+        + "not in dump order (no checkpoints)", forbids = "-resume")
+    boolean unordered = false;
+  }
+
+  /**
+   * Returns the sink that writes each article on a line of its own, as its title and plain text.
+   * Redirects are skipped.
+   * @param cleaner cleaner of the articles
+   * @return sink of the articles
+   */
+  static PageSink sink(WikiClean cleaner) {
+    return (page, text) -> {
+      if (cleaner.isRedirect(page)) {
+        return null;
+      }
+      String s = text.apply(cleaner).replaceAll("\\n+", " ");
+      return page.getTitle().replaceAll("\\n+", " ") + "\t" + s + System.lineSeparator();
+    };
   }
 
   public static void main(String[] argv) throws Exception {
@@ -52,20 +75,39 @@ public class DumpEnWikiToPlainText {
     }
 
     final WikiClean cleaner = new WikiClean.Builder().withLanguage(WikiLanguage.EN)
-        .withTitle(false).withFooter(false).build();
+        .withTitle(false).withFooter(false).withStats(args.stats).build();
+    final PageSink sink = sink(cleaner);
 
-    PrintWriter writer = new PrintWriter(args.output, "UTF-8");
     WikipediaArticlesDump wikipedia = new WikipediaArticlesDump(args.input);
+    // Articles written out of order cannot be resumed from.
+    CheckpointedOutput output = args.open(wikipedia, args.threads, !args.unordered);
 
-    wikipedia.stream()
-        .filter(page -> !page.contains("<ns>") || page.contains("<ns>0</ns>"))
-        .forEach(page -> {
-          String s = cleaner.clean(page).replaceAll("\\n+", " ");
-          if (s.startsWith("#REDIRECT")) return;
+    // Other namespaces and redirects are skipped by the reader, without buffering their text.
+    Stream<Page> pages =
+        wikipedia.pages(new PageHeaderFilter.Builder().withNamespaces(0).skipRedirects().build());
+    if (args.threads > 1 || args.unordered) {
+      // The pages are read on this thread, cleaned on the others, and written on yet another.
+      new ParallelPages<String>(Math.max(args.threads, 1), !args.unordered).run(pages.iterator(),
+          output::mark, page -> sink.apply(page, PageSink.cleaned(page)), (id, lines, mark) -> {
+            if (lines != null) {
+              output.writer(id).print(lines);
+            }
+            output.commit(mark);
+          });
+    } else {
+      pages.forEach(page -> {
+        String lines = sink.apply(page, PageSink.cleaned(page));
+        if (lines != null) {
+          output.writer(page.getId()).print(lines);
+        }
+        output.commit();
+      });
+    }
 
-          writer.println(cleaner.getTitle(page).replaceAll("\\n+", " ") + "\t" + s);
-        });
+    output.close();
 
-    writer.close();
+    if (args.stats) {
+      System.err.print(cleaner.getStats());
+    }
   }
 }
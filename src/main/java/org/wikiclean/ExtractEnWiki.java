@@ -0,0 +1,156 @@
+/**
+ * WikiClean: A Java Wikipedia markup to plain text converter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wikiclean;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.kohsuke.args4j.ParserProperties;
+import org.wikiclean.languages.English;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Simple program for extracting several outputs from English Wikipedia in a single pass over the
+ * dump, instead of one pass for each: article titles ({@code titles}), plain text ({@code text}),
+ * sentences ({@code sentences}), and the link graph ({@code links}). Each is written like the
+ * program that extracts it on its own does, to a file or directory of part files of the same name
+ * in the output directory. Articles are cleaned once for all outputs that need the same text.
+ */
+public class ExtractEnWiki {
+  private ExtractEnWiki() {}
+
+  private static final class Args extends OutputArgs {
+    @Option(name = "-input", metaVar = "[path]", required = true, usage = "input path")
+    File input;
+
+    @Option(name = "-sinks", metaVar = "[names]", required = true,
+        usage = "comma-separated outputs to extract: titles, text, sentences, links")
+    String sinks;
+
+    @Option(name = "-titles", metaVar = "[path]",
+        usage = "article titles, or a dictionary of them, for the link graph")
+    File titles;
+
+    @Option(name = "-keepRedirects", usage = "keep redirects in the titles")
+    boolean keepRedirects = false;
+
+    @Option(name = "-threads", metaVar = "[num]", usage = "number of cleaning threads")
+    int threads = 1;
+  }
+
+  public static void main(String[] argv) throws Exception {
+    final Args args = new Args();
+    CmdLineParser parser = new CmdLineParser(args, ParserProperties.defaults().withUsageWidth(100));
+
+    try {
+      parser.parseArgument(argv);
+    } catch (CmdLineException e) {
+      System.err.println(e.getMessage());
+      parser.printUsage(System.err);
+      System.exit(-1);
+    }
+
+    // Sinks that clean articles the same way share a cleaner, so that each article is cleaned once.
+    final WikiClean cleaner = new WikiClean.Builder().withLanguage(new English())
+        .withTitle(false).withFooter(false).build();
+    final WikiClean linkCleaner = new WikiClean.Builder().keepLinks().build();
+
+    Set<String> names = new LinkedHashSet<>();
+    List<PageSink> sinks = new ArrayList<>();
+    boolean redirects = false;
+    for (String name : args.sinks.split(",")) {
+      if (!names.add(name)) {
+        System.err.println("Sink given more than once: " + name);
+        System.exit(-1);
+      }
+      switch (name) {
+        case "titles":
+          sinks.add(DumpEnWikiArticleTitles.sink(cleaner.getLanguage(), args.keepRedirects));
+          redirects |= args.keepRedirects;
+          break;
+        case "text":
+          sinks.add(DumpEnWikiToPlainText.sink(cleaner));
+          break;
+        case "sentences":
+          sinks.add(DumpEnWikiToParsedSentences.sink(cleaner));
+          break;
+        case "links":
+          if (args.titles == null) {
+            System.err.println("Option \"-titles\" is required for the link graph");
+            parser.printUsage(System.err);
+            System.exit(-1);
+          }
+          sinks.add(ExtractEnWikiLinkGraph.sink(linkCleaner,
+              TitleDictionary.load(args.titles), new AtomicInteger()));
+          redirects = true;
+          break;
+        default:
+          System.err.println("Unknown sink: " + name);
+          parser.printUsage(System.err);
+          System.exit(-1);
+      }
+    }
+
+    WikipediaArticlesDump wikipedia = new WikipediaArticlesDump(args.input);
+    CheckpointedOutput output =
+        args.open(wikipedia, new ArrayList<>(names), Math.max(args.threads, 1), true);
+
+    // Other namespaces, and redirects unless a sink needs them, are skipped by the reader.
+    PageHeaderFilter.Builder filter = new PageHeaderFilter.Builder().withNamespaces(0);
+    if (!redirects) {
+      filter.skipRedirects();
+    }
+    Stream<Page> pages = wikipedia.pages(filter.build());
+
+    Function<Page, String[]> worker = page -> {
+      Function<WikiClean, String> text = PageSink.cleaned(page);
+      String[] lines = new String[sinks.size()];
+      for (int i = 0; i < lines.length; i++) {
+        lines[i] = sinks.get(i).apply(page, text);
+      }
+      return lines;
+    };
+    ParallelPages.Writer<String[]> writer = (id, lines, mark) -> {
+      for (int i = 0; i < lines.length; i++) {
+        if (lines[i] != null) {
+          output.writer(i, id).print(lines[i]);
+        }
+      }
+      output.commit(mark);
+    };
+
+    if (args.threads > 1) {
+      // The pages are read on this thread, cleaned on the others, and written on yet another.
+      new ParallelPages<String[]>(args.threads, true).run(pages.iterator(), output::mark, worker,
+          writer);
+    } else {
+      for (Page page : (Iterable<Page>) pages::iterator) {
+        writer.write(page.getId(), worker.apply(page), output.mark());
+      }
+    }
+
+    output.close();
+  }
+}
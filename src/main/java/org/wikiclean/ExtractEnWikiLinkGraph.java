@@ -21,13 +21,8 @@ import org.kohsuke.args4j.CmdLineParser;
 import org.kohsuke.args4j.Option;
 import org.kohsuke.args4j.ParserProperties;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.PrintStream;
-import java.io.PrintWriter;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.TreeSet;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -36,21 +31,19 @@ import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 public class ExtractEnWikiLinkGraph {
-  private static final class Args {
+  private static final class Args extends OutputArgs {
     @Option(name = "-input", metaVar = "[path]", required = true, usage = "input path")
     File input;
 
-    @Option(name = "-titles", metaVar = "[path]", required = true, usage = "article titles")
+    @Option(name = "-titles", metaVar = "[path]", required = true,
+        usage = "article titles, or a dictionary of them built by BuildTitleDictionary")
     File titles;
-
-    @Option(name = "-output", metaVar = "[path]", required = true, usage = "output path")
-    String output;
   }
 
   private static final Pattern LINKS1 = Pattern.compile("\\[\\[([^\\]]+)\\|([^\\]]+)\\]\\]");
   private static final Pattern LINKS2 = Pattern.compile("\\[\\[([^\\]]+)\\]\\]");
 
-  private static Set<Integer> extractLinks(String s, Map<String, Integer> titles) {
+  private static Set<Integer> extractLinks(String s, TitleDictionary titles) {
     s = LINKS1.matcher(s).replaceAll("[[$1]]");
 
     Set<String> links2 = new TreeSet<>();
@@ -61,31 +54,51 @@ public class ExtractEnWikiLinkGraph {
 
     final Set<Integer> ids = new TreeSet<>();
     links2.forEach(target -> {
-      if (titles.containsKey(target)) {
-        ids.add(titles.get(target));
-      } else {
-        // https://en.wikipedia.org/wiki/cloud redirects automatically to
-        // https://en.wikipedia.org/wiki/Cloud
-        String initialCaps = target.substring(0, 1).toUpperCase() + target.substring(1);
-        if (titles.containsKey(initialCaps)) {
-          ids.add(titles.get(initialCaps));
-        } else if (target.contains("_")) {
-          // Sometimes spaces are replaced with underscores.
-          String underscoresRemoved = target.replaceAll("_", " ");
-          if (titles.containsKey(underscoresRemoved)) {
-            ids.add(titles.get(underscoresRemoved));
-          } else {
-            System.out.println(String.format(" - warning: target not found for '%s'", target));
-          }
+      int id = titles.get(target);
+      if (id >= 0) {
+        ids.add(id);
+        return;
+      }
+      // https://en.wikipedia.org/wiki/cloud redirects automatically to
+      // https://en.wikipedia.org/wiki/Cloud
+      String initialCaps = target.substring(0, 1).toUpperCase() + target.substring(1);
+      id = titles.get(initialCaps);
+      if (id >= 0) {
+        ids.add(id);
+      } else if (target.contains("_")) {
+        // Sometimes spaces are replaced with underscores.
+        String underscoresRemoved = target.replaceAll("_", " ");
+        id = titles.get(underscoresRemoved);
+        if (id >= 0) {
+          ids.add(id);
         } else {
           System.out.println(String.format(" - warning: target not found for '%s'", target));
         }
+      } else {
+        System.out.println(String.format(" - warning: target not found for '%s'", target));
       }
     });
 
     return ids;
   }
 
+  /**
+   * Returns the sink that writes the id of each article on a line of its own, followed by the ids
+   * of the articles it links to.
+   * @param cleaner cleaner of the articles, which keeps links
+   * @param titles ids of the articles by title
+   * @param edges number of links written, which is added to
+   * @return sink of the articles
+   */
+  static PageSink sink(WikiClean cleaner, TitleDictionary titles, AtomicInteger edges) {
+    return (page, text) -> {
+      Set<Integer> ids = extractLinks(text.apply(cleaner), titles);
+      edges.getAndAdd(ids.size());
+      return page.getId() + "\t" + ids.stream().map(n -> n.toString())
+          .collect(Collectors.joining("\t")) + System.lineSeparator();
+    };
+  }
+
   /**
    * Simple program prints out all cleaned articles.
    * @param argv command-line argument
@@ -103,41 +116,30 @@ public class ExtractEnWikiLinkGraph {
       System.exit(-1);
     }
 
-    final Map<String, Integer> titles = new HashMap<>();
-    BufferedReader reader = new BufferedReader(new FileReader(args.titles));
-    String line = reader.readLine();
-    while (line != null) {
-      String arr[] = line.split("\\t");
-      titles.put(arr[1], Integer.parseInt(arr[0]));
-      line = reader.readLine();
-    }
-    reader.close();
+    // A dictionary file is mapped into memory rather than loaded.
+    final TitleDictionary titles = TitleDictionary.load(args.titles);
     System.out.println("Number of article titles loaded: " + titles.size());
 
     PrintStream out = new PrintStream(System.out, true, "UTF-8");
-    PrintWriter writer = new PrintWriter(args.output, "UTF-8");
-
     WikipediaArticlesDump wikipedia = new WikipediaArticlesDump(args.input);
+    CheckpointedOutput output = args.open(wikipedia, 1, true);
     WikiClean cleaner = new WikiClean.Builder().keepLinks().build();
 
     AtomicInteger vertices = new AtomicInteger();
     AtomicInteger edges = new AtomicInteger();
-
-    wikipedia.stream()
-        // See https://en.wikipedia.org/wiki/Wikipedia:Namespace
-        .filter(s -> !s.contains("<ns>") || s.contains("<ns>0</ns>"))
-        .forEach(s -> {
-          String title = cleaner.getTitle(s);
-          String id = cleaner.getId(s);
-          out.println(String.format("# Processing article '%s', id = %s", title, id));
-          Set<Integer> ids = extractLinks(cleaner.clean(s), titles);
-          writer.println(id + "\t" +
-              ids.stream().map(n -> n.toString()).collect(Collectors.joining("\t")));
+    PageSink sink = sink(cleaner, titles, edges);
+
+    // See https://en.wikipedia.org/wiki/Wikipedia:Namespace
+    wikipedia.pages(new PageHeaderFilter.Builder().withNamespaces(0).build())
+        .forEach(page -> {
+          out.println(String.format("# Processing article '%s', id = %d", page.getTitle(),
+              page.getId()));
+          output.writer(page.getId()).print(sink.apply(page, PageSink.cleaned(page)));
           vertices.incrementAndGet();
-          edges.getAndAdd(ids.size());
+          output.commit();
         });
 
-    writer.close();
+    output.close();
     out.println(String.format("Size of graph: %d vertices, %d edges", vertices, edges));
     out.close();
   }
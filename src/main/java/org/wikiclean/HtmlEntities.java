@@ -0,0 +1,221 @@
+/**
+ * WikiClean: A Java Wikipedia markup to plain text converter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wikiclean;
+
+import org.apache.commons.lang3.text.translate.EntityArrays;
+
+import java.util.Arrays;
+
+/**
+ * Decoder of HTML 4 entities, which gives the same results as
+ * {@code StringEscapeUtils.unescapeHtml4}, with the named entities looked up in a trie that is
+ * built once. Numeric entities that are not valid code points are left as they are.
+ */
+final class HtmlEntities {
+  private static final Node NAMES = new Node();
+
+  static {
+    for (String[][] entities : new String[][][] { EntityArrays.BASIC_UNESCAPE(),
+        EntityArrays.ISO8859_1_UNESCAPE(), EntityArrays.HTML40_EXTENDED_UNESCAPE() }) {
+      for (String[] entity : entities) {
+        // Entities are "&name;", and all decode to a single character.
+        NAMES.add(entity[0].substring(1, entity[0].length() - 1), entity[1].charAt(0));
+      }
+    }
+  }
+
+  private HtmlEntities() {}
+
+  /**
+   * Decodes the entities in a string.
+   * @param s string
+   * @return decoded string, or {@code s} itself if it has no entities
+   */
+  static String unescape(String s) {
+    if (s == null || s.indexOf('&') < 0) {
+      return s;
+    }
+    StringBuilder out = new StringBuilder(s.length());
+    return unescape(s, out) < 0 ? s : out.toString();
+  }
+
+  /**
+   * Decodes the entities in a text, and then the entities that this reveals, e.g.,
+   * {@code &amp;amp;lt;} becomes {@code <}, which is the same as decoding the text twice. The text
+   * is decoded in one pass, after which the output is decoded again in place, but only from the
+   * first {@code &} in it, if any.
+   * @param s text
+   * @param out buffer the decoded text is appended to
+   * @return false if the text has no entities, in which case nothing is appended
+   */
+  static boolean unescapeTwice(CharSequence s, StringBuilder out) {
+    int amp = unescape(s, out);
+    if (amp < 0) {
+      return false;
+    }
+
+    int w = amp;
+    for (int r = amp; r < out.length(); ) {
+      char c = out.charAt(r);
+      long entity = c == '&' ? entity(out, r) : 0;
+      if (entity == 0) {
+        out.setCharAt(w++, c);
+        r++;
+        continue;
+      }
+      int codePoint = (int) entity;
+      if (Character.isBmpCodePoint(codePoint)) {
+        out.setCharAt(w++, (char) codePoint);
+      } else {
+        out.setCharAt(w++, Character.highSurrogate(codePoint));
+        out.setCharAt(w++, Character.lowSurrogate(codePoint));
+      }
+      r += (int) (entity >>> 32);
+    }
+    out.setLength(w);
+    return true;
+  }
+
+  // Decodes the text once into out. Returns the position in out of the first '&' of the output,
+  // which is out.length() if there is none, or -1 if there were no entities, in which case out is
+  // left as it was.
+  private static int unescape(CharSequence s, StringBuilder out) {
+    int start = out.length();
+    int amp = -1;
+    boolean decoded = false;
+    int from = 0;
+    for (int i = WikiClean.indexOf(s, "&", 0); i >= 0; i = WikiClean.indexOf(s, "&", from)) {
+      long entity = entity(s, i);
+      if (entity == 0) {
+        if (amp < 0) {
+          amp = out.length() + i - from;
+        }
+        out.append(s, from, i + 1);
+        from = i + 1;
+        continue;
+      }
+      out.append(s, from, i);
+      if ((int) entity == '&' && amp < 0) {
+        amp = out.length();
+      }
+      out.appendCodePoint((int) entity);
+      from = i + (int) (entity >>> 32);
+      decoded = true;
+    }
+
+    if (!decoded) {
+      out.setLength(start);
+      return -1;
+    }
+    out.append(s, from, s.length());
+    return amp < 0 ? out.length() : amp;
+  }
+
+  // Returns the length of the entity that starts at position i in the upper half, and the code
+  // point it stands for in the lower half, or 0 if there is no entity.
+  private static long entity(CharSequence s, int i) {
+    int codePoint;
+    int end;
+    if (i + 1 < s.length() && s.charAt(i + 1) == '#') {
+      // Same as NumericEntityUnescaper, which requires at least one character after "&#".
+      if (i >= s.length() - 2) {
+        return 0;
+      }
+      int j = i + 2;
+      int radix = 10;
+      if (s.charAt(j) == 'x' || s.charAt(j) == 'X') {
+        radix = 16;
+        j++;
+      }
+      end = j;
+      long value = 0;
+      int digit;
+      while (end < s.length() && (digit = hexDigit(s.charAt(end))) >= 0) {
+        // As in NumericEntityUnescaper, hexadecimal digits end decimal entities too.
+        if (digit >= radix) {
+          return 0;
+        }
+        value = Math.min(value * radix + digit, Character.MAX_CODE_POINT + 1);
+        end++;
+      }
+      if (end == j || end == s.length() || s.charAt(end) != ';'
+          || value > Character.MAX_CODE_POINT) {
+        return 0;
+      }
+      codePoint = (int) value;
+    } else {
+      Node node = NAMES;
+      end = i + 1;
+      while (end < s.length() && (node.value < 0 || s.charAt(end) != ';')) {
+        node = node.child(s.charAt(end));
+        if (node == null) {
+          return 0;
+        }
+        end++;
+      }
+      if (end == s.length()) {
+        return 0;
+      }
+      codePoint = node.value;
+    }
+    return (long) (end + 1 - i) << 32 | codePoint;
+  }
+
+  private static int hexDigit(char c) {
+    if (c >= '0' && c <= '9') {
+      return c - '0';
+    } else if (c >= 'a' && c <= 'f') {
+      return c - 'a' + 10;
+    } else if (c >= 'A' && c <= 'F') {
+      return c - 'A' + 10;
+    }
+    return -1;
+  }
+
+  private static final class Node {
+    private char[] chars = new char[0];
+    private Node[] children = new Node[0];
+    private int value = -1;
+
+    private void add(String name, char value) {
+      Node node = this;
+      for (int i = 0; i < name.length(); i++) {
+        char c = name.charAt(i);
+        Node child = node.child(c);
+        if (child == null) {
+          child = new Node();
+          int n = node.chars.length;
+          node.chars = Arrays.copyOf(node.chars, n + 1);
+          node.children = Arrays.copyOf(node.children, n + 1);
+          node.chars[n] = c;
+          node.children[n] = child;
+        }
+        node = child;
+      }
+      node.value = value;
+    }
+
+    private Node child(char c) {
+      for (int i = 0; i < chars.length; i++) {
+        if (chars[i] == c) {
+          return children[i];
+        }
+      }
+      return null;
+    }
+  }
+}
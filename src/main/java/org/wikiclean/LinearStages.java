@@ -0,0 +1,400 @@
+/**
+ * WikiClean: A Java Wikipedia markup to plain text converter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wikiclean;
+
+import static org.wikiclean.WikiClean.indexOf;
+
+/**
+ * Versions of the {@link WikiClean.Stage}s whose regular expressions can backtrack, which take time
+ * linear in the length of the text whatever the markup. They are for articles that run out of
+ * their budget, and clean them much like the regular expressions, but not always exactly alike:
+ * a delimiter that is never closed, e.g., is looked for only once instead of once per opening.
+ */
+final class LinearStages {
+  private LinearStages() {
+  }
+
+  /**
+   * Removes references, e.g. {@code <ref>...</ref>}, like {@link WikiClean.Stage#REFS}.
+   * @param s text
+   * @param out buffer the text is rewritten to
+   * @return false if there is nothing to remove, in which case nothing is appended
+   */
+  static boolean removeRefs(CharSequence s, StringBuilder out) {
+    int from = 0;
+    // First "&lt;/ref&gt;" at or after the last reference, or -1 if there is none.
+    int close = 0;
+    for (int i = indexOf(s, "&lt;ref", 0); i >= 0; i = indexOf(s, "&lt;ref", from)) {
+      int tagEnd = indexOf(s, "&gt;", i + 7);
+      if (tagEnd < 0) {
+        break;
+      }
+      int end = tagEnd + 4;
+      if (s.charAt(tagEnd - 1) != '/') {
+        if (close >= 0 && close < tagEnd) {
+          close = indexOf(s, "&lt;/ref&gt;", tagEnd);
+        }
+        if (close >= 0) {
+          end = close + 12;
+        }
+      }
+      out.append(s, from, i);
+      from = end;
+    }
+    return finish(s, from, out);
+  }
+
+  /**
+   * Removes HTML comments, like {@link WikiClean.Stage#HTML_COMMENTS}.
+   * @param s text
+   * @param out buffer the text is rewritten to
+   * @return false if there is nothing to remove, in which case nothing is appended
+   */
+  static boolean removeHtmlComments(CharSequence s, StringBuilder out) {
+    int from = 0;
+    for (int i = indexOf(s, "!--", 0); i >= 0; ) {
+      int start = i >= 1 && s.charAt(i - 1) == '<' ? i - 1
+          : i >= 4 && startsWith(s, "&lt;", i - 4) ? i - 4
+          : i >= 5 && startsWith(s, "&#60;", i - 5) ? i - 5 : -1;
+      if (start < from) {
+        i = indexOf(s, "!--", i + 3);
+        continue;
+      }
+      int end = -1;
+      for (int j = indexOf(s, "--", i + 3); j >= 0 && end < 0; j = indexOf(s, "--", j + 1)) {
+        end = startsWith(s, ">", j + 2) ? j + 3
+            : startsWith(s, "&gt;", j + 2) ? j + 6
+            : startsWith(s, "&#62;", j + 2) ? j + 7 : -1;
+      }
+      if (end < 0) {
+        // No later comment can be closed either.
+        break;
+      }
+      out.append(s, from, start);
+      from = end;
+      i = indexOf(s, "!--", end);
+    }
+    return finish(s, from, out);
+  }
+
+  /**
+   * Removes pronunciations, e.g. {@code ({{IPA|...}})}, like {@link WikiClean.Stage#PARENTHETICALS}.
+   * @param s text
+   * @param out buffer the text is rewritten to
+   * @return false if there is nothing to remove, in which case nothing is appended
+   */
+  static boolean removeParentheticals(CharSequence s, StringBuilder out) {
+    int from = 0;
+    // First '}' after the last template.
+    int close = -1;
+    for (int i = indexOf(s, "{{IPA", 0); i >= 0; ) {
+      if (close <= i + 5) {
+        close = next(s, '}', i + 5);
+      }
+      if (close < 0) {
+        break;
+      }
+      // With parentheses or brackets around, which are removed as well, or without.
+      boolean enclosed = (startsWith(s, " (", i - 2) || startsWith(s, " [", i - 2))
+          && (startsWith(s, ")", close + 2) || startsWith(s, "]", close + 2));
+      int start = enclosed ? i - 2 : startsWith(s, " ", i - 1) ? i - 1 : -1;
+      if (start < from || close == i + 5 || !startsWith(s, "}}", close)) {
+        i = indexOf(s, "{{IPA", i + 1);
+        continue;
+      }
+      out.append(s, from, start);
+      from = enclosed ? close + 3 : close + 2;
+      i = indexOf(s, "{{IPA", from);
+    }
+    return finish(s, from, out);
+  }
+
+  /**
+   * Replaces unit conversions, e.g. {@code {{convert|5|km}}}, by the value and the unit, like
+   * {@link WikiClean.Stage#UNIT_CONVERSION}.
+   * @param s text
+   * @param out buffer the text is rewritten to
+   * @return false if there is nothing to replace, in which case nothing is appended
+   */
+  static boolean fixUnitConversion(CharSequence s, StringBuilder out) {
+    int n = s.length();
+    int from = 0;
+    // First '}' after the last unit.
+    int close = -1;
+    for (int i = indexOf(s, "{{convert|", 0); i >= 0; ) {
+      int digits = i + 10;
+      int unit = digits;
+      while (unit < n && s.charAt(unit) >= '0' && s.charAt(unit) <= '9') {
+        unit++;
+      }
+      int end = unit > digits && startsWith(s, "|", unit) ? unit + 1 : n;
+      while (end < n && s.charAt(end) != '|' && !startsWith(s, "}}", end)) {
+        end++;
+      }
+      if (end == n || end == unit + 1) {
+        i = indexOf(s, "{{convert|", i + 1);
+        continue;
+      }
+
+      int after = end + 2;
+      if (s.charAt(end) == '|') {
+        // Options follow the unit.
+        if (close <= end) {
+          close = next(s, '}', end + 1);
+          if (close < 0) {
+            // No later conversion can be closed either.
+            break;
+          }
+        }
+        if (close == end + 1 || !startsWith(s, "}}", close)) {
+          i = indexOf(s, "{{convert|", i + 1);
+          continue;
+        }
+        after = close + 2;
+      }
+      out.append(s, from, i).append(s, digits, unit).append(' ').append(s, unit + 1, end);
+      from = after;
+      i = indexOf(s, "{{convert|", from);
+    }
+    return finish(s, from, out);
+  }
+
+  /**
+   * Removes math formulas, like {@link WikiClean.Stage#MATH}.
+   * @param s text
+   * @param out buffer the text is rewritten to
+   * @return false if there is nothing to remove, in which case nothing is appended
+   */
+  static boolean removeMath(CharSequence s, StringBuilder out) {
+    return removeSpans(s, out, "&lt;math&gt;", "&lt;/math&gt;");
+  }
+
+  /**
+   * Removes galleries, like {@link WikiClean.Stage#GALLERY}.
+   * @param s text
+   * @param out buffer the text is rewritten to
+   * @return false if there is nothing to remove, in which case nothing is appended
+   */
+  static boolean removeGallery(CharSequence s, StringBuilder out) {
+    return removeSpans(s, out, "&lt;gallery&gt;", "&lt;/gallery&gt;");
+  }
+
+  // Removes everything from 'open' to the next 'close', both matched ignoring case.
+  private static boolean removeSpans(CharSequence s, StringBuilder out, String open, String close) {
+    int from = 0;
+    for (int i = indexOfIgnoreCase(s, open, 0); i >= 0; i = indexOfIgnoreCase(s, open, from)) {
+      int end = indexOfIgnoreCase(s, close, i + open.length());
+      if (end < 0) {
+        break;
+      }
+      out.append(s, from, i);
+      from = end + close.length();
+    }
+    return finish(s, from, out);
+  }
+
+  /**
+   * Replaces links to other Wikipedias by a space, like {@link WikiClean.Stage#INTER_WIKI_LINKS}.
+   * @param s text
+   * @param out buffer the text is rewritten to
+   * @return false if there is nothing to replace, in which case nothing is appended
+   */
+  static boolean removeInterWikiLinks(CharSequence s, StringBuilder out) {
+    int n = s.length();
+    int from = 0;
+    // First '|' or ']' at or after the last prefix.
+    int stop = -1;
+    for (int i = indexOf(s, "[[", 0); i >= 0; ) {
+      int colon = i + 2;
+      while (colon < n && (s.charAt(colon) >= 'a' && s.charAt(colon) <= 'z'
+          || s.charAt(colon) == '-')) {
+        colon++;
+      }
+      if (colon == i + 2 || colon == n || s.charAt(colon) != ':') {
+        i = indexOf(s, "[[", i + 1);
+        continue;
+      }
+      if (stop <= colon) {
+        stop = colon + 1;
+        while (stop < n && s.charAt(stop) != '|' && s.charAt(stop) != ']') {
+          stop++;
+        }
+      }
+      if (stop == colon + 1 || !startsWith(s, "]]", stop)) {
+        i = indexOf(s, "[[", i + 1);
+        continue;
+      }
+      out.append(s, from, i).append(' ');
+      from = stop + 2;
+      i = indexOf(s, "[[", from);
+    }
+    return finish(s, from, out);
+  }
+
+  /**
+   * Removes link markup, keeping the text of the links, like {@link WikiClean.Stage#LINKS}.
+   * @param s text
+   * @param out buffer the text is rewritten to
+   * @return false if there is nothing to remove, in which case nothing is appended
+   */
+  static boolean removeLinks(CharSequence s, StringBuilder out) {
+    int n = s.length();
+    int from = 0;
+    // First ']' at or after the last link, and the last '|' between the link and it.
+    int close = -1;
+    int pipe = -1;
+    for (int i = 0; i + 1 < n; ) {
+      char c = s.charAt(i);
+      if (c == ']' && s.charAt(i + 1) == ']') {
+        out.append(s, from, i);
+        from = i += 2;
+      } else if (c == '[' && s.charAt(i + 1) == '[') {
+        if (close < i + 2) {
+          pipe = -1;
+          for (close = i + 2; close < n && s.charAt(close) != ']'; close++) {
+            if (s.charAt(close) == '|') {
+              pipe = close;
+            }
+          }
+        }
+        out.append(s, from, i);
+        if (pipe > i + 2 && pipe + 1 < close && startsWith(s, "]]", close)) {
+          // The text of the link is kept, and the markup in it removed, from the "]]" on.
+          from = i = pipe + 1;
+        } else {
+          from = i += 2;
+        }
+      } else {
+        i++;
+      }
+    }
+    return finish(s, from, out);
+  }
+
+  /**
+   * Removes heading markup, keeping the headings, like {@link WikiClean.Stage#HEADINGS}.
+   * @param s text
+   * @param out buffer the text is rewritten to
+   * @return false if there is nothing to remove, in which case nothing is appended
+   */
+  static boolean removeHeadings(CharSequence s, StringBuilder out) {
+    int n = s.length();
+    int from = 0;
+    for (int i = next(s, '=', 0); i >= 0; ) {
+      int run = i;
+      while (run < n && s.charAt(run) == '=') {
+        run++;
+      }
+      int start = run < n && Character.isWhitespace(s.charAt(run)) ? run + 1 : run;
+      int end = start;
+      while (end < n && s.charAt(end) != '=' && s.charAt(end) != '\n' && s.charAt(end) != '\r') {
+        end++;
+      }
+      if (end < n && s.charAt(end) == '=') {
+        out.append(s, from, i).append(s, start, end).append('\n');
+        from = end;
+        while (from < n && s.charAt(from) == '=') {
+          from++;
+        }
+        i = next(s, '=', from);
+      } else {
+        if (run - i >= 2) {
+          // Like the regular expression, a run that is not closed closes itself.
+          out.append(s, from, i).append('\n');
+          from = run;
+        }
+        i = next(s, '=', run);
+      }
+    }
+    return finish(s, from, out);
+  }
+
+  /**
+   * Removes HTML tags, like {@link WikiClean.Stage#HTML_TAGS}.
+   * @param s text
+   * @param out buffer the text is rewritten to
+   * @return false if there is nothing to remove, in which case nothing is appended
+   */
+  static boolean removeHtmlTags(CharSequence s, StringBuilder out) {
+    int n = s.length();
+    int from = 0;
+    // First '>' after the last '<'.
+    int close = -1;
+    for (int i = next(s, '<', 0); i >= 0; ) {
+      if (close <= i) {
+        close = i + 1;
+        while (close < n && s.charAt(close) != '>') {
+          close++;
+        }
+      }
+      if (close == n) {
+        break;
+      }
+      if (close == i + 1) {
+        i = next(s, '<', i + 1);
+        continue;
+      }
+      out.append(s, from, i);
+      from = close + 1;
+      i = next(s, '<', from);
+    }
+    return finish(s, from, out);
+  }
+
+  // Appends the rest of the text if anything was removed before it.
+  private static boolean finish(CharSequence s, int from, StringBuilder out) {
+    if (from == 0) {
+      return false;
+    }
+    out.append(s, from, s.length());
+    return true;
+  }
+
+  private static int next(CharSequence s, char c, int from) {
+    for (int i = from; i < s.length(); i++) {
+      if (s.charAt(i) == c) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static int indexOfIgnoreCase(CharSequence s, String t, int from) {
+    for (int i = from; i <= s.length() - t.length(); i++) {
+      int j = 0;
+      while (j < t.length() && Character.toLowerCase(s.charAt(i + j)) == t.charAt(j)) {
+        j++;
+      }
+      if (j == t.length()) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean startsWith(CharSequence s, String t, int i) {
+    if (i < 0 || i + t.length() > s.length()) {
+      return false;
+    }
+    for (int j = 0; j < t.length(); j++) {
+      if (s.charAt(i + j) != t.charAt(j)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
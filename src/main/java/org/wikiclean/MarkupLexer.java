@@ -0,0 +1,1460 @@
+/**
+ * WikiClean: A Java Wikipedia markup to plain text converter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wikiclean;
+
+import org.wikiclean.languages.Language;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Cleaner behind {@link WikiClean.Engine#LEXER}. Instead of running the chain of regular
+ * expressions in {@link WikiClean}, each of which copies the whole article, the markup is tokenized
+ * once from left to right, and the text between tokens flows through a chain of small state
+ * machines that stand in for the regular expressions that work on the text itself (emphasis,
+ * headings, link brackets and indentation).
+ *
+ * <p>The output is the same as that of the regular expressions, which apply one after the other,
+ * so that e.g. a template is removed before the comment around it is looked for. The lexer follows
+ * that order: when looking for the end of a token, tokens removed by earlier expressions are
+ * skipped, and tokens removed by later expressions are passed on as spans between marker
+ * characters, so that the state machines still see them, and dropped at the point where their
+ * expression would have removed them. Removing text also joins the text around it, which later
+ * expressions can match as markup that was not there before, so where text is removed is passed
+ * on as well, and checked for such joins. Markup where this is not enough to give the same output,
+ * which is rare and always malformed, is reported by returning null, and the caller then falls back
+ * to the regular expressions.
+ *
+ * <p>Instances hold buffers and are not thread-safe.
+ */
+final class MarkupLexer {
+  // Tokens, in the order in which WikiClean removes them.
+  private static final int BR = 0;
+  private static final int REF = 1;
+  private static final int INTERWIKI = 2;
+  private static final int IPA = 3;
+  private static final int CONVERT = 4;
+  private static final int FILE = 5;
+  private static final int IMAGE = 6;
+  private static final int DATEI = 7;
+  private static final int TEMPLATE = 8;
+  private static final int COMMENT = 9;
+  private static final int CATEGORY = 10;
+  private static final int LINK = 11;
+  private static final int MATH = 12;
+  private static final int GALLERY = 13;
+  private static final int NOTOC = 14;
+  private static final int TABLE = 15;
+  private static final int TOP = 16;
+
+  private static final int NONE = -1;
+  // Unterminated image caption, template or table, which WikiClean cuts the text off at.
+  private static final int TRUNCATED = -2;
+
+  // Spans of tokens that are removed after the state machines have seen them: category links and
+  // link targets go before link brackets; math, galleries and __NOTOC__ before indentation; tables
+  // last. Private-use characters; markup that contains them is left to the regular expressions.
+  private static final char OPEN_LINKS = '\uE000';
+  private static final char CLOSE_LINKS = '\uE001';
+  private static final char OPEN_MATH = '\uE002';
+  private static final char CLOSE_MATH = '\uE003';
+  private static final char OPEN_TABLE = '\uE004';
+  private static final char CLOSE_TABLE = '\uE005';
+  // Where text was removed, so that the text around it is joined. The state machines pass it on
+  // until the last token that a join can create has been looked for.
+  private static final char JOIN = '\uE006';
+
+  // Tokens removed by the regular expressions after emphasis, which checks for joins look for.
+  private static final String[] JOINED_TOKENS = { "&lt;math&gt;", "&lt;/math&gt;",
+      "&lt;gallery&gt;", "&lt;/gallery&gt;", "__NOTOC__" };
+
+  // Longest category namespace looked up, e.g. "Kategorie".
+  private static final int MAX_NAMESPACE = 32;
+
+  private static final Unsupported UNSUPPORTED = new Unsupported();
+
+  private final Language lang;
+  private final boolean keepLinks;
+  private final Map<String, Boolean> categories = new HashMap<>();
+
+  private CharSequence s;
+  // End of the text as seen by each token, after unterminated tokens have cut it off.
+  private final int[] limits = new int[TOP + 1];
+  private final int[] savedLimits = new int[TOP + 1];
+  // Token found by the last call to token(), and details needed to emit it.
+  private int kind;
+  private int digitsStart;
+  private int digitsEnd;
+  private int argStart;
+  private int argEnd;
+  private int pipe;
+  private int close;
+
+  private final StringBuilder out = new StringBuilder();
+  private int quotes;
+  private int heading;
+  private int opening;
+  private int contentStart;
+  private final StringBuilder pending = new StringBuilder();
+  private final StringBuilder decoded = new StringBuilder();
+  private boolean inLinkSpan;
+  private char lastBracket;
+  private boolean bracketJoined;
+  private char bracket;
+  private boolean joinedAfterBracket;
+  private boolean inMathSpan;
+  // The last characters before math spans are dropped, by their count so far, and the count when
+  // text was last removed.
+  private final char[] recent = new char[16];
+  private int recentEnd;
+  private int lastJoin;
+  // The same before the current math span, which is removed before later tokens are matched.
+  private final char[] recentBeforeSpan = new char[16];
+  private int recentEndBeforeSpan;
+  private char newline;
+  private boolean indented;
+  private boolean inTableSpan;
+  private int tableState;
+  private int tableLevel;
+
+  /**
+   * Class constructor.
+   * @param lang language, for category links
+   * @param keepLinks whether links are kept
+   */
+  MarkupLexer(Language lang, boolean keepLinks) {
+    this.lang = lang;
+    this.keepLinks = keepLinks;
+  }
+
+  /**
+   * Cleans Wikipedia markup; the footer, if any, has to be removed already.
+   * @param markup Wikipedia markup
+   * @return cleaned output, or null if the markup has to be cleaned with the regular expressions
+   */
+  String clean(String markup) {
+    StringBuilder cleaned = new StringBuilder();
+    return clean(markup, cleaned) ? cleaned.toString() : null;
+  }
+
+  /**
+   * Cleans Wikipedia markup; the footer, if any, has to be removed already.
+   * @param markup Wikipedia markup
+   * @param cleaned buffer the cleaned output is appended to
+   * @return false if the markup has to be cleaned with the regular expressions, in which case
+   *     nothing is appended
+   */
+  boolean clean(CharSequence markup, StringBuilder cleaned) {
+    for (int i = 0; i < markup.length(); i++) {
+      char c = markup.charAt(i);
+      if (c >= OPEN_LINKS && c <= JOIN) {
+        return false;
+      }
+    }
+
+    reset(markup);
+    try {
+      lex(0, markup.length());
+      flush();
+    } catch (Unsupported e) {
+      return false;
+    } finally {
+      s = null;
+    }
+
+    // For some reason, some HTML entities are doubly encoded.
+    CharSequence text = out;
+    decoded.setLength(0);
+    if (HtmlEntities.unescapeTwice(out, decoded)) {
+      text = decoded;
+    }
+    finish(text, cleaned);
+    return true;
+  }
+
+  private void reset(CharSequence markup) {
+    s = markup;
+    for (int i = 0; i <= TOP; i++) {
+      limits[i] = markup.length();
+    }
+    out.setLength(0);
+    quotes = 0;
+    heading = IDLE;
+    pending.setLength(0);
+    inLinkSpan = false;
+    lastBracket = 0;
+    bracketJoined = false;
+    bracket = 0;
+    joinedAfterBracket = false;
+    inMathSpan = false;
+    recentEnd = 0;
+    lastJoin = -recent.length;
+    newline = 0;
+    indented = false;
+    inTableSpan = false;
+  }
+
+  // Tokenizes [from, to) and emits the text between tokens.
+  private void lex(int from, int to) {
+    int i = from;
+    while (i < Math.min(to, limits[TOP])) {
+      char c = s.charAt(i);
+      int end = isTokenStart(c) ? token(i, TOP) : NONE;
+      if (end == NONE) {
+        emit(c);
+        i++;
+        continue;
+      }
+
+      if (end == TRUNCATED) {
+        if (to != s.length()) {
+          throw UNSUPPORTED;
+        }
+        if (kind == TABLE) {
+          // The span is left open, as the table runs to the end of the text.
+          emit(OPEN_TABLE);
+          text(i, limits[TABLE]);
+        }
+        return;
+      }
+      if (end > to) {
+        // A token that runs past the end of a link label.
+        throw UNSUPPORTED;
+      }
+
+      switch (kind) {
+        case INTERWIKI:
+          emit(' ');
+          if (ipaFollows(end)) {
+            throw UNSUPPORTED;
+          }
+          break;
+        case CONVERT:
+          emitConvert();
+          break;
+        case CATEGORY:
+          checkJoin(i, end);
+          span(OPEN_LINKS, i, end, CLOSE_LINKS);
+          break;
+        case LINK:
+          int pipe = this.pipe;
+          int close = this.close;
+          span(OPEN_LINKS, i, pipe + 1, CLOSE_LINKS);
+          lex(pipe + 1, close);
+          span(OPEN_LINKS, close, end, CLOSE_LINKS);
+          break;
+        case MATH:
+        case GALLERY:
+        case NOTOC:
+          checkJoin(i, end);
+          span(OPEN_MATH, i, end, CLOSE_MATH);
+          break;
+        case TABLE:
+          span(OPEN_TABLE, i, end, CLOSE_TABLE);
+          break;
+        default:
+          checkJoin(i, end);
+          emit(JOIN);
+      }
+      i = end;
+    }
+  }
+
+  // Removing a token can join the text around it into the start of another token, which the
+  // regular expressions then find, e.g. "{" and "{" around a reference.
+  private void checkJoin(int start, int end) {
+    if (start == 0) {
+      return;
+    }
+    char before = s.charAt(start - 1);
+    // Tokens right after it that are removed too join the text after them as well. They are
+    // looked for again later, so whatever they cut off is restored.
+    int removed = kind;
+    System.arraycopy(limits, 0, savedLimits, 0, limits.length);
+    try {
+      while (end < s.length()) {
+        char after = s.charAt(end);
+        if (mayJoin(before, after, removed) || mayJoinIpa(before, end, removed)) {
+          throw UNSUPPORTED;
+        }
+        int next = isTokenStart(after) ? token(end, TOP) : NONE;
+        if (next < 0 || kind == INTERWIKI || kind == CONVERT || kind >= CATEGORY) {
+          return;
+        }
+        removed = Math.max(removed, kind);
+        end = next;
+      }
+    } finally {
+      System.arraycopy(savedLimits, 0, limits, 0, limits.length);
+    }
+  }
+
+  // Whether removing a token between two characters can join them into the start or end of
+  // another one.
+  private static boolean mayJoin(char before, char after, int removed) {
+    return ((before == '{' || before == '[') && (after == '{' || after == '[' || after == '|')) ||
+        before == '&' || before == '<' || (before == '_' && after == '_') ||
+        (before == '-' && (after == '-' || after == '&' || after == '>'));
+  }
+
+  // Whether removing a token after a space can join it to an IPA template that follows, which
+  // is removed with the space. Those in parentheses are removed before the others.
+  private boolean mayJoinIpa(char before, int end, int removed) {
+    char after = s.charAt(end);
+    if (before != ' ' || removed > IPA || removed == IPA && after != '{' ||
+        after != '(' && after != '[' && after != '{') {
+      return false;
+    }
+    int kind = this.kind;
+    int pipe = this.pipe;
+    int close = this.close;
+    int[] limits = this.limits.clone();
+    try {
+      return ipaFollows(end);
+    } finally {
+      this.kind = kind;
+      this.pipe = pipe;
+      this.close = close;
+      System.arraycopy(limits, 0, this.limits, 0, limits.length);
+    }
+  }
+
+  // A space, such as the one that replaces an interwiki link, can start an IPA template that
+  // follows it, once the spaces, brackets and tokens in between are removed.
+  private boolean ipaFollows(int i) {
+    while (i < s.length() && !startsWith("{{IPA", i)) {
+      char c = s.charAt(i);
+      int end = skip(i, CONVERT);
+      if (end >= 0) {
+        i = end;
+      } else if (c == ' ' || c == '(' || c == '[') {
+        i++;
+      } else {
+        return false;
+      }
+    }
+    return i < s.length();
+  }
+
+  // Emits the text of a token that is removed later, between marker characters.
+  private void span(char open, int from, int to, char close) {
+    emit(open);
+    text(from, to);
+    emit(close);
+  }
+
+  // Emits the text of a token that is removed later, without the tokens removed before it.
+  private void text(int from, int to) {
+    for (int i = from; i < to; ) {
+      char c = s.charAt(i);
+      if (isTokenStart(c)) {
+        int end = token(i, CATEGORY);
+        if (end >= 0) {
+          if (kind == INTERWIKI) {
+            emit(' ');
+          } else if (kind == CONVERT) {
+            emitConvert();
+          } else {
+            emit(JOIN);
+          }
+          i = end;
+          continue;
+        }
+      }
+      emit(c);
+      i++;
+    }
+  }
+
+  private void emitConvert() {
+    int digitsStart = this.digitsStart;
+    int digitsEnd = this.digitsEnd;
+    int argStart = this.argStart;
+    int argEnd = this.argEnd;
+    for (int i = digitsStart; i < digitsEnd; i++) {
+      emit(s.charAt(i));
+    }
+    emit(' ');
+    for (int i = argStart; i < argEnd; i++) {
+      emit(s.charAt(i));
+    }
+  }
+
+  private static boolean isTokenStart(char c) {
+    return c == '&' || c == '[' || c == '{' || c == ' ' || c == '<' || c == '_';
+  }
+
+  /**
+   * Looks for a token at a position.
+   * @param i position
+   * @param below only tokens removed before this one are considered
+   * @return end of the token, {@link #NONE}, or {@link #TRUNCATED}; the token is in {@link #kind}
+   */
+  private int token(int i, int below) {
+    int end;
+    switch (s.charAt(i)) {
+      case '&':
+        if ((end = br(i)) >= 0) {
+          return found(BR, end);
+        }
+        if (below > REF && (end = ref(i)) >= 0) {
+          return found(REF, end);
+        }
+        if (below > COMMENT && (end = comment(i)) >= 0) {
+          return found(COMMENT, end);
+        }
+        if (below > MATH && (end = element(i, MATH, "&lt;math&gt;", "&lt;/math&gt;")) >= 0) {
+          return found(MATH, end);
+        }
+        if (below > GALLERY &&
+            (end = element(i, GALLERY, "&lt;gallery&gt;", "&lt;/gallery&gt;")) >= 0) {
+          return found(GALLERY, end);
+        }
+        return NONE;
+      case '<':
+        if (below > COMMENT && (end = comment(i)) >= 0) {
+          return found(COMMENT, end);
+        }
+        return NONE;
+      case ' ':
+        if (below > IPA && (end = ipa(i)) >= 0) {
+          return found(IPA, end);
+        }
+        return NONE;
+      case '[':
+        if (!startsWith("[[", i)) {
+          return NONE;
+        }
+        if (below > INTERWIKI && (end = interwiki(i)) >= 0) {
+          return found(INTERWIKI, end);
+        }
+        if (below > FILE && (end = caption(i, FILE, "[[File:")) != NONE) {
+          return found(FILE, end);
+        }
+        if (below > IMAGE && (end = caption(i, IMAGE, "[[Image:")) != NONE) {
+          return found(IMAGE, end);
+        }
+        // We see this in de wikipedia.
+        if (below > DATEI && (end = caption(i, DATEI, "[[Datei")) != NONE) {
+          return found(DATEI, end);
+        }
+        if (below > CATEGORY && (end = category(i)) >= 0) {
+          return found(CATEGORY, end);
+        }
+        if (below > LINK && !keepLinks) {
+          // With [[[, a token removed before may start at the second bracket, and then the end
+          // of the link is not looked for past it.
+          if (startsWith("[", i + 2) && token(i + 1, LINK) != NONE) {
+            throw UNSUPPORTED;
+          }
+          if ((end = link(i)) >= 0) {
+            return found(LINK, end);
+          }
+        }
+        return NONE;
+      case '{':
+        if (startsWith("{{convert|", i)) {
+          if (below > CONVERT && (end = convert(i)) >= 0) {
+            return found(CONVERT, end);
+          }
+        } else if (below > TEMPLATE && startsWith("{{convert|", i + 1) && convert(i + 1) >= 0) {
+          throw UNSUPPORTED;
+        }
+        if (below > TEMPLATE && startsWith("{{", i)) {
+          return found(TEMPLATE, braces(i));
+        }
+        if (below > TABLE && startsWith("{|", i)) {
+          return found(TABLE, table(i));
+        }
+        return NONE;
+      case '_':
+        if (below > NOTOC && startsWith("__NOTOC__", i)) {
+          return found(NOTOC, i + 9);
+        }
+        return NONE;
+      default:
+        return NONE;
+    }
+  }
+
+  private int found(int kind, int end) {
+    this.kind = kind;
+    return end;
+  }
+
+  // Skips a token removed before the given one, for use while looking for the end of a token.
+  private int skip(int i, int below) {
+    int end = isTokenStart(s.charAt(i)) ? token(i, below) : NONE;
+    if (end < 0) {
+      return end;
+    }
+    if (kind == INTERWIKI) {
+      if (ipaFollows(end)) {
+        throw UNSUPPORTED;
+      }
+      kind = INTERWIKI;
+    } else if (kind != CONVERT && i > 0 && end < s.length() &&
+        (mayJoin(s.charAt(i - 1), s.charAt(end), kind) || mayJoinIpa(s.charAt(i - 1), end, kind))) {
+      throw UNSUPPORTED;
+    }
+    // The label of a link is kept when later tokens are matched, so a tag in it could pair with
+    // one outside the link.
+    if (kind == LINK && below > LINK && containsJoinedToken(pipe + 1, close)) {
+      throw UNSUPPORTED;
+    }
+    return end;
+  }
+
+  // Cuts off the text seen by the given token and all later ones.
+  private void truncate(int i, int from) {
+    for (int k = from; k <= TOP; k++) {
+      limits[k] = Math.min(limits[k], i);
+    }
+  }
+
+  // &lt;br */&gt;
+  private int br(int i) {
+    if (!startsWith("&lt;br", i)) {
+      return NONE;
+    }
+    int j = i + 6;
+    while (j < s.length() && s.charAt(j) == ' ') {
+      j++;
+    }
+    return startsWith("/&gt;", j) ? j + 5 : NONE;
+  }
+
+  // &lt;ref[^/]+/&gt; and then &lt;ref.*?&lt;/ref&gt;, both after line breaks are removed.
+  private int ref(int i) {
+    if (!startsWith("&lt;ref", i)) {
+      return NONE;
+    }
+    int j = i + 7;
+    boolean empty = true;
+    while (j < s.length() && s.charAt(j) != '/') {
+      int end = s.charAt(j) == '&' ? br(j) : NONE;
+      if (end >= 0) {
+        j = end;
+      } else {
+        empty = false;
+        j++;
+      }
+    }
+    if (!empty && startsWith("/&gt;", j)) {
+      return j + 5;
+    }
+
+    int close = indexOf("&lt;/ref&gt;", i + 7);
+    return close < 0 ? NONE : close + 12;
+  }
+
+  // \[\[[a-z\-]+:[^|\]]+\]\]
+  private int interwiki(int i) {
+    int j = i + 2;
+    while (j < s.length() && ((s.charAt(j) >= 'a' && s.charAt(j) <= 'z') || s.charAt(j) == '-')) {
+      j++;
+    }
+    if (j == i + 2 || !startsWith(":", j)) {
+      return NONE;
+    }
+
+    int start = ++j;
+    while (j < s.length() && s.charAt(j) != '|' && s.charAt(j) != ']') {
+      if (skip(j, INTERWIKI) >= 0) {
+        throw UNSUPPORTED;
+      }
+      j++;
+    }
+    return j > start && startsWith("]]", j) ? j + 2 : NONE;
+  }
+
+  // " (\(|\[)\{\{IPA[^\}]+\}\}(\)|\])" and then " \{\{IPA[^\}]+\}\}"
+  private int ipa(int i) {
+    if (startsWith("{{IPA", i + 2) && (s.charAt(i + 1) == '(' || s.charAt(i + 1) == '[')) {
+      int end = ipaBody(i + 7);
+      if (end >= 0 && end < s.length() && (s.charAt(end) == ')' || s.charAt(end) == ']')) {
+        return end + 1;
+      }
+    }
+    if (startsWith("{{IPA", i + 1)) {
+      return ipaBody(i + 6);
+    }
+    return NONE;
+  }
+
+  private int ipaBody(int from) {
+    int j = from;
+    while (j < s.length() && s.charAt(j) != '}') {
+      if (startsWith("{{IPA", j) || skip(j, IPA) >= 0) {
+        throw UNSUPPORTED;
+      }
+      j++;
+    }
+    return j > from && startsWith("}}", j) ? j + 2 : NONE;
+  }
+
+  // \{\{convert\|(\d+)\|([^|]+)\}\} and then \{\{convert\|(\d+)\|([^|]+)\|[^}]+\}\}
+  private int convert(int i) {
+    int j = i + 10;
+    while (j < s.length() && s.charAt(j) >= '0' && s.charAt(j) <= '9') {
+      j++;
+    }
+    if (j == i + 10 || !startsWith("|", j)) {
+      return NONE;
+    }
+    int digitsEnd = j;
+    int start = j + 1;
+
+    // In the first form, the argument runs up to the last }} before the next pipe, which can be
+    // well past the end of the template; only the plain case is supported.
+    int close = NONE;
+    for (j = start; j < s.length() && s.charAt(j) != '|'; ) {
+      if (startsWith("}}", j)) {
+        if (close != NONE || j == start) {
+          throw UNSUPPORTED;
+        }
+        close = j++;
+        continue;
+      }
+      int end = skip(j, CONVERT);
+      if (end >= 0) {
+        // Braces joined by removing the token end the template later.
+        if (close == NONE || (s.charAt(j - 1) == '}' && startsWith("}", end))) {
+          throw UNSUPPORTED;
+        }
+        j = end;
+      } else {
+        j++;
+      }
+    }
+
+    int end;
+    if (close != NONE) {
+      end = close + 2;
+    } else {
+      if (j >= s.length() || j == start) {
+        return NONE;
+      }
+      close = j;
+      int k = j + 1;
+      while (k < s.length() && s.charAt(k) != '}') {
+        if (s.charAt(k) == '{' || skip(k, CONVERT) >= 0) {
+          throw UNSUPPORTED;
+        }
+        k++;
+      }
+      if (k == j + 1 || !startsWith("}}", k)) {
+        return NONE;
+      }
+      end = k + 2;
+    }
+
+    for (int k = start; k < close; k++) {
+      char c = s.charAt(k);
+      if (c == '{' || c == '}' || c == '[' || c == ']' || c == '&' || c == '<' || c == '\'' ||
+          c == '=' || c == '_' || isLineTerminator(c)) {
+        throw UNSUPPORTED;
+      }
+    }
+    this.digitsStart = i + 10;
+    this.digitsEnd = digitsEnd;
+    this.argStart = start;
+    this.argEnd = close;
+    return end;
+  }
+
+  // Image captions, which may hold nested [[ ... [[foo]] ... ]] constructs; see
+  // WikiClean.ImageCaptionsRemover for the state machine.
+  private int caption(int i, int kind, String label) {
+    if (!startsWith(label, i)) {
+      return NONE;
+    }
+
+    int state = 0;
+    int level = 1;
+    int cur = i + label.length();
+    while (cur < limits[kind]) {
+      int end = skip(cur, kind);
+      if (end >= 0) {
+        if (this.kind == INTERWIKI || this.kind == CONVERT) {
+          state = 0;
+        }
+        cur = end;
+        continue;
+      } else if (end == TRUNCATED) {
+        continue;
+      }
+
+      char c = s.charAt(cur);
+      if (state == 2 && c == '[') {
+        level++;
+        state = 0;
+      }
+      if (state == 2) {
+        state = 0;
+      }
+      if (c == '[') {
+        state = 2;
+      }
+      if (state == 1 && c == ']') {
+        level--;
+        if (level == 0) {
+          return cur + 1;
+        }
+        state = 0;
+      } else {
+        if (state == 1) {
+          state = 0;
+        }
+        if (c == ']') {
+          state = 1;
+        }
+      }
+      cur++;
+    }
+
+    truncate(i, kind);
+    return TRUNCATED;
+  }
+
+  // Templates, which may be nested; see WikiClean.DoubleBracesRemover for the state machine.
+  private int braces(int i) {
+    int state = 0;
+    int level = 1;
+    int cur = i + 2;
+    while (cur < limits[TEMPLATE]) {
+      int end = skip(cur, TEMPLATE);
+      if (end >= 0) {
+        if (kind == INTERWIKI || kind == CONVERT) {
+          state = 0;
+        }
+        cur = end;
+        continue;
+      } else if (end == TRUNCATED) {
+        continue;
+      }
+
+      char c = s.charAt(cur);
+      if (state == 2 && c == '{') {
+        level++;
+        state = 0;
+      }
+      if (state == 2) {
+        state = 0;
+      }
+      if (c == '{') {
+        state = 2;
+      }
+      if (state == 1 && c == '}') {
+        level--;
+        if (level == 0) {
+          return cur + 1;
+        }
+        state = 0;
+      } else {
+        if (state == 1) {
+          state = 0;
+        }
+        if (c == '}') {
+          state = 1;
+        }
+      }
+      cur++;
+    }
+
+    truncate(i, TEMPLATE);
+    return TRUNCATED;
+  }
+
+  // Tables, which may be nested; see WikiClean.TableRemover for the state machine. Unlike the
+  // other unterminated tokens, an unterminated table only cuts off the text after every state
+  // machine has seen it.
+  private int table(int i) {
+    int state = 0;
+    int level = 1;
+    int cur = i + 2;
+    while (cur < limits[TABLE]) {
+      int end = skip(cur, TABLE);
+      if (end >= 0) {
+        if (kind == INTERWIKI || kind == CONVERT) {
+          state = 0;
+        }
+        cur = end;
+        continue;
+      } else if (end == TRUNCATED) {
+        continue;
+      }
+
+      char c = s.charAt(cur);
+      if (state == 2 && c == '|') {
+        level++;
+        state = 0;
+      }
+      if (state == 2) {
+        state = 0;
+      }
+      if (c == '{') {
+        state = 2;
+      }
+      if (state == 1 && c == '}') {
+        level--;
+        if (level == 0) {
+          return cur + 1;
+        }
+        state = 0;
+      } else {
+        if (state == 1) {
+          state = 0;
+        }
+        if (c == '|') {
+          state = 1;
+        }
+      }
+      cur++;
+    }
+
+    limits[TOP] = Math.min(limits[TOP], i);
+    return TRUNCATED;
+  }
+
+  // (<|&lt;|&#60;)!--.*?--(>|&gt;|&#62;)
+  private int comment(int i) {
+    int j;
+    if (startsWith("&lt;!--", i)) {
+      j = i + 7;
+    } else if (startsWith("&#60;!--", i)) {
+      j = i + 8;
+    } else if (startsWith("<!--", i)) {
+      j = i + 4;
+    } else {
+      return NONE;
+    }
+
+    while (j < limits[COMMENT]) {
+      if (s.charAt(j) == '-' && startsWith("--", j)) {
+        int end = startsWith(">", j + 2) ? j + 3 : startsWith("&gt;", j + 2) ? j + 6 :
+            startsWith("&#62;", j + 2) ? j + 7 : NONE;
+        if (end >= 0) {
+          return end <= limits[COMMENT] ? end : NONE;
+        }
+        j++;
+        continue;
+      }
+      int end = skip(j, COMMENT);
+      if (end >= 0) {
+        j = end;
+      } else if (end == NONE) {
+        j++;
+      }
+    }
+    return NONE;
+  }
+
+  // Case-insensitive open.*?close, for math and galleries.
+  private int element(int i, int kind, String open, String close) {
+    if (!matchesIgnoreCase(i, open)) {
+      return NONE;
+    }
+
+    int j = i + open.length();
+    while (j < limits[kind]) {
+      if (s.charAt(j) == '&' && matchesIgnoreCase(j, close)) {
+        int end = j + close.length();
+        return end <= limits[kind] ? end : NONE;
+      }
+      int end = skip(j, kind);
+      if (end >= 0) {
+        j = end;
+      } else if (end == NONE) {
+        j++;
+      }
+    }
+    return NONE;
+  }
+
+  private boolean startsWith(String t, int i) {
+    if (i < 0 || i + t.length() > s.length()) {
+      return false;
+    }
+    for (int k = 0; k < t.length(); k++) {
+      if (s.charAt(i + k) != t.charAt(k)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private int indexOf(String t, int from) {
+    for (int i = from; i + t.length() <= s.length(); i++) {
+      if (s.charAt(i) == t.charAt(0) && startsWith(t, i)) {
+        return i;
+      }
+    }
+    return NONE;
+  }
+
+  // Whether the text holds a token that checks for joins look for.
+  private boolean containsJoinedToken(int from, int to) {
+    for (int k = from; k < to; k++) {
+      if (s.charAt(k) == '&' || s.charAt(k) == '_') {
+        for (String t : JOINED_TOKENS) {
+          if (k + t.length() <= to && matchesIgnoreCase(k, t)) {
+            return true;
+          }
+        }
+      }
+    }
+    return false;
+  }
+
+  // Same as Pattern.CASE_INSENSITIVE, which only folds ASCII characters.
+  private boolean matchesIgnoreCase(int i, String t) {
+    if (i + t.length() > s.length()) {
+      return false;
+    }
+    for (int k = 0; k < t.length(); k++) {
+      char c = s.charAt(i + k);
+      if (c >= 'A' && c <= 'Z') {
+        c += 'a' - 'A';
+      }
+      if (c != t.charAt(k)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // \[\[Name:([^\]]+)\]\] for the category namespaces of the language.
+  private int category(int i) {
+    int colon = NONE;
+    for (int j = i + 2; j < Math.min(s.length(), i + 2 + MAX_NAMESPACE); j++) {
+      char c = s.charAt(j);
+      if (c == ':') {
+        colon = j;
+        break;
+      }
+      // Emphasis and tokens removed before category links can leave the name of a namespace.
+      if ((c == '\'' && startsWith("''", j)) || skip(j, CATEGORY) != NONE) {
+        throw UNSUPPORTED;
+      }
+      if (c == '[' || c == ']' || c == '|' || c == '{' || c == '&' || isLineTerminator(c)) {
+        break;
+      }
+    }
+    if (colon <= i + 2 || !isCategory(s.subSequence(i + 2, colon).toString())) {
+      return NONE;
+    }
+
+    boolean empty = true;
+    boolean quotes = false;
+    int j = colon + 1;
+    while (j < limits[CATEGORY] && s.charAt(j) != ']') {
+      int end = skip(j, CATEGORY);
+      if (end >= 0) {
+        empty &= kind != INTERWIKI && kind != CONVERT;
+        j = end;
+      } else if (end == NONE) {
+        if (s.charAt(j) == '\'' || s.charAt(j) == '=') {
+          quotes = true;
+        } else {
+          empty = false;
+        }
+        j++;
+      }
+    }
+    if (j + 2 > limits[CATEGORY] || !startsWith("]]", j) || (empty && !quotes)) {
+      return NONE;
+    }
+    // Emphasis and headings are removed before category links, which could leave the name empty.
+    if (empty) {
+      throw UNSUPPORTED;
+    }
+    return j + 2;
+  }
+
+  private boolean isCategory(String namespace) {
+    Boolean category = categories.get(namespace);
+    if (category == null) {
+      category = lang.removeCategoryLinks("[[" + namespace + ":x]]").isEmpty();
+      categories.put(namespace, category);
+    }
+    return category;
+  }
+
+  // \[\[[^\]]+\|([^\]]+)\]\], after category links are removed. Both parts have to be non-empty,
+  // so the label starts after the last pipe, unless nothing follows that pipe.
+  private int link(int i) {
+    int chars = 0;
+    int last = NONE;
+    int lastChars = 0;
+    int previous = NONE;
+    int previousChars = 0;
+
+    int j = i + 2;
+    while (j < limits[LINK] && s.charAt(j) != ']') {
+      int end = skip(j, LINK);
+      if (end >= 0) {
+        if (kind == INTERWIKI || kind == CONVERT) {
+          chars++;
+        }
+        j = end;
+        continue;
+      } else if (end == TRUNCATED) {
+        continue;
+      }
+      if (s.charAt(j) == '|') {
+        previous = last;
+        previousChars = lastChars;
+        last = j;
+        lastChars = chars;
+      }
+      chars++;
+      j++;
+    }
+    if (j + 2 > limits[LINK] || !startsWith("]]", j)) {
+      return NONE;
+    }
+
+    if (last != NONE && lastChars > 0 && chars > lastChars + 1) {
+      pipe = last;
+    } else if (previous != NONE && previousChars > 0) {
+      pipe = previous;
+    } else {
+      return NONE;
+    }
+    // Emphasis is removed before links, which could leave either part empty.
+    if (mayBeEmpty(i + 2, pipe) || mayBeEmpty(pipe + 1, j)) {
+      throw UNSUPPORTED;
+    }
+    close = j;
+    return j + 2;
+  }
+
+  // Whether the text is only quotes and tokens removed before links. A single quote is kept,
+  // since emphasis takes two.
+  private boolean mayBeEmpty(int from, int to) {
+    int quotes = 0;
+    for (int k = from; k < to; ) {
+      int end = skip(k, LINK);
+      if (end >= 0 && kind != INTERWIKI && kind != CONVERT) {
+        k = end;
+      } else if (s.charAt(k) == '\'') {
+        quotes++;
+        k++;
+      } else {
+        return false;
+      }
+    }
+    return quotes != 1;
+  }
+
+  private static boolean isLineTerminator(char c) {
+    return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+  }
+
+  // Same as \s in a regular expression.
+  private static boolean isSpace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+  }
+
+  // The text between tokens goes through the following state machines, one for each regular
+  // expression that works on the text itself, in the order in which WikiClean applies them.
+
+  // ('''|'')
+  private void emit(char c) {
+    if (c == '\'') {
+      quotes++;
+      return;
+    }
+    if (quotes > 0) {
+      if (c == JOIN) {
+        // The quotes on both sides of a removed token are a single run.
+        return;
+      }
+      if (quotes > 1) {
+        heading(JOIN);
+      }
+      if (quotes % 3 == 1) {
+        heading('\'');
+      }
+      quotes = 0;
+    }
+    heading(c);
+  }
+
+  private static final int IDLE = 0;
+  private static final int OPENING = 1;
+  private static final int CONTENT = 2;
+  private static final int CLOSING = 3;
+
+  // =+\s?(.*?)=+ replaced with "$1\n": the opening run, an optional space, which may be a line
+  // break, then the content up to the next run on the same line.
+  private void heading(char c) {
+    switch (heading) {
+      case IDLE:
+        if (c == '=') {
+          heading = OPENING;
+          opening = 1;
+        } else {
+          dropLinkSpans(c);
+        }
+        return;
+      case OPENING:
+        if (c == '=') {
+          opening++;
+          return;
+        }
+        if (c == JOIN) {
+          return;
+        }
+        pending.setLength(0);
+        heading = CONTENT;
+        if (isSpace(c)) {
+          pending.append(c);
+          contentStart = 1;
+          return;
+        }
+        contentStart = 0;
+        headingContent(c);
+        return;
+      case CONTENT:
+        headingContent(c);
+        return;
+      default:
+        if (c == '=' || c == JOIN) {
+          return;
+        }
+        closeHeading();
+        heading(c);
+    }
+  }
+
+  private void closeHeading() {
+    // Link and math spans are dropped after headings, so a heading that holds only part of one
+    // changes where the span ends. One that starts in the label of a link, and so holds the end
+    // of the link, would leave the label empty.
+    int depth = 0;
+    for (int k = contentStart; k < pending.length(); k++) {
+      char c = pending.charAt(k);
+      if (c == OPEN_LINKS && k + 1 < pending.length() && pending.charAt(k + 1) == ']') {
+        throw UNSUPPORTED;
+      }
+      if (c == OPEN_LINKS || c == OPEN_MATH) {
+        depth++;
+      } else if ((c == CLOSE_LINKS || c == CLOSE_MATH) && --depth < 0) {
+        throw UNSUPPORTED;
+      }
+    }
+    if (depth != 0) {
+      throw UNSUPPORTED;
+    }
+
+    dropLinkSpans(JOIN);
+    for (int k = contentStart; k < pending.length(); k++) {
+      dropLinkSpans(pending.charAt(k));
+    }
+    dropLinkSpans('\n');
+    heading = IDLE;
+  }
+
+  private void headingContent(char c) {
+    if (c == '=') {
+      heading = CLOSING;
+    } else if (isLineTerminator(c)) {
+      noHeading();
+      heading(c);
+    } else {
+      pending.append(c);
+    }
+  }
+
+  // Without a closing run, a single = is left as it is, and a longer run matches itself.
+  private void noHeading() {
+    dropLinkSpans(opening > 1 ? '\n' : '=');
+    for (int k = 0; k < pending.length(); k++) {
+      dropLinkSpans(pending.charAt(k));
+    }
+    heading = IDLE;
+  }
+
+  // Brackets joined by removing text, or a link span, between them open or close links that the
+  // lexer has not looked for.
+  private void dropLinkSpans(char c) {
+    if (c == OPEN_LINKS) {
+      // A bracket joined to the start of a link would start the link there instead.
+      if (bracketJoined && lastBracket == '[') {
+        throw UNSUPPORTED;
+      }
+      inLinkSpan = true;
+    } else if (c == CLOSE_LINKS) {
+      inLinkSpan = false;
+      bracketJoined = true;
+      brackets(JOIN);
+    } else if (!inLinkSpan) {
+      if (c == JOIN) {
+        bracketJoined = true;
+      } else {
+        if (bracketJoined && (c == '[' || c == ']') && c == lastBracket) {
+          throw UNSUPPORTED;
+        }
+        lastBracket = c;
+        bracketJoined = false;
+      }
+      brackets(c);
+    }
+  }
+
+  // (\[\[|\]\])
+  private void brackets(char c) {
+    if (keepLinks) {
+      dropMathSpans(c);
+      return;
+    }
+    if (bracket != 0) {
+      if (c == JOIN) {
+        joinedAfterBracket = true;
+        return;
+      }
+      char previous = bracket;
+      bracket = 0;
+      boolean joined = joinedAfterBracket;
+      joinedAfterBracket = false;
+      if (c == previous) {
+        dropMathSpans(JOIN);
+        return;
+      }
+      dropMathSpans(previous);
+      if (joined) {
+        dropMathSpans(JOIN);
+      }
+    }
+    if (c == '[' || c == ']') {
+      bracket = c;
+    } else {
+      dropMathSpans(c);
+    }
+  }
+
+  // Math, galleries and __NOTOC__ joined by removing text are not tokens to the lexer.
+  private void dropMathSpans(char c) {
+    if (c == JOIN) {
+      lastJoin = recentEnd;
+      return;
+    }
+    if (c != OPEN_MATH && c != CLOSE_MATH) {
+      recent[recentEnd++ & (recent.length - 1)] = c;
+      if ((c == ';' || c == '_') && recentEnd - lastJoin < recent.length) {
+        checkJoinedTokens();
+      }
+    }
+
+    if (c == OPEN_MATH) {
+      System.arraycopy(recent, 0, recentBeforeSpan, 0, recent.length);
+      recentEndBeforeSpan = recentEnd;
+      inMathSpan = true;
+    } else if (c == CLOSE_MATH) {
+      System.arraycopy(recentBeforeSpan, 0, recent, 0, recent.length);
+      recentEnd = recentEndBeforeSpan;
+      lastJoin = recentEnd;
+      inMathSpan = false;
+    } else if (!inMathSpan) {
+      indentation(c);
+    }
+  }
+
+  private void checkJoinedTokens() {
+    for (String t : JOINED_TOKENS) {
+      // Only joins between the characters of the token count, i.e., before all but the first.
+      if (lastJoin <= recentEnd - t.length()) {
+        continue;
+      }
+      boolean match = true;
+      for (int k = 0; k < t.length() && match; k++) {
+        char c = recent[(recentEnd - t.length() + k) & (recent.length - 1)];
+        if (c >= 'A' && c <= 'Z' && t.charAt(0) == '&') {
+          c += 'a' - 'A';
+        }
+        match = c == t.charAt(k);
+      }
+      if (match) {
+        throw UNSUPPORTED;
+      }
+    }
+  }
+
+  // [\n\r]:\s* replaced with "\n"
+  private void indentation(char c) {
+    if (indented) {
+      if (isSpace(c)) {
+        return;
+      }
+      indented = false;
+    }
+    if (newline != 0) {
+      char previous = newline;
+      newline = 0;
+      if (c == ':') {
+        dropTableSpans('\n');
+        indented = true;
+        return;
+      }
+      dropTableSpans(previous);
+    }
+    if (c == '\n' || c == '\r') {
+      newline = c;
+    } else {
+      dropTableSpans(c);
+    }
+  }
+
+  // Tables have to end where the lexer found their end once the text in them has gone through
+  // the state machines; see WikiClean.TableRemover for the state machine. A table that starts
+  // outside of them was joined by removing text.
+  private void dropTableSpans(char c) {
+    if (c == OPEN_TABLE) {
+      inTableSpan = true;
+      tableState = 0;
+      tableLevel = 0;
+    } else if (c == CLOSE_TABLE) {
+      if (tableState != ENDED) {
+        throw UNSUPPORTED;
+      }
+      inTableSpan = false;
+    } else if (inTableSpan) {
+      tableBody(c);
+    } else {
+      if (c == '|' && out.length() > 0 && out.charAt(out.length() - 1) == '{') {
+        throw UNSUPPORTED;
+      }
+      out.append(c);
+    }
+  }
+
+  private static final int ENDED = -1;
+
+  // Counts the nesting of a table span the way the regular expressions do: the state is 2 after
+  // a brace, 1 after a pipe, and ENDED once the outermost table is closed, where the span has to
+  // end too.
+  private void tableBody(char c) {
+    if (tableState == ENDED) {
+      throw UNSUPPORTED;
+    }
+    switch (c) {
+      case '{':
+        tableState = 2;
+        break;
+      case '|':
+        if (tableState == 2) {
+          tableLevel++;
+        }
+        tableState = 1;
+        break;
+      case '}':
+        if (tableState == 1) {
+          tableLevel--;
+          tableState = tableLevel == 0 ? ENDED : 0;
+        } else {
+          tableState = 0;
+        }
+        break;
+      default:
+        tableState = 0;
+    }
+  }
+
+  private void flush() {
+    if (quotes % 3 == 1) {
+      heading('\'');
+    }
+    quotes = 0;
+    switch (heading) {
+      case OPENING:
+        dropLinkSpans(opening > 1 ? '\n' : '=');
+        break;
+      case CONTENT:
+        noHeading();
+        break;
+      case CLOSING:
+        closeHeading();
+        break;
+      default:
+    }
+    heading = IDLE;
+    if (bracket != 0) {
+      dropMathSpans(bracket);
+      bracket = 0;
+    }
+    if (newline != 0) {
+      dropTableSpans(newline);
+      newline = 0;
+    }
+    // A table that runs to the end of the text must not end before it.
+    if (inTableSpan && tableState == ENDED) {
+      throw UNSUPPORTED;
+    }
+  }
+
+  // <[^>]+> removed, [\n\r][\n\r]+ replaced with "\n\n", and then trimmed.
+  private static void finish(CharSequence text, StringBuilder b) {
+    int start = b.length();
+    int lastTagEnd = text.length() - 1;
+    while (lastTagEnd >= 0 && text.charAt(lastTagEnd) != '>') {
+      lastTagEnd--;
+    }
+    int newlines = 0;
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c == '<' && i + 1 < lastTagEnd && text.charAt(i + 1) != '>') {
+        i += 2;
+        while (text.charAt(i) != '>') {
+          i++;
+        }
+        continue;
+      }
+      if (b.length() == start && c <= ' ') {
+        continue;
+      }
+      if (c == '\n' || c == '\r') {
+        if (newlines == 0) {
+          b.append(c);
+        } else if (newlines == 1) {
+          b.setCharAt(b.length() - 1, '\n');
+          b.append('\n');
+        }
+        newlines++;
+      } else {
+        newlines = 0;
+        b.append(c);
+      }
+    }
+
+    int end = b.length();
+    while (end > start && b.charAt(end - 1) <= ' ') {
+      end--;
+    }
+    b.setLength(end);
+  }
+
+  // Markup that the lexer cannot clean exactly like the regular expressions do.
+  private static final class Unsupported extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    Unsupported() {
+      super(null, null, false, false);
+    }
+  }
+}
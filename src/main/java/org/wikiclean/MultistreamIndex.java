@@ -0,0 +1,205 @@
+/**
+ * WikiClean: A Java Wikipedia markup to plain text converter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wikiclean;
+
+import org.apache.tools.bzip2.CBZip2InputStream;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Index of a multistream dump ({@code pages-articles-multistream.xml.bz2}), read from its companion
+ * {@code pages-articles-multistream-index.txt.bz2} file. Each line of the index has the form
+ * {@code offset:id:title}, where {@code offset} is the byte offset of the independent bz2 stream
+ * that holds the page.
+ */
+public class MultistreamIndex {
+  private static final int DEFAULT_CAPACITY = 1 << 16;
+
+  // Titles are looked up by a 40-bit hash packed together with a 24-bit stream number, which keeps
+  // the index at 16 bytes per page. Hash collisions only cost an extra stream to decode.
+  private static final int STREAM_BITS = 24;
+  private static final long STREAM_MASK = (1L << STREAM_BITS) - 1;
+
+  private final long[] offsets;
+  // Sorted (id << 32 | stream) entries.
+  private final long[] ids;
+  // Sorted (hash << 24 | stream) entries.
+  private final long[] titles;
+
+  /**
+   * Class constructor.
+   * @param file path to index file, either bz2-compressed or plain text
+   * @throws IOException if any file-related errors are encountered
+   */
+  public MultistreamIndex(File file) throws IOException {
+    long[] offsets = new long[DEFAULT_CAPACITY];
+    long[] ids = new long[DEFAULT_CAPACITY];
+    long[] titles = new long[DEFAULT_CAPACITY];
+    int streams = 0;
+    int pages = 0;
+
+    try (BufferedReader reader = open(file)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        int colon1 = line.indexOf(':');
+        int colon2 = line.indexOf(':', colon1 + 1);
+        if (colon1 <= 0 || colon2 < 0) {
+          continue;
+        }
+
+        long offset = Long.parseLong(line.substring(0, colon1));
+        // Pages are listed in dump order, so all pages of a stream are adjacent.
+        if (streams == 0 || offsets[streams - 1] != offset) {
+          if (streams > 0 && offsets[streams - 1] > offset) {
+            throw new IOException("Index is not in dump order at offset " + offset);
+          }
+          if (streams == offsets.length) {
+            offsets = Arrays.copyOf(offsets, streams * 2);
+          }
+          offsets[streams++] = offset;
+        }
+        if (streams > STREAM_MASK + 1) {
+          throw new IOException("Too many streams in index: " + streams);
+        }
+
+        if (pages == ids.length) {
+          ids = Arrays.copyOf(ids, pages * 2);
+          titles = Arrays.copyOf(titles, pages * 2);
+        }
+        long stream = streams - 1;
+        ids[pages] = Long.parseLong(line.substring(colon1 + 1, colon2)) << 32 | stream;
+        titles[pages] = hash(line.substring(colon2 + 1)) << STREAM_BITS | stream;
+        pages++;
+      }
+    }
+
+    this.offsets = Arrays.copyOf(offsets, streams);
+    this.ids = Arrays.copyOf(ids, pages);
+    this.titles = Arrays.copyOf(titles, pages);
+    Arrays.parallelSort(this.ids);
+    Arrays.parallelSort(this.titles);
+  }
+
+  /**
+   * Returns the byte offsets of the bz2 streams that hold pages, in increasing order.
+   * @return byte offsets of the bz2 streams
+   */
+  public long[] getStreamOffsets() {
+    return offsets.clone();
+  }
+
+  /**
+   * Returns the number of bz2 streams that hold pages.
+   * @return number of bz2 streams
+   */
+  public int getStreamCount() {
+    return offsets.length;
+  }
+
+  /**
+   * Returns the number of pages in the index.
+   * @return number of pages
+   */
+  public int getPageCount() {
+    return ids.length;
+  }
+
+  /**
+   * Returns the byte offset of the bz2 stream that holds a page.
+   * @param pageId page id
+   * @return byte offset of the bz2 stream, or -1 if the page is not in the index
+   */
+  public long getOffset(long pageId) {
+    if (pageId < 0 || pageId > Integer.MAX_VALUE) {
+      return -1;
+    }
+
+    int i = lowerBound(ids, pageId << 32);
+    if (i < ids.length && ids[i] >>> 32 == pageId) {
+      return offsets[(int) (ids[i] & 0xffffffffL)];
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the byte offsets of the bz2 streams that may hold a page with the given title. The
+   * offsets are candidates only; the page title has to be checked after decompression.
+   * @param title page title, as it appears in the index
+   * @return byte offsets of candidate bz2 streams, in increasing order
+   */
+  public long[] getOffsets(String title) {
+    long key = hash(title) << STREAM_BITS;
+    int i = lowerBound(titles, key);
+    int j = i;
+    while (j < titles.length && (titles[j] & ~STREAM_MASK) == key) {
+      j++;
+    }
+
+    long[] candidates = new long[j - i];
+    for (int k = i; k < j; k++) {
+      candidates[k - i] = offsets[(int) (titles[k] & STREAM_MASK)];
+    }
+    Arrays.sort(candidates);
+    return candidates;
+  }
+
+  private static int lowerBound(long[] a, long key) {
+    int lo = 0;
+    int hi = a.length;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (a[mid] < key) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  // 40-bit FNV-1a hash.
+  private static long hash(String s) {
+    long h = 0xcbf29ce484222325L;
+    for (int i = 0; i < s.length(); i++) {
+      h ^= s.charAt(i);
+      h *= 0x100000001b3L;
+    }
+    return (h ^ (h >>> 40)) & ((1L << (64 - STREAM_BITS)) - 1);
+  }
+
+  private static BufferedReader open(File file) throws IOException {
+    InputStream in = new BufferedInputStream(new FileInputStream(file));
+    in.mark(3);
+    if (in.read() == 'B' && in.read() == 'Z' && in.read() == 'h') {
+      in.reset();
+      in.skip(2); // "B", "Z" bytes from commandline tools
+      in = new CBZip2InputStream(in, true);
+    } else {
+      in.reset();
+    }
+
+    return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+  }
+}
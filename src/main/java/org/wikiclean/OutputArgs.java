@@ -0,0 +1,103 @@
+/**
+ * WikiClean: A Java Wikipedia markup to plain text converter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wikiclean;
+
+import org.kohsuke.args4j.Option;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Command-line options for the output of the tools, which their arguments extend. The output is
+ * a single file, or a directory of part files with {@code -shards}, {@code -partSize}, or
+ * {@code -compress}; see {@link ShardedOutput}.
+ */
+class OutputArgs {
+  @Option(name = "-output", metaVar = "[path]", required = true,
+      usage = "output path, a directory with -shards, -partSize or -compress")
+  String output;
+
+  @Option(name = "-resume", usage = "resume from the last checkpoint")
+  boolean resume = false;
+
+  @Option(name = "-shards", metaVar = "[num]", forbids = "-partSize",
+      usage = "write [num] part files, with articles spread over them by page id")
+  int shards = 0;
+
+  @Option(name = "-partSize", metaVar = "[bytes]", forbids = "-shards",
+      usage = "write part files one after the other, of about [bytes] each")
+  long partSize = 0;
+
+  @Option(name = "-compress", usage = "compress part files with gzip")
+  boolean compress = false;
+
+  /**
+   * Opens the output, resuming from its checkpoint if asked to.
+   * @param dump dump the output is written from, before any articles are read
+   * @param threads number of threads to compress part files on
+   * @param checkpoints whether to write checkpoints
+   * @return output
+   * @throws IOException if any file-related errors are encountered
+   */
+  CheckpointedOutput open(WikipediaArticlesDump dump, int threads, boolean checkpoints)
+      throws IOException {
+    CheckpointedOutput.Target target = target(new File(output), threads);
+    return new CheckpointedOutput(dump, Collections.singletonList(target), checkpoint(checkpoints),
+        resume);
+  }
+
+  /**
+   * Opens several outputs in the output directory, one file or directory of part files for each,
+   * which share a checkpoint, resuming from it if asked to.
+   * @param dump dump the outputs are written from, before any articles are read
+   * @param names names of the outputs in the output directory
+   * @param threads number of threads to compress the part files of each output on
+   * @param checkpoints whether to write checkpoints
+   * @return outputs, in the order of their names
+   * @throws IOException if any file-related errors are encountered
+   */
+  CheckpointedOutput open(WikipediaArticlesDump dump, List<String> names, int threads,
+      boolean checkpoints) throws IOException {
+    File dir = new File(output);
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Cannot create output directory " + dir);
+    }
+
+    List<CheckpointedOutput.Target> targets = new ArrayList<>();
+    for (String name : names) {
+      targets.add(target(new File(dir, name), threads));
+    }
+    return new CheckpointedOutput(dump, targets, checkpoint(checkpoints), resume);
+  }
+
+  // A checkpoint is written next to the output every so often, and removed once done.
+  private File checkpoint(boolean checkpoints) {
+    return checkpoints ? new File(output + ".checkpoint") : null;
+  }
+
+  private CheckpointedOutput.Target target(File path, int threads) {
+    if (shards == 0 && partSize == 0 && !compress) {
+      return CheckpointedOutput.file(path);
+    }
+    // -compress alone writes a single part.
+    return new ShardedOutput(path, partSize > 0 ? 0 : Math.max(shards, 1), partSize, compress,
+        threads);
+  }
+}
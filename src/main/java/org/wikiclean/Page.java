@@ -0,0 +1,266 @@
+/**
+ * WikiClean: A Java Wikipedia markup to plain text converter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wikiclean;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A Wikipedia page from a dump, parsed from its XML in a single forward pass. The wiki markup is
+ * kept exactly as it appears in the dump, i.e., still XML-escaped, which is what
+ * {@link WikiClean#clean(Page)} expects.
+ */
+public final class Page {
+  private final long id;
+  private final int namespace;
+  private final String title;
+  private final String redirect;
+  private final long revisionId;
+  private final String sha1;
+  private final String wikiMarkup;
+
+  private Page(long id, int namespace, String title, String redirect, long revisionId, String sha1,
+      String wikiMarkup) {
+    this.id = id;
+    this.namespace = namespace;
+    this.title = title;
+    this.redirect = redirect;
+    this.revisionId = revisionId;
+    this.sha1 = sha1;
+    this.wikiMarkup = wikiMarkup;
+  }
+
+  /**
+   * @return page id, or 0 if absent
+   */
+  public long getId() {
+    return id;
+  }
+
+  /**
+   * Returns the namespace of the page; articles are in namespace 0.
+   * See https://en.wikipedia.org/wiki/Wikipedia:Namespace
+   * @return namespace, or 0 if absent
+   */
+  public int getNamespace() {
+    return namespace;
+  }
+
+  /**
+   * @return page title, unescaped, or the empty string if absent
+   */
+  public String getTitle() {
+    return title;
+  }
+
+  /**
+   * @return title of the redirect target, unescaped, or null if the page is not a redirect
+   */
+  public String getRedirect() {
+    return redirect;
+  }
+
+  /**
+   * @return whether the page is a redirect
+   */
+  public boolean isRedirect() {
+    return redirect != null;
+  }
+
+  /**
+   * @return revision id, or 0 if absent
+   */
+  public long getRevisionId() {
+    return revisionId;
+  }
+
+  /**
+   * @return SHA-1 of the revision text, or the empty string if absent
+   */
+  public String getSha1() {
+    return sha1;
+  }
+
+  /**
+   * @return Wikipedia markup of the page, as it appears in the dump, or the empty string if absent
+   */
+  public String getWikiMarkup() {
+    return wikiMarkup;
+  }
+
+  /**
+   * Parses a page.
+   * @param page XML of a page, as returned by {@link WikipediaArticlesDump}
+   * @return parsed page
+   */
+  public static Page parse(String page) {
+    byte[] bytes = page.getBytes(StandardCharsets.UTF_8);
+    return parse(bytes, 0, bytes.length);
+  }
+
+  /**
+   * Parses a page from its UTF-8 bytes, without decoding anything but the fields.
+   * @param bytes buffer that holds the page
+   * @param offset offset of the page in {@code bytes}
+   * @param length length of the page in bytes
+   * @return parsed page
+   */
+  public static Page parse(byte[] bytes, int offset, int length) {
+    long id = 0;
+    int namespace = 0;
+    String title = "";
+    String redirect = null;
+    long revisionId = 0;
+    String sha1 = "";
+    String wikiMarkup = "";
+
+    boolean inRevision = false;
+    boolean inContributor = false;
+    int end = offset + length;
+    int i = indexOf(bytes, '<', offset, end);
+    while (i >= 0 && i + 1 < end) {
+      int nameStart = i + 1;
+      // The first character may be the slash of an end tag.
+      int nameEnd = nameStart + 1;
+      while (nameEnd < end && bytes[nameEnd] != '>' && bytes[nameEnd] != ' '
+          && bytes[nameEnd] != '/') {
+        nameEnd++;
+      }
+      int tagEnd = indexOf(bytes, '>', nameEnd, end);
+      if (tagEnd < 0) {
+        break;
+      }
+
+      int next = tagEnd + 1;
+      if (bytes[nameStart] == '/') {
+        if (is(bytes, nameStart, nameEnd, "/revision")) {
+          inRevision = false;
+        } else if (is(bytes, nameStart, nameEnd, "/contributor")) {
+          inContributor = false;
+        }
+      } else if (is(bytes, nameStart, nameEnd, "title")) {
+        next = indexOf(bytes, '<', tagEnd + 1, end);
+        title = HtmlEntities.unescape(decode(bytes, tagEnd + 1, next));
+      } else if (is(bytes, nameStart, nameEnd, "ns")) {
+        next = indexOf(bytes, '<', tagEnd + 1, end);
+        namespace = (int) parseLong(bytes, tagEnd + 1, next);
+      } else if (is(bytes, nameStart, nameEnd, "id")) {
+        next = indexOf(bytes, '<', tagEnd + 1, end);
+        // Contributors have ids too; the first id of a page is the page id.
+        if (inContributor) {
+          // Ignore.
+        } else if (inRevision) {
+          if (revisionId == 0) {
+            revisionId = parseLong(bytes, tagEnd + 1, next);
+          }
+        } else if (id == 0) {
+          id = parseLong(bytes, tagEnd + 1, next);
+        }
+      } else if (is(bytes, nameStart, nameEnd, "revision")) {
+        inRevision = true;
+      } else if (is(bytes, nameStart, nameEnd, "contributor")) {
+        inContributor = bytes[tagEnd - 1] != '/';
+      } else if (is(bytes, nameStart, nameEnd, "redirect")) {
+        redirect = HtmlEntities.unescape(attribute(bytes, nameEnd, tagEnd, "title"));
+      } else if (is(bytes, nameStart, nameEnd, "sha1")) {
+        next = indexOf(bytes, '<', tagEnd + 1, end);
+        sha1 = decode(bytes, tagEnd + 1, next);
+      } else if (is(bytes, nameStart, nameEnd, "text") && bytes[tagEnd - 1] != '/') {
+        int textEnd = indexOf(bytes, TEXT_END, tagEnd + 1, end);
+        if (textEnd < 0) {
+          // Truncated page.
+          textEnd = end;
+        }
+        wikiMarkup = decode(bytes, tagEnd + 1, textEnd);
+        next = textEnd;
+      }
+
+      i = next < 0 ? -1 : indexOf(bytes, '<', next, end);
+    }
+
+    return new Page(id, namespace, title, redirect, revisionId, sha1, wikiMarkup);
+  }
+
+  private static final byte[] TEXT_END = "</text>".getBytes(StandardCharsets.UTF_8);
+
+  private static int indexOf(byte[] bytes, char c, int from, int to) {
+    for (int i = from; i < to; i++) {
+      if (bytes[i] == c) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static int indexOf(byte[] bytes, byte[] tag, int from, int to) {
+    int i = indexOf(bytes, (char) tag[0], from, to);
+    while (i >= 0 && i + tag.length <= to) {
+      int j = 1;
+      while (j < tag.length && bytes[i + j] == tag[j]) {
+        j++;
+      }
+      if (j == tag.length) {
+        return i;
+      }
+      i = indexOf(bytes, (char) tag[0], i + 1, to);
+    }
+    return -1;
+  }
+
+  private static boolean is(byte[] bytes, int from, int to, String name) {
+    if (to - from != name.length()) {
+      return false;
+    }
+    for (int i = 0; i < name.length(); i++) {
+      if (bytes[from + i] != name.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static String attribute(byte[] bytes, int from, int to, String name) {
+    for (int i = from; i + name.length() + 2 < to; i++) {
+      if (bytes[i] == ' ' && is(bytes, i + 1, i + 1 + name.length(), name)
+          && bytes[i + 1 + name.length()] == '=') {
+        int start = i + name.length() + 3;
+        int end = indexOf(bytes, (char) bytes[start - 1], start, to);
+        return end < 0 ? null : decode(bytes, start, end);
+      }
+    }
+    return null;
+  }
+
+  private static long parseLong(byte[] bytes, int from, int to) {
+    long value = 0;
+    for (int i = from; i >= 0 && i < to; i++) {
+      if (bytes[i] >= '0' && bytes[i] <= '9') {
+        value = value * 10 + (bytes[i] - '0');
+      } else if (bytes[i] == '-' && i == from) {
+        value = -parseLong(bytes, from + 1, to);
+        break;
+      }
+    }
+    return value;
+  }
+
+  private static String decode(byte[] bytes, int from, int to) {
+    if (to < from) {
+      return "";
+    }
+    return new String(bytes, from, to - from, StandardCharsets.UTF_8);
+  }
+
+}
@@ -0,0 +1,32 @@
+/**
+ * WikiClean: A Java Wikipedia markup to plain text converter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wikiclean;
+
+/**
+ * Filter applied to the raw UTF-8 bytes of a page by {@link WikipediaArticlesDump}. Pages that are
+ * rejected are never decoded into strings.
+ */
+@FunctionalInterface
+public interface PageFilter {
+  /**
+   * Decides whether to keep a page.
+   * @param bytes buffer that holds the page
+   * @param offset offset of the page in {@code bytes}
+   * @param length length of the page in bytes
+   * @return whether to keep the page
+   */
+  boolean accept(byte[] bytes, int offset, int length);
+}
@@ -0,0 +1,261 @@
+/**
+ * WikiClean: A Java Wikipedia markup to plain text converter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wikiclean;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Filter on the page header, i.e., everything up to the {@code <text>} start tag: namespace,
+ * redirect, and size of the text. When passed to {@link WikipediaArticlesDump}, the filter is
+ * checked as soon as the header has been read, and rejected pages are skipped without buffering
+ * their text. For example, to keep only articles that are not redirects:
+ *
+ * <pre>
+ * wikipedia.pages(new PageHeaderFilter.Builder().withNamespaces(0).skipRedirects().build())
+ * </pre>
+ */
+public final class PageHeaderFilter implements PageFilter {
+  private static final byte[] NS_START = "<ns>".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] REDIRECT = "<redirect".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] TEXT_START = "<text".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] TEXT_END = "</text>".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] BYTES = " bytes=\"".getBytes(StandardCharsets.UTF_8);
+
+  /**
+   * Outcome of checking a page header.
+   */
+  enum Verdict {
+    ACCEPT, REJECT,
+    // The header has no size of the text, so the whole page is needed.
+    NEEDS_TEXT
+  }
+
+  // Sorted, or null to keep all namespaces.
+  private final int[] namespaces;
+  private final boolean skipRedirects;
+  private final long minTextBytes;
+  private final long maxTextBytes;
+
+  private PageHeaderFilter(int[] namespaces, boolean skipRedirects, long minTextBytes,
+      long maxTextBytes) {
+    this.namespaces = namespaces;
+    this.skipRedirects = skipRedirects;
+    this.minTextBytes = minTextBytes;
+    this.maxTextBytes = maxTextBytes;
+  }
+
+  /**
+   * Checks a whole page. If the header does not state the size of the text, the length of the
+   * text as it appears in the dump (i.e., XML-escaped) is used instead.
+   */
+  @Override
+  public boolean accept(byte[] bytes, int offset, int length) {
+    Verdict verdict = acceptHeader(bytes, offset, length);
+    if (verdict != Verdict.NEEDS_TEXT) {
+      return verdict == Verdict.ACCEPT;
+    }
+
+    int end = offset + length;
+    int tag = indexOfTextStart(bytes, offset, end);
+    int start = indexOf(bytes, tag, end, (byte) '>') + 1;
+    if (start == 0 || bytes[start - 2] == '/') {
+      return withinLimits(0);
+    }
+    int close = indexOf(bytes, start, end, TEXT_END);
+    return withinLimits((close < 0 ? end : close) - start);
+  }
+
+  /**
+   * Checks a page header; anything after the {@code <text>} start tag is ignored.
+   * @param bytes buffer that holds the header
+   * @param offset offset of the header in {@code bytes}
+   * @param length length of the header in bytes
+   * @return whether to keep the page, or {@link Verdict#NEEDS_TEXT} if that depends on its text
+   */
+  Verdict acceptHeader(byte[] bytes, int offset, int length) {
+    int end = offset + length;
+    int tag = indexOfTextStart(bytes, offset, end);
+    int headerEnd = tag < 0 ? end : tag;
+
+    if (namespaces != null &&
+        Arrays.binarySearch(namespaces, namespace(bytes, offset, headerEnd)) < 0) {
+      return Verdict.REJECT;
+    }
+    if (skipRedirects && indexOf(bytes, offset, headerEnd, REDIRECT) >= 0) {
+      return Verdict.REJECT;
+    }
+    if (minTextBytes == 0 && maxTextBytes == Long.MAX_VALUE) {
+      return Verdict.ACCEPT;
+    }
+    if (tag < 0) {
+      return withinLimits(0) ? Verdict.ACCEPT : Verdict.REJECT;
+    }
+
+    long size = textBytes(bytes, tag, end);
+    if (size < 0) {
+      return Verdict.NEEDS_TEXT;
+    }
+    return withinLimits(size) ? Verdict.ACCEPT : Verdict.REJECT;
+  }
+
+  private boolean withinLimits(long size) {
+    return size >= minTextBytes && size <= maxTextBytes;
+  }
+
+  // Pages without a namespace element are in the main namespace, as in Page.
+  private static int namespace(byte[] bytes, int from, int to) {
+    int i = indexOf(bytes, from, to, NS_START);
+    if (i < 0) {
+      return 0;
+    }
+
+    int sign = 1;
+    int ns = 0;
+    i += NS_START.length;
+    if (i < to && bytes[i] == '-') {
+      sign = -1;
+      i++;
+    }
+    for (; i < to && bytes[i] >= '0' && bytes[i] <= '9'; i++) {
+      ns = ns * 10 + (bytes[i] - '0');
+    }
+    return sign * ns;
+  }
+
+  // Value of the bytes attribute of the text start tag at 'tag', or -1 if absent.
+  private static long textBytes(byte[] bytes, int tag, int to) {
+    int close = indexOf(bytes, tag, to, (byte) '>');
+    int i = indexOf(bytes, tag, close < 0 ? to : close, BYTES);
+    if (i < 0) {
+      return -1;
+    }
+
+    long size = 0;
+    for (i += BYTES.length; i < to && bytes[i] >= '0' && bytes[i] <= '9'; i++) {
+      size = size * 10 + (bytes[i] - '0');
+    }
+    return size;
+  }
+
+  // Position of the text start tag, or -1 if absent.
+  static int indexOfTextStart(byte[] bytes, int from, int to) {
+    int i = from;
+    while ((i = indexOf(bytes, i, to, TEXT_START)) >= 0) {
+      int next = i + TEXT_START.length;
+      if (next == to || isTagDelimiter(bytes[next])) {
+        return i;
+      }
+      i = next;
+    }
+    return -1;
+  }
+
+  /**
+   * @param b byte following a tag name
+   * @return whether the byte ends the tag name
+   */
+  static boolean isTagDelimiter(byte b) {
+    return b == '>' || b == '/' || b == ' ' || b == '\t' || b == '\n' || b == '\r';
+  }
+
+  private static int indexOf(byte[] bytes, int from, int to, byte b) {
+    for (int i = from; i < to; i++) {
+      if (bytes[i] == b) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static int indexOf(byte[] bytes, int from, int to, byte[] s) {
+    outer:
+    for (int i = from; i <= to - s.length; i++) {
+      for (int j = 0; j < s.length; j++) {
+        if (bytes[i + j] != s[j]) {
+          continue outer;
+        }
+      }
+      return i;
+    }
+    return -1;
+  }
+
+  /**
+   * Builder for a {@link PageHeaderFilter}. By default, all pages are kept.
+   */
+  public static class Builder {
+    private int[] namespaces = null;
+    private boolean skipRedirects = false;
+    private long minTextBytes = 0;
+    private long maxTextBytes = Long.MAX_VALUE;
+
+    /**
+     * Class constructor.
+     */
+    public Builder() {}
+
+    /**
+     * Keeps only pages in the given namespaces; articles are in namespace 0.
+     * See https://en.wikipedia.org/wiki/Wikipedia:Namespace
+     * @param namespaces namespaces to keep
+     * @return self for method chaining
+     */
+    public Builder withNamespaces(int... namespaces) {
+      this.namespaces = namespaces.clone();
+      Arrays.sort(this.namespaces);
+      return this;
+    }
+
+    /**
+     * Skips redirects, i.e., pages with a {@code <redirect>} element.
+     * @return self for method chaining
+     */
+    public Builder skipRedirects() {
+      this.skipRedirects = true;
+      return this;
+    }
+
+    /**
+     * Skips pages whose text is shorter than the given size.
+     * @param bytes minimum size of the text in bytes
+     * @return self for method chaining
+     */
+    public Builder withMinTextBytes(long bytes) {
+      this.minTextBytes = bytes;
+      return this;
+    }
+
+    /**
+     * Skips pages whose text is longer than the given size.
+     * @param bytes maximum size of the text in bytes
+     * @return self for method chaining
+     */
+    public Builder withMaxTextBytes(long bytes) {
+      this.maxTextBytes = bytes;
+      return this;
+    }
+
+    /**
+     * Builds a {@link PageHeaderFilter}.
+     * @return a {@link PageHeaderFilter}
+     */
+    public PageHeaderFilter build() {
+      return new PageHeaderFilter(namespaces, skipRedirects, minTextBytes, maxTextBytes);
+    }
+  }
+}
@@ -0,0 +1,47 @@
+/**
+ * WikiClean: A Java Wikipedia markup to plain text converter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wikiclean;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Output of a command-line tool for each article of a dump, e.g., its title or its plain text.
+ * The tools each write the output of one sink; {@link ExtractEnWiki} writes those of several from
+ * a single pass over the dump. Sinks may be called on several threads at once.
+ */
+@FunctionalInterface
+interface PageSink {
+  /**
+   * Returns the output of an article.
+   * @param page article
+   * @param text text of the article cleaned by a cleaner, which sinks with the same cleaner share
+   * @return output of the article, as lines that each end with a line separator, or null if none
+   */
+  String apply(Page page, Function<WikiClean, String> text);
+
+  /**
+   * Returns the text of an article cleaned by each cleaner, cleaning it at most once with each.
+   * @param page article
+   * @return text of the article cleaned by a cleaner
+   */
+  static Function<WikiClean, String> cleaned(Page page) {
+    Map<WikiClean, String> texts = new IdentityHashMap<>(4);
+    return cleaner -> texts.computeIfAbsent(cleaner, c -> c.clean(page));
+  }
+}
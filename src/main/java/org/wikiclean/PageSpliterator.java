@@ -0,0 +1,324 @@
+/**
+ * WikiClean: A Java Wikipedia markup to plain text converter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wikiclean;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Cleaner;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator over the pages of a dump, fed by a read-ahead thread. The read-ahead thread splits
+ * the dump into pages and copies their raw bytes into batches of roughly equal size in bytes;
+ * {@link #trySplit()} hands out whole batches, which can be split further by size. Pages are only
+ * decoded when they are consumed, so decoding and parsing run on the threads of a parallel stream.
+ * @param <T> type of the decoded pages
+ */
+final class PageSpliterator<T> implements Spliterator<T>, Closeable {
+  /**
+   * Decodes the raw bytes of a page.
+   * @param <T> type of the decoded page
+   */
+  @FunctionalInterface
+  interface Decoder<T> {
+    T decode(byte[] bytes, int offset, int length);
+  }
+
+  static final Decoder<String> STRINGS =
+      (bytes, offset, length) -> new String(bytes, offset, length, StandardCharsets.UTF_8);
+  static final Decoder<Page> PAGES = Page::parse;
+
+  private static final int BATCH_BYTES = 1 << 20;
+  private static final int DEFAULT_OFFSETS_CAPACITY = 256;
+  private static final Batch END = new Batch(new byte[0], new int[] {0}, new long[0], 0);
+
+  // Stops read-ahead threads of spliterators that are not closed, once they are unreachable.
+  private static final Cleaner CLEANER = Cleaner.create();
+
+  private final Decoder<T> decoder;
+  private final WikipediaArticlesDump.Progress progress;
+  private final ReadAhead readAhead;
+  private final Cleaner.Cleanable cleanable;
+
+  // Batch being consumed by tryAdvance, and position in it.
+  private Batch current = null;
+  private int index = 0;
+  private boolean done = false;
+
+  /**
+   * Pages of a batch are stored back to back; page i spans [offsets[i], offsets[i + 1]), and ends
+   * at the stream position ends[i].
+   */
+  private static final class Batch {
+    final byte[] bytes;
+    final int[] offsets;
+    final long[] ends;
+    final int count;
+
+    Batch(byte[] bytes, int[] offsets, long[] ends, int count) {
+      this.bytes = bytes;
+      this.offsets = offsets;
+      this.ends = ends;
+      this.count = count;
+    }
+  }
+
+  /**
+   * Class constructor.
+   * @param pages source of pages
+   * @param filter filter on the raw bytes of pages, or null to keep all pages
+   * @param decoder decoder for pages
+   * @param progress receives the pages handed out by {@link #tryAdvance(Consumer)}, may be null
+   */
+  PageSpliterator(PageSplitter pages, PageFilter filter, Decoder<T> decoder,
+      WikipediaArticlesDump.Progress progress) {
+    this.decoder = decoder;
+    this.progress = progress;
+    this.readAhead = new ReadAhead(pages, filter,
+        new ArrayBlockingQueue<>(2 * Runtime.getRuntime().availableProcessors() + 1));
+    // The read-ahead thread must not refer to this spliterator, or it would never be unreachable.
+    this.cleanable = CLEANER.register(this, readAhead::stop);
+    Thread reader = new Thread(readAhead, "wikiclean-reader");
+    reader.setDaemon(true);
+    reader.start();
+  }
+
+  /**
+   * Reads pages into batches on the read-ahead thread, until the dump ends or the spliterator is
+   * closed or unreachable.
+   */
+  private static final class ReadAhead implements Runnable {
+    private final PageSplitter pages;
+    private final PageFilter filter;
+    private final BlockingQueue<Batch> queue;
+    private volatile boolean stopped = false;
+    private volatile Throwable error = null;
+
+    ReadAhead(PageSplitter pages, PageFilter filter, BlockingQueue<Batch> queue) {
+      this.pages = pages;
+      this.filter = filter;
+      this.queue = queue;
+    }
+
+    @Override
+    public void run() {
+      try {
+        byte[] bytes = new byte[BATCH_BYTES];
+        int[] offsets = new int[DEFAULT_OFFSETS_CAPACITY];
+        long[] ends = new long[DEFAULT_OFFSETS_CAPACITY];
+        int count = 0;
+
+        while (!stopped && pages.next(filter)) {
+          int length = pages.length();
+          if (count > 0 && offsets[count] + length > BATCH_BYTES) {
+            put(new Batch(bytes, offsets, ends, count));
+            bytes = new byte[Math.max(BATCH_BYTES, length)];
+            offsets = new int[DEFAULT_OFFSETS_CAPACITY];
+            ends = new long[DEFAULT_OFFSETS_CAPACITY];
+            count = 0;
+          }
+          if (offsets[count] + length > bytes.length) {
+            bytes = Arrays.copyOf(bytes, offsets[count] + length);
+          }
+          if (count + 2 > offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            ends = Arrays.copyOf(ends, offsets.length);
+          }
+
+          pages.copyTo(bytes, offsets[count]);
+          offsets[count + 1] = offsets[count] + length;
+          ends[count] = pages.end();
+          count++;
+        }
+
+        if (count > 0) {
+          put(new Batch(bytes, offsets, ends, count));
+        }
+      } catch (Throwable t) {
+        error = t;
+      } finally {
+        try {
+          put(END);
+        } catch (InterruptedException e) {
+          // Nobody is waiting anymore.
+        }
+      }
+    }
+
+    // Waits for space in the queue, unless the consumer has gone away.
+    private void put(Batch batch) throws InterruptedException {
+      while (!stopped) {
+        if (queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+          return;
+        }
+      }
+    }
+
+    // Called on close, or by the cleaner once the spliterator is unreachable.
+    private void stop() {
+      stopped = true;
+      queue.clear();
+    }
+  }
+
+  private Batch take() {
+    if (done) {
+      return null;
+    }
+
+    Batch batch;
+    try {
+      batch = readAhead.queue.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new UncheckedIOException(new InterruptedIOException());
+    }
+
+    if (batch == END) {
+      done = true;
+      Throwable t = readAhead.error;
+      if (t instanceof IOException) {
+        throw new UncheckedIOException((IOException) t);
+      } else if (t instanceof RuntimeException) {
+        throw (RuntimeException) t;
+      } else if (t instanceof Error) {
+        throw (Error) t;
+      }
+      return null;
+    }
+    return batch;
+  }
+
+  @Override
+  public boolean tryAdvance(Consumer<? super T> action) {
+    while (current == null || index == current.count) {
+      current = take();
+      index = 0;
+      if (current == null) {
+        return false;
+      }
+    }
+
+    int i = index++;
+    if (progress != null) {
+      progress.consumed(current.ends[i], current.bytes, current.offsets[i],
+          current.offsets[i + 1] - current.offsets[i]);
+    }
+    action.accept(decode(current, i));
+    return true;
+  }
+
+  @Override
+  public Spliterator<T> trySplit() {
+    // The rest of the current batch comes first, to keep the split-off part a prefix.
+    if (current != null && index < current.count) {
+      Spliterator<T> prefix = new BatchSpliterator(current, index, current.count);
+      current = null;
+      return prefix;
+    }
+
+    Batch batch = take();
+    return batch == null ? null : new BatchSpliterator(batch, 0, batch.count);
+  }
+
+  @Override
+  public long estimateSize() {
+    return Long.MAX_VALUE;
+  }
+
+  @Override
+  public int characteristics() {
+    return ORDERED | NONNULL;
+  }
+
+  /**
+   * Stops the read-ahead thread. A spliterator that is not closed stops it once it is unreachable,
+   * i.e., only after it has been garbage collected.
+   */
+  @Override
+  public void close() {
+    cleanable.clean();
+  }
+
+  private T decode(Batch batch, int i) {
+    return decoder.decode(batch.bytes, batch.offsets[i], batch.offsets[i + 1] - batch.offsets[i]);
+  }
+
+  /**
+   * Spliterator over the pages [from, to) of a batch, which splits in halves by size in bytes.
+   */
+  private final class BatchSpliterator implements Spliterator<T> {
+    private final Batch batch;
+    private int from;
+    private final int to;
+
+    BatchSpliterator(Batch batch, int from, int to) {
+      this.batch = batch;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+      if (from == to) {
+        return false;
+      }
+      action.accept(decode(batch, from++));
+      return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super T> action) {
+      while (from < to) {
+        action.accept(decode(batch, from++));
+      }
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+      if (to - from < 2) {
+        return null;
+      }
+
+      int middle = Arrays.binarySearch(batch.offsets, from, to,
+          (batch.offsets[from] + batch.offsets[to]) >>> 1);
+      middle = middle < 0 ? -middle - 1 : middle;
+      middle = Math.max(from + 1, Math.min(to - 1, middle));
+
+      Spliterator<T> prefix = new BatchSpliterator(batch, from, middle);
+      from = middle;
+      return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+      return to - from;
+    }
+
+    @Override
+    public int characteristics() {
+      return ORDERED | NONNULL | SIZED | SUBSIZED;
+    }
+  }
+}
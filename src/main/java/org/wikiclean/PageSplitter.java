@@ -0,0 +1,428 @@
+/**
+ * WikiClean: A Java Wikipedia markup to plain text converter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wikiclean;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Splits the raw UTF-8 bytes of a dump into pages. Pages are found by scanning for the
+ * {@code <page>} and {@code </page>} tags and are handed out as slices of a buffer, extended to
+ * whole lines, without decoding anything. The slice of a page is valid until the next call to
+ * {@link #next()}.
+ *
+ * <p>Pages are either read from a stream into an internal buffer, or found directly in windows of
+ * an uncompressed file that are mapped into memory, in which case pages are decoded straight from
+ * the window, and the file is never copied into the Java heap except for what filters check.</p>
+ */
+final class PageSplitter implements Closeable {
+  private static final byte[] PAGE_START = "<page>".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] PAGE_END = "</page>".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] TEXT_START = "<text".getBytes(StandardCharsets.UTF_8);
+  private static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+  static final int DEFAULT_WINDOW_SIZE = 1 << 28;
+
+  // Either a stream, which is read into 'array', or a file, which is mapped in windows.
+  private final InputStream in;
+  private final FileChannel channel;
+  private final int windowSize;
+  private byte[] array;
+  private ByteBuffer buffer;
+  // Holds headers or pages of mapped files for filters, which take arrays.
+  private byte[] scratch = new byte[0];
+
+  // Stream position of the start of the buffer, and of the end of valid data.
+  private long base = 0;
+  private long limit = 0;
+  // Data before this stream position may be discarded.
+  private long mark = 0;
+  private boolean eof = false;
+
+  private long pageStart = 0;
+  private long pageEnd = 0;
+
+  PageSplitter(InputStream in) {
+    this.in = in;
+    this.channel = null;
+    this.windowSize = 0;
+    this.array = new byte[DEFAULT_BUFFER_SIZE];
+    this.buffer = ByteBuffer.wrap(array).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * Class constructor for an uncompressed file, which is mapped into memory in windows.
+   * @param channel file channel, which is closed along with this splitter
+   * @param windowSize size of the mapped windows in bytes; pages larger than a window are mapped
+   *     as a whole
+   */
+  PageSplitter(FileChannel channel, int windowSize) {
+    this.in = null;
+    this.channel = channel;
+    this.windowSize = windowSize;
+    this.array = null;
+    this.buffer = ByteBuffer.allocate(0);
+  }
+
+  /**
+   * Advances to the next page.
+   * @return whether there is another page
+   * @throws IOException if any I/O errors are encountered
+   */
+  boolean next() throws IOException {
+    return next(null);
+  }
+
+  /**
+   * Advances to the next page that passes a filter. A {@link PageHeaderFilter} is checked as soon
+   * as the page header has been read, and the text of rejected pages is skipped without being
+   * buffered; other filters are checked on the whole page.
+   * @param filter filter on the raw bytes of pages, or null to keep all pages
+   * @return whether there is another page
+   * @throws IOException if any I/O errors are encountered
+   */
+  boolean next(PageFilter filter) throws IOException {
+    PageHeaderFilter header = filter instanceof PageHeaderFilter ? (PageHeaderFilter) filter : null;
+    while (true) {
+      long i = findStart();
+      if (i < 0) {
+        return false;
+      }
+
+      PageHeaderFilter.Verdict verdict = null;
+      if (header != null) {
+        i = findHeaderEnd(i);
+        int length = (int) (i - pageStart);
+        verdict = header.acceptHeader(bytes(length), offset(), length);
+        if (verdict == PageHeaderFilter.Verdict.REJECT) {
+          findEnd(i, true);
+          continue;
+        }
+      }
+
+      findEnd(i, false);
+      if (filter == null || verdict == PageHeaderFilter.Verdict.ACCEPT ||
+          filter.accept(bytes(length()), offset(), length())) {
+        return true;
+      }
+    }
+  }
+
+  // Finds the next start tag and returns the stream position after it, or -1 at the end of the
+  // stream. The page starts at the beginning of the line of the start tag.
+  private long findStart() throws IOException {
+    long i = pageEnd;
+    long lineStart = pageEnd;
+    mark = pageEnd;
+
+    while (true) {
+      if (i + PAGE_START.length > limit && !fill(i + PAGE_START.length)) {
+        pageStart = pageEnd = limit;
+        close();
+        return -1;
+      }
+
+      byte b = at(i);
+      if (b == '\n') {
+        lineStart = i + 1;
+        mark = lineStart;
+      } else if (b == '<' && matches(i, PAGE_START)) {
+        break;
+      }
+      i++;
+    }
+    pageStart = lineStart;
+    mark = pageStart;
+    return i + PAGE_START.length;
+  }
+
+  // Returns the stream position after the text start tag, or of the end tag if the page has no
+  // text, or of the end of the stream for a truncated page.
+  private long findHeaderEnd(long i) throws IOException {
+    while (true) {
+      if (i + PAGE_END.length > limit && !fill(i + PAGE_END.length)) {
+        return limit;
+      }
+      if (at(i) == '<') {
+        if (matches(i, PAGE_END)) {
+          return i;
+        }
+        if (matches(i, TEXT_START) &&
+            PageHeaderFilter.isTagDelimiter(at(i + TEXT_START.length))) {
+          break;
+        }
+      }
+      i++;
+    }
+
+    while (true) {
+      if (i >= limit && !fill(i + 1)) {
+        return limit;
+      }
+      if (at(i) == '>') {
+        return i + 1;
+      }
+      i++;
+    }
+  }
+
+  // Finds the end tag, or the end of the stream for a truncated page, and sets the end of the
+  // page to the end of its line. If 'discard' is set, the page is skipped without buffering it.
+  private void findEnd(long i, boolean discard) throws IOException {
+    while (true) {
+      i = nextTag(i);
+      if (i + PAGE_END.length > limit) {
+        if (discard) {
+          mark = i;
+        }
+        if (!fill(i + PAGE_END.length)) {
+          pageEnd = limit;
+          return;
+        }
+        continue;
+      }
+      if (matches(i, PAGE_END)) {
+        break;
+      }
+      i++;
+    }
+
+    // Include the rest of the line.
+    i += PAGE_END.length;
+    while (true) {
+      if (i >= limit && !fill(i + 1)) {
+        pageEnd = limit;
+        return;
+      }
+      if (at(i) == '\n') {
+        pageEnd = i + 1;
+        return;
+      }
+      i++;
+    }
+  }
+
+  // Array that holds the first 'length' bytes of the current page, at offset().
+  private byte[] bytes(int length) {
+    if (array != null) {
+      return array;
+    }
+
+    if (scratch.length < length) {
+      scratch = new byte[Math.max(length, 2 * scratch.length)];
+    }
+    copyTo(length, scratch, 0);
+    return scratch;
+  }
+
+  private int offset() {
+    return array != null ? (int) (pageStart - base) : 0;
+  }
+
+  /**
+   * Copies the current page into an array.
+   * @param dst destination array
+   * @param offset offset in {@code dst}
+   */
+  void copyTo(byte[] dst, int offset) {
+    copyTo(length(), dst, offset);
+  }
+
+  private void copyTo(int length, byte[] dst, int offset) {
+    ByteBuffer page = buffer.duplicate();
+    page.position((int) (pageStart - base));
+    page.get(dst, offset, length);
+  }
+
+  /**
+   * @return length of the current page in bytes
+   */
+  int length() {
+    return (int) (pageEnd - pageStart);
+  }
+
+  /**
+   * @return stream position after the current page
+   */
+  long end() {
+    return pageEnd;
+  }
+
+  /**
+   * Skips forward to a stream position, e.g., the end of the last page read before a checkpoint.
+   * Pages are then looked for from that position on.
+   * @param position stream position
+   * @throws IOException if any I/O errors are encountered, or the stream ends first
+   */
+  void skip(long position) throws IOException {
+    if (position < pageEnd) {
+      throw new IllegalArgumentException("Cannot skip backwards to " + position);
+    }
+
+    if (position > limit && channel != null) {
+      if (position > channel.size()) {
+        throw new EOFException("File ends before position " + position);
+      }
+      base = limit = position;
+    } else if (position > limit) {
+      long remaining = position - limit;
+      while (remaining > 0) {
+        long n = in.skip(remaining);
+        if (n <= 0) {
+          if (in.read() < 0) {
+            throw new EOFException("Stream ends before position " + position);
+          }
+          n = 1;
+        }
+        remaining -= n;
+      }
+      base = limit = position;
+    }
+    pageStart = pageEnd = mark = position;
+  }
+
+  /**
+   * Decodes the current page.
+   * @return the current page
+   */
+  String decode() {
+    if (array != null) {
+      return new String(array, offset(), length(), StandardCharsets.UTF_8);
+    }
+
+    // The window always holds the whole page, which is decoded from it without being copied.
+    ByteBuffer page = buffer.duplicate();
+    page.position((int) (pageStart - base)).limit((int) (pageEnd - base));
+    return StandardCharsets.UTF_8.decode(page).toString();
+  }
+
+  /**
+   * @return size of the buffer, or of the current window of a mapped file
+   */
+  int bufferSize() {
+    return buffer.capacity();
+  }
+
+  // Returns the position of the next '<' at or after the stream position i, or the end of valid
+  // data if there is none. Eight bytes are checked at a time, which matters for long texts.
+  private long nextTag(long i) {
+    int k = (int) (i - base);
+    int end = (int) (limit - base);
+    for (; k + 8 <= end; k += 8) {
+      // Has a zero byte where the word has a '<'; exact for the first one in little-endian order.
+      long w = buffer.getLong(k) ^ 0x3c3c3c3c3c3c3c3cL;
+      long t = (w - 0x0101010101010101L) & ~w & 0x8080808080808080L;
+      if (t != 0) {
+        return base + k + (Long.numberOfTrailingZeros(t) >>> 3);
+      }
+    }
+    while (k < end && buffer.get(k) != '<') {
+      k++;
+    }
+    return base + k;
+  }
+
+  private byte at(long i) {
+    return buffer.get((int) (i - base));
+  }
+
+  private boolean matches(long i, byte[] tag) {
+    int k = (int) (i - base);
+    for (int j = 1; j < tag.length; j++) {
+      if (buffer.get(k + j) != tag[j]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Reads until the stream position 'needed' is buffered, discarding data before the mark.
+  // Returns false if the stream ends first.
+  private boolean fill(long needed) throws IOException {
+    if (channel != null) {
+      return map(needed);
+    }
+
+    while (limit < needed) {
+      if (eof) {
+        return false;
+      }
+
+      int keep = (int) (mark - base);
+      if (keep > 0) {
+        System.arraycopy(array, keep, array, 0, (int) (limit - mark));
+        base = mark;
+      }
+      if (limit - base == array.length) {
+        array = Arrays.copyOf(array, array.length * 2);
+        buffer = ByteBuffer.wrap(array).order(ByteOrder.LITTLE_ENDIAN);
+      }
+
+      int n = in.read(array, (int) (limit - base), array.length - (int) (limit - base));
+      if (n < 0) {
+        eof = true;
+      } else {
+        limit += n;
+      }
+    }
+    return true;
+  }
+
+  // Maps the window of the file that starts at the mark and includes the stream position
+  // 'needed'. Returns false if the file ends first.
+  private boolean map(long needed) throws IOException {
+    if (eof) {
+      return false;
+    }
+
+    long size = channel.size();
+    if (limit >= size) {
+      eof = true;
+      return false;
+    }
+
+    // Windows grow geometrically for pages that do not fit.
+    long length = Math.min(size - mark,
+        Math.max(Math.max(windowSize, 2 * (limit - mark)), needed - mark));
+    if (length > Integer.MAX_VALUE) {
+      throw new IOException("Page at offset " + mark + " is too large to map");
+    }
+    buffer = channel.map(FileChannel.MapMode.READ_ONLY, mark, length);
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    base = mark;
+    limit = mark + length;
+    return limit >= needed;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (in != null) {
+      in.close();
+    } else {
+      channel.close();
+      // Release the mapping.
+      buffer = ByteBuffer.allocate(0);
+      base = limit;
+      eof = true;
+    }
+  }
+}
@@ -0,0 +1,276 @@
+/**
+ * WikiClean: A Java Wikipedia markup to plain text converter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wikiclean;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Processes the pages of a dump on a pool of worker threads, e.g., to clean them, and writes the
+ * results on a single writer thread, in the order of the pages or as soon as they are ready. The
+ * calling thread reads the pages. Pages that have been read but whose results have not been
+ * written yet are limited in number and in total length of markup, so that memory stays bounded
+ * even when a page that takes long holds up the pages after it; a page longer than the limit is
+ * let in alone.
+ * @param <T> type of the results
+ */
+final class ParallelPages<T> {
+  // Pages in flight per worker thread, and characters of markup in flight in total.
+  static final int PAGES_PER_THREAD = 64;
+  static final long MAX_CHARS = 1L << 26;
+  // How often the writer checks for a failure while it waits for a result.
+  private static final long POLL_MILLIS = 100;
+
+  /**
+   * Writes the results, on the writer thread.
+   * @param <T> type of the results
+   */
+  @FunctionalInterface
+  interface Writer<T> {
+    /**
+     * Writes the result of a page.
+     * @param pageId page id of the page
+     * @param result result of the page
+     * @param mark what {@code marks} returned after the page was read
+     * @throws IOException if the result cannot be written
+     */
+    void write(long pageId, T result, DumpCheckpoint mark) throws IOException;
+  }
+
+  private final int threads;
+  private final boolean ordered;
+  private final int maxPages;
+  private final long maxChars;
+
+  /**
+   * Class constructor.
+   * @param threads number of worker threads
+   * @param ordered whether to write the results in the order of the pages
+   */
+  ParallelPages(int threads, boolean ordered) {
+    this(threads, ordered, PAGES_PER_THREAD * threads, MAX_CHARS);
+  }
+
+  /**
+   * Class constructor.
+   * @param threads number of worker threads
+   * @param ordered whether to write the results in the order of the pages
+   * @param maxPages number of pages in flight beyond which reading waits
+   * @param maxChars characters of markup in flight beyond which reading waits
+   */
+  ParallelPages(int threads, boolean ordered, int maxPages, long maxChars) {
+    this.threads = threads;
+    this.ordered = ordered;
+    this.maxPages = maxPages;
+    this.maxChars = maxChars;
+  }
+
+  /**
+   * Processes pages until there are no more, and waits for all results to be written.
+   * @param pages pages, which are read on the calling thread
+   * @param marks called on the calling thread after each page is read, e.g., to take a
+   *     checkpoint, which is passed to the writer along with the result of the page
+   * @param worker processes a page, on a worker thread
+   * @param writer writes the result of a page, on the writer thread
+   * @throws IOException if a page cannot be read, processed, or written
+   */
+  void run(Iterator<Page> pages, Supplier<DumpCheckpoint> marks, Function<Page, T> worker,
+      Writer<? super T> writer) throws IOException {
+    Window window = new Window();
+    BlockingQueue<Future<Item<T>>> results = new LinkedBlockingQueue<>();
+    FutureTask<Item<T>> end = new FutureTask<>(() -> null);
+    ExecutorService workers = Executors.newFixedThreadPool(threads, r -> {
+      Thread t = new Thread(r, "wikiclean-worker");
+      t.setDaemon(true);
+      return t;
+    });
+    Thread writing = new Thread(() -> write(results, end, writer, window), "wikiclean-writer");
+    writing.setDaemon(true);
+    writing.start();
+
+    try {
+      while (pages.hasNext()) {
+        Page page = pages.next();
+        DumpCheckpoint mark = marks.get();
+        long chars = page.getWikiMarkup().length();
+        if (!window.acquire(chars)) {
+          break;
+        }
+
+        long id = page.getId();
+        FutureTask<Item<T>> task =
+            new FutureTask<Item<T>>(() -> new Item<>(id, worker.apply(page), mark, chars)) {
+              @Override
+              protected void done() {
+                if (!ordered) {
+                  results.add(this);
+                }
+              }
+            };
+        if (ordered) {
+          results.add(task);
+        }
+        workers.execute(task);
+      }
+    } catch (UncheckedIOException e) {
+      window.abort(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      window.abort(new InterruptedIOException());
+    } catch (RuntimeException | Error e) {
+      window.abort(e);
+    } finally {
+      finish(workers, writing, results, end, window);
+    }
+
+    Throwable failure = window.failure();
+    if (failure instanceof IOException) {
+      throw (IOException) failure;
+    } else if (failure instanceof RuntimeException) {
+      throw (RuntimeException) failure;
+    } else if (failure instanceof Error) {
+      throw (Error) failure;
+    } else if (failure != null) {
+      throw new IOException(failure);
+    }
+  }
+
+  // Waits for the pages in flight to be processed and written, unless something failed.
+  private void finish(ExecutorService workers, Thread writing,
+      BlockingQueue<Future<Item<T>>> results, FutureTask<Item<T>> end, Window window) {
+    if (window.failure() != null) {
+      cancel(workers, results);
+    } else {
+      workers.shutdown();
+    }
+
+    boolean interrupted = false;
+    while (true) {
+      try {
+        // Results are all queued once the workers are done, so the end comes last.
+        workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        results.add(end);
+        writing.join();
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+        window.abort(new InterruptedIOException());
+        cancel(workers, results);
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  // Stops the workers, and cancels the pages that they will not get to, or that are being
+  // processed, so that the writer does not wait for them.
+  private void cancel(ExecutorService workers, BlockingQueue<Future<Item<T>>> results) {
+    for (Runnable task : workers.shutdownNow()) {
+      ((Future<?>) task).cancel(false);
+    }
+    for (Future<Item<T>> result : results) {
+      result.cancel(false);
+    }
+  }
+
+  private void write(BlockingQueue<Future<Item<T>>> results, FutureTask<Item<T>> end,
+      Writer<? super T> writer, Window window) {
+    try {
+      for (Future<Item<T>> next = results.take(); next != end; next = results.take()) {
+        Item<T> item = null;
+        while (item == null) {
+          if (window.failure() != null) {
+            return;
+          }
+          try {
+            item = next.get(POLL_MILLIS, TimeUnit.MILLISECONDS);
+          } catch (TimeoutException e) {
+            // Checks for a failure again.
+          }
+        }
+        writer.write(item.pageId, item.result, item.mark);
+        window.release(item.chars);
+      }
+    } catch (ExecutionException e) {
+      window.abort(e.getCause());
+    } catch (Throwable e) {
+      window.abort(e);
+    }
+  }
+
+  private static final class Item<T> {
+    private final long pageId;
+    private final T result;
+    private final DumpCheckpoint mark;
+    private final long chars;
+
+    private Item(long pageId, T result, DumpCheckpoint mark, long chars) {
+      this.pageId = pageId;
+      this.result = result;
+      this.mark = mark;
+      this.chars = chars;
+    }
+  }
+
+  // Pages and characters of markup in flight, which reading waits on, and the first failure.
+  private final class Window {
+    private int pages = 0;
+    private long chars = 0;
+    private Throwable failure;
+
+    // Returns false if something failed, in which case no more pages should be read.
+    synchronized boolean acquire(long n) throws InterruptedException {
+      while (failure == null && pages > 0 && (pages >= maxPages || chars + n > maxChars)) {
+        wait();
+      }
+      pages++;
+      chars += n;
+      return failure == null;
+    }
+
+    synchronized void release(long n) {
+      pages--;
+      chars -= n;
+      notifyAll();
+    }
+
+    synchronized void abort(Throwable e) {
+      if (failure == null) {
+        failure = e;
+      }
+      notifyAll();
+    }
+
+    synchronized Throwable failure() {
+      return failure;
+    }
+  }
+}
@@ -0,0 +1,310 @@
+/**
+ * WikiClean: A Java Wikipedia markup to plain text converter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wikiclean;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Output of a command-line tool that is split into part files in a directory, {@code part-00000},
+ * {@code part-00001}, and so on, e.g., to be read in parallel by downstream jobs. Articles are
+ * either spread over a fixed number of parts by a hash of their page id, or written to one part
+ * after the other, rolling over to the next one once a part reaches a given size.
+ *
+ * <p>Each part is written in blocks of about a million characters, which are encoded and, if
+ * compression is on, compressed on a pool of threads, each block into a gzip member of its own.
+ * A gzip file of several members decompresses into the concatenation of their contents, so parts
+ * are ordinary {@code .gz} files, which can be resumed by appending more members.</p>
+ *
+ * <p>Not thread-safe: the output of articles is written on one thread.</p>
+ */
+final class ShardedOutput implements CheckpointedOutput.Target {
+  // Characters per block, which are encoded and compressed separately.
+  static final int BLOCK_CHARS = 1 << 20;
+  // Blocks of a part being compressed or waiting to be written, beyond which writing waits.
+  private static final int MAX_PENDING = 4;
+  private static final Pattern PART = Pattern.compile("part-\\d{5}(\\.gz)?");
+
+  private final File dir;
+  private final long partSize;
+  private final boolean compress;
+  private final ExecutorService encoders;
+  private final Shard[] shards;
+  // Sizes of the parts that have been rolled over from, when rolling over by size.
+  private final List<Long> finished = new ArrayList<>();
+
+  /**
+   * Class constructor.
+   * @param dir directory of the part files, which is created if need be
+   * @param shards number of parts to spread articles over by page id, or 0 to roll over by size
+   * @param partSize size in bytes at which to roll over to the next part, if {@code shards} is 0
+   * @param compress whether to compress the parts with gzip
+   * @param threads number of threads to encode and compress blocks on
+   */
+  ShardedOutput(File dir, int shards, long partSize, boolean compress, int threads) {
+    if (shards < 0 || shards == 0 && partSize <= 0) {
+      throw new IllegalArgumentException("Either shards or part size must be positive");
+    }
+
+    this.dir = dir;
+    this.partSize = shards > 0 ? Long.MAX_VALUE : partSize;
+    this.compress = compress;
+    this.shards = new Shard[Math.max(shards, 1)];
+    for (int i = 0; i < this.shards.length; i++) {
+      this.shards[i] = new Shard(i);
+    }
+    this.encoders = Executors.newFixedThreadPool(Math.max(threads, 1), r -> {
+      Thread t = new Thread(r, "wikiclean-encoder");
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  /**
+   * Opens the part files, either anew, in which case any existing part files in the directory
+   * are deleted, or to resume after a checkpoint, in which case output written after it is
+   * discarded.
+   * @param sizes sizes of the parts from {@link #sync()} at the checkpoint, or null to start anew
+   * @throws IOException if any file-related errors are encountered, or the sizes do not match
+   */
+  @Override
+  public void open(long[] sizes) throws IOException {
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Cannot create output directory " + dir);
+    }
+
+    if (sizes == null) {
+      File[] parts = dir.listFiles((d, name) -> PART.matcher(name).matches());
+      for (File part : parts == null ? new File[0] : parts) {
+        if (!part.delete()) {
+          throw new IOException("Cannot delete " + part);
+        }
+      }
+      for (Shard shard : shards) {
+        shard.open(0);
+      }
+      return;
+    }
+
+    if (partSize == Long.MAX_VALUE) {
+      if (sizes.length != shards.length) {
+        throw new IOException("Checkpoint has " + sizes.length + " parts, not " + shards.length);
+      }
+      for (int i = 0; i < shards.length; i++) {
+        shards[i].open(sizes[i]);
+      }
+      return;
+    }
+
+    // Parts after the last one at the checkpoint are discarded.
+    int last = Math.max(sizes.length - 1, 0);
+    for (int i = 0; i < last; i++) {
+      finished.add(sizes[i]);
+    }
+    for (int part = last + 1; file(part).exists(); part++) {
+      if (!file(part).delete()) {
+        throw new IOException("Cannot delete " + file(part));
+      }
+    }
+    shards[0].part = last;
+    shards[0].open(sizes.length == 0 ? 0 : sizes[last]);
+  }
+
+  private File file(int part) {
+    return new File(dir, String.format("part-%05d%s", part, compress ? ".gz" : ""));
+  }
+
+  /**
+   * Returns the writer for the output of an article.
+   * @param pageId page id of the article
+   * @return writer of the part of the article
+   */
+  @Override
+  public PrintWriter writer(long pageId) {
+    if (shards.length == 1) {
+      return shards[0].writer;
+    }
+    // The ids are mixed first, since consecutive ids would be spread evenly, but ids that are
+    // multiples of the number of shards would all go to the same one.
+    return shards[Math.floorMod(pageId * 0x9E3779B97F4A7C15L >>> 16, shards.length)].writer;
+  }
+
+  /**
+   * Marks the output of an article as complete, after which full blocks are sent to be encoded.
+   * @throws IOException if any file-related errors are encountered
+   */
+  @Override
+  public void commit() throws IOException {
+    for (Shard shard : shards) {
+      if (shard.text.getBuffer().length() >= BLOCK_CHARS) {
+        shard.flushBlock();
+      }
+      shard.drain(false);
+    }
+  }
+
+  /**
+   * Writes all output so far to disk, for a checkpoint.
+   * @return sizes of the parts in bytes: of each part when spreading articles by page id, or of
+   *     all parts written so far when rolling over by size
+   * @throws IOException if any file-related errors are encountered
+   */
+  @Override
+  public long[] sync() throws IOException {
+    for (Shard shard : shards) {
+      shard.flushBlock();
+      shard.drain(true);
+      shard.out.getChannel().force(false);
+    }
+
+    if (partSize == Long.MAX_VALUE) {
+      return Arrays.stream(shards).mapToLong(shard -> shard.size).toArray();
+    }
+    long[] sizes = new long[finished.size() + 1];
+    for (int i = 0; i < finished.size(); i++) {
+      sizes[i] = finished.get(i);
+    }
+    sizes[finished.size()] = shards[0].size;
+    return sizes;
+  }
+
+  /**
+   * Writes all output and closes the part files.
+   * @throws IOException if any file-related errors are encountered
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      for (Shard shard : shards) {
+        if (shard.out == null) {
+          continue;
+        }
+        shard.flushBlock();
+        shard.drain(true);
+        // An empty file is not valid gzip, unlike an empty member.
+        if (compress && shard.size == 0) {
+          shard.out.write(encode(""));
+        }
+        shard.out.close();
+      }
+    } finally {
+      encoders.shutdownNow();
+    }
+  }
+
+  private byte[] encode(String block) throws IOException {
+    byte[] bytes = block.getBytes(StandardCharsets.UTF_8);
+    if (!compress) {
+      return bytes;
+    }
+
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 3 + 64);
+    try (OutputStream out = new GZIPOutputStream(compressed, 1 << 16)) {
+      out.write(bytes);
+    }
+    return compressed.toByteArray();
+  }
+
+  // Part being written, with the text of its current block and the blocks being encoded.
+  private final class Shard {
+    private final StringWriter text = new StringWriter();
+    private final PrintWriter writer = new PrintWriter(text);
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+    private int part;
+    private FileOutputStream out;
+    private long size;
+
+    private Shard(int part) {
+      this.part = part;
+    }
+
+    // Opens the part, truncated to a size.
+    private void open(long size) throws IOException {
+      File file = file(part);
+      if (size > 0) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+          if (channel.size() < size) {
+            throw new IOException("Output " + file + " is shorter than at the checkpoint");
+          }
+          channel.truncate(size);
+        }
+      }
+      this.out = new FileOutputStream(file, size > 0);
+      this.size = size;
+    }
+
+    private void flushBlock() {
+      StringBuffer buffer = text.getBuffer();
+      if (buffer.length() == 0) {
+        return;
+      }
+      String block = buffer.toString();
+      buffer.setLength(0);
+      pending.add(encoders.submit(() -> encode(block)));
+    }
+
+    // Writes the blocks that have been encoded, in order, or all of them; waits for the oldest
+    // ones if there are too many.
+    private void drain(boolean all) throws IOException {
+      while (!pending.isEmpty()
+          && (all || pending.size() > MAX_PENDING || pending.peekFirst().isDone())) {
+        byte[] bytes;
+        try {
+          bytes = pending.removeFirst().get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+          if (e.getCause() instanceof IOException) {
+            throw (IOException) e.getCause();
+          }
+          throw new IOException(e.getCause());
+        }
+
+        // Parts are rolled over from only when there is more to write, so none is left empty.
+        if (size >= partSize && bytes.length > 0) {
+          out.close();
+          finished.add(size);
+          part++;
+          open(0);
+        }
+        out.write(bytes);
+        size += bytes.length;
+      }
+    }
+  }
+}
@@ -0,0 +1,147 @@
+/**
+ * WikiClean: A Java Wikipedia markup to plain text converter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wikiclean;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Collects the time and the text lengths of the stages of a {@link WikiClean}. Each thread records
+ * into counters of its own, which only it writes, so recording takes no locks and no atomic
+ * read-modify-write operations; snapshots add up the counters of all threads.
+ */
+final class StatsRecorder {
+  // Four buckets per power of two, for times up to 2^63 ns.
+  private static final int BUCKETS = 256;
+
+  private final String[] names;
+  private final Queue<Counters> all = new ConcurrentLinkedQueue<>();
+  private final ThreadLocal<Counters> counters = ThreadLocal.withInitial(() -> {
+    Counters c = new Counters();
+    all.add(c);
+    return c;
+  });
+
+  /**
+   * Class constructor.
+   * @param names names of the stages, which are recorded by index
+   */
+  StatsRecorder(String... names) {
+    this.names = names.clone();
+  }
+
+  /**
+   * Returns the counters of the calling thread.
+   * @return counters of the calling thread
+   */
+  Counters counters() {
+    return counters.get();
+  }
+
+  /**
+   * Adds up the counters of all threads.
+   * @return statistics of whole articles and of the stages that ran
+   */
+  CleanerStats snapshot() {
+    CleanerStats.Stage article = null;
+    List<CleanerStats.Stage> stages = new ArrayList<>();
+    for (int stage = 0; stage <= names.length; stage++) {
+      long calls = 0;
+      long nanos = 0;
+      long charsIn = 0;
+      long charsOut = 0;
+      long[] histogram = new long[BUCKETS];
+      for (Counters c : all) {
+        calls += c.calls.get(stage);
+        nanos += c.nanos.get(stage);
+        charsIn += c.charsIn.get(stage);
+        charsOut += c.charsOut.get(stage);
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+          histogram[bucket] += c.histogram.get(stage * BUCKETS + bucket);
+        }
+      }
+
+      if (stage == names.length) {
+        article = new CleanerStats.Stage("article", calls, nanos, charsIn, charsOut, histogram);
+      } else if (calls > 0) {
+        stages.add(new CleanerStats.Stage(names[stage], calls, nanos, charsIn, charsOut, histogram));
+      }
+    }
+    return new CleanerStats(article, stages);
+  }
+
+  static int bucket(long nanos) {
+    if (nanos < 4) {
+      return (int) Math.max(nanos, 0);
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+    return (exponent - 1) * 4 + (int) (nanos >>> (exponent - 2) & 3);
+  }
+
+  static long upperBound(int bucket) {
+    if (bucket < 4) {
+      return bucket;
+    }
+    int exponent = bucket / 4 + 1;
+    long upper = (long) (4 + bucket % 4 + 1) << (exponent - 2);
+    return upper < 0 ? Long.MAX_VALUE : upper - 1;
+  }
+
+  /**
+   * Counters of one thread. Only that thread writes them, with ordered stores, so other threads
+   * see consistent values.
+   */
+  final class Counters {
+    private final AtomicLongArray calls = new AtomicLongArray(names.length + 1);
+    private final AtomicLongArray nanos = new AtomicLongArray(names.length + 1);
+    private final AtomicLongArray charsIn = new AtomicLongArray(names.length + 1);
+    private final AtomicLongArray charsOut = new AtomicLongArray(names.length + 1);
+    private final AtomicLongArray histogram = new AtomicLongArray((names.length + 1) * BUCKETS);
+
+    /**
+     * Records a run of a stage.
+     * @param stage index of the stage
+     * @param nanos time taken
+     * @param in length of the text before
+     * @param out length of the text after
+     */
+    void record(int stage, long nanos, int in, int out) {
+      add(calls, stage, 1);
+      add(this.nanos, stage, nanos);
+      add(charsIn, stage, in);
+      add(charsOut, stage, out);
+      add(histogram, stage * BUCKETS + bucket(nanos), 1);
+    }
+
+    /**
+     * Records the cleaning of a whole article.
+     * @param nanos time taken
+     * @param in length of the markup
+     * @param out length of the cleaned text
+     */
+    void recordArticle(long nanos, int in, int out) {
+      record(names.length, nanos, in, out);
+    }
+
+    private void add(AtomicLongArray a, int i, long delta) {
+      a.lazySet(i, a.get(i) + delta);
+    }
+  }
+}
@@ -0,0 +1,393 @@
+/**
+ * WikiClean: A Java Wikipedia markup to plain text converter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wikiclean;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact dictionary from article titles to page ids, e.g., to resolve the targets of links. The
+ * titles are sorted and front-coded, i.e., each is stored as the length of the prefix it shares
+ * with the one before and the rest, in buckets of {@link #BUCKET_SIZE} that each start with a
+ * title in full. A lookup is a binary search over the first titles of the buckets, followed by a
+ * scan of one bucket. Dictionaries are built with a {@link Builder} and written to a file, which
+ * is mapped into memory when opened, so that it is not loaded into the heap, opens instantly, and
+ * is shared by all processes that open it:
+ *
+ * <pre>
+ * TitleDictionary titles = TitleDictionary.open(new File("enwiki-titles.dict"));
+ * int id = titles.get("Anarchism");
+ * </pre>
+ *
+ * <p>The file holds a header ({@link #MAGIC}, version, number of titles, bucket size, and length
+ * of the longest title), the ids in title order, the offsets of the buckets, and the buckets. All
+ * numbers are big-endian, and titles are UTF-8, sorted by their bytes. Dictionaries are
+ * thread-safe.</p>
+ */
+public final class TitleDictionary {
+  /** First four bytes of a dictionary file, "WCTD". */
+  public static final int MAGIC = 0x57435444;
+  static final int BUCKET_SIZE = 16;
+  private static final int VERSION = 1;
+  private static final int HEADER = 5 * Integer.BYTES;
+
+  private final ByteBuffer buffer;
+  private final int size;
+  private final int bucketSize;
+  private final int maxLength;
+  private final int buckets;
+  private final int offsets;
+  private final int strings;
+
+  private TitleDictionary(ByteBuffer buffer) throws IOException {
+    this.buffer = buffer;
+    if (buffer.limit() < HEADER || buffer.getInt(0) != MAGIC) {
+      throw new IOException("Not a title dictionary");
+    }
+    if (buffer.getInt(4) != VERSION) {
+      throw new IOException("Unsupported title dictionary version " + buffer.getInt(4));
+    }
+    size = buffer.getInt(8);
+    bucketSize = buffer.getInt(12);
+    maxLength = buffer.getInt(16);
+    if (size < 0 || bucketSize <= 0
+        || HEADER + (size + (size + (long) bucketSize - 1) / bucketSize) * Integer.BYTES
+            > buffer.limit()) {
+      throw new IOException("Invalid title dictionary");
+    }
+    buckets = (int) ((size + (long) bucketSize - 1) / bucketSize);
+    offsets = HEADER + size * Integer.BYTES;
+    strings = offsets + buckets * Integer.BYTES;
+  }
+
+  /**
+   * Opens a dictionary file, which is mapped into memory.
+   * @param file dictionary file, written by {@link Builder#write(File)}
+   * @return the dictionary
+   * @throws IOException if any file-related errors are encountered, or the file is not a
+   *     dictionary
+   */
+  public static TitleDictionary open(File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("Title dictionary " + file + " is larger than 2 GB");
+      }
+      // The mapping stays valid after the channel is closed.
+      return new TitleDictionary(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  /**
+   * Tells whether a file is a dictionary file, from its first bytes.
+   * @param file file to check
+   * @return whether the file is a dictionary file
+   * @throws IOException if any file-related errors are encountered
+   */
+  public static boolean isDictionary(File file) throws IOException {
+    try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+      return file.length() >= HEADER && in.readInt() == MAGIC;
+    }
+  }
+
+  /**
+   * Loads a tab-separated file of page ids and titles, as written by
+   * {@link DumpEnWikiArticleTitles}, or opens a dictionary file.
+   * @param file tab-separated file of ids and titles, or dictionary file
+   * @return the dictionary
+   * @throws IOException if any file-related errors are encountered
+   */
+  public static TitleDictionary load(File file) throws IOException {
+    if (isDictionary(file)) {
+      return open(file);
+    }
+    return new Builder().addAll(file).build();
+  }
+
+  /**
+   * @return number of titles
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the page id of a title.
+   * @param title title, matched exactly
+   * @return page id of the title, or -1 if there is none
+   */
+  public int get(String title) {
+    byte[] key = title.getBytes(StandardCharsets.UTF_8);
+    if (key.length > maxLength || size == 0) {
+      return -1;
+    }
+
+    // Last bucket whose first title is not greater than the key.
+    int lo = 0;
+    int hi = buckets - 1;
+    while (lo < hi) {
+      int mid = (lo + hi + 1) >>> 1;
+      int at = strings + buffer.getInt(offsets + mid * Integer.BYTES);
+      int length = readVarInt(at);
+      int cmp = compare(key, at + varIntSize(length), length);
+      if (cmp == 0) {
+        return id(mid * bucketSize);
+      } else if (cmp < 0) {
+        hi = mid - 1;
+      } else {
+        lo = mid;
+      }
+    }
+
+    byte[] term = new byte[maxLength];
+    int length = 0;
+    int at = strings + buffer.getInt(offsets + lo * Integer.BYTES);
+    int end = Math.min(size, (lo + 1) * bucketSize);
+    for (int i = lo * bucketSize; i < end; i++) {
+      int shared = 0;
+      if (i != lo * bucketSize) {
+        shared = readVarInt(at);
+        at += varIntSize(shared);
+      }
+      int suffix = readVarInt(at);
+      at += varIntSize(suffix);
+      for (int j = 0; j < suffix; j++) {
+        term[shared + j] = buffer.get(at + j);
+      }
+      at += suffix;
+      length = shared + suffix;
+
+      int cmp = compare(key, term, length);
+      if (cmp == 0) {
+        return id(i);
+      } else if (cmp < 0) {
+        break;
+      }
+    }
+    return -1;
+  }
+
+  private int id(int index) {
+    return buffer.getInt(HEADER + index * Integer.BYTES);
+  }
+
+  // Compares bytes as unsigned, like the titles are sorted.
+  private int compare(byte[] key, int at, int length) {
+    int n = Math.min(key.length, length);
+    for (int i = 0; i < n; i++) {
+      int cmp = (key[i] & 0xff) - (buffer.get(at + i) & 0xff);
+      if (cmp != 0) {
+        return cmp;
+      }
+    }
+    return key.length - length;
+  }
+
+  private static int compare(byte[] key, byte[] term, int length) {
+    int n = Math.min(key.length, length);
+    for (int i = 0; i < n; i++) {
+      int cmp = (key[i] & 0xff) - (term[i] & 0xff);
+      if (cmp != 0) {
+        return cmp;
+      }
+    }
+    return key.length - length;
+  }
+
+  private int readVarInt(int at) {
+    int value = 0;
+    for (int shift = 0; ; shift += 7) {
+      byte b = buffer.get(at++);
+      value |= (b & 0x7f) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+  }
+
+  private static int varIntSize(int value) {
+    int size = 1;
+    while ((value >>>= 7) != 0) {
+      size++;
+    }
+    return size;
+  }
+
+  /**
+   * Builder for a dictionary. Titles are collected in memory, so dictionaries of large dumps are
+   * best built once and written to a file.
+   */
+  public static class Builder {
+    private final List<Entry> entries = new ArrayList<>();
+
+    /**
+     * Constructs a builder with no titles.
+     */
+    public Builder() {}
+
+    /**
+     * Adds a title; if a title is added more than once, its last id is kept.
+     * @param title title
+     * @param id page id, not negative
+     * @return this builder
+     */
+    public Builder add(String title, int id) {
+      if (id < 0) {
+        throw new IllegalArgumentException("Negative page id " + id + " for " + title);
+      }
+      entries.add(new Entry(title.getBytes(StandardCharsets.UTF_8), id, entries.size()));
+      return this;
+    }
+
+    /**
+     * Adds the titles of a tab-separated file of page ids and titles, as written by
+     * {@link DumpEnWikiArticleTitles}.
+     * @param file tab-separated file of ids and titles
+     * @return this builder
+     * @throws IOException if any file-related errors are encountered
+     */
+    public Builder addAll(File file) throws IOException {
+      try (BufferedReader reader = new BufferedReader(
+          new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+          int tab = line.indexOf('\t');
+          if (tab < 0) {
+            throw new IOException("No tab in line of " + file + ": " + line);
+          }
+          add(line.substring(tab + 1), Integer.parseInt(line.substring(0, tab)));
+        }
+      }
+      return this;
+    }
+
+    /**
+     * Builds the dictionary in the heap.
+     * @return the dictionary
+     */
+    public TitleDictionary build() {
+      try {
+        return new TitleDictionary(encode());
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    /**
+     * Writes the dictionary to a file, to be opened with {@link TitleDictionary#open(File)}.
+     * @param file dictionary file
+     * @throws IOException if any file-related errors are encountered
+     */
+    public void write(File file) throws IOException {
+      ByteBuffer buffer = encode();
+      try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+      }
+    }
+
+    private ByteBuffer encode() {
+      // Equal titles are ordered as added, so that the last of them is kept.
+      entries.sort((a, b) -> {
+        int cmp = compare(a.title, b.title, b.title.length);
+        return cmp != 0 ? cmp : Integer.compare(a.order, b.order);
+      });
+      List<Entry> unique = new ArrayList<>(entries.size());
+      for (int i = 0; i < entries.size(); i++) {
+        if (i + 1 == entries.size()
+            || compare(entries.get(i).title, entries.get(i + 1).title,
+                entries.get(i + 1).title.length) != 0) {
+          unique.add(entries.get(i));
+        }
+      }
+
+      int size = unique.size();
+      int buckets = (size + BUCKET_SIZE - 1) / BUCKET_SIZE;
+      int[] offsets = new int[buckets];
+      int maxLength = 0;
+      ByteArrayOutputStream strings = new ByteArrayOutputStream();
+      byte[] previous = new byte[0];
+      for (int i = 0; i < size; i++) {
+        byte[] title = unique.get(i).title;
+        maxLength = Math.max(maxLength, title.length);
+        if (i % BUCKET_SIZE == 0) {
+          offsets[i / BUCKET_SIZE] = strings.size();
+          writeVarInt(strings, title.length);
+          strings.write(title, 0, title.length);
+        } else {
+          int shared = 0;
+          while (shared < title.length && shared < previous.length
+              && title[shared] == previous[shared]) {
+            shared++;
+          }
+          writeVarInt(strings, shared);
+          writeVarInt(strings, title.length - shared);
+          strings.write(title, shared, title.length - shared);
+        }
+        previous = title;
+      }
+
+      long total = (long) HEADER + (long) size * Integer.BYTES + (long) buckets * Integer.BYTES
+          + strings.size();
+      if (total > Integer.MAX_VALUE) {
+        throw new IllegalStateException("Title dictionary would be larger than 2 GB");
+      }
+      ByteBuffer buffer = ByteBuffer.allocate((int) total);
+      buffer.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(BUCKET_SIZE).putInt(maxLength);
+      for (Entry entry : unique) {
+        buffer.putInt(entry.id);
+      }
+      for (int offset : offsets) {
+        buffer.putInt(offset);
+      }
+      buffer.put(strings.toByteArray());
+      buffer.flip();
+      return buffer;
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+      while ((value & ~0x7f) != 0) {
+        out.write((value & 0x7f) | 0x80);
+        value >>>= 7;
+      }
+      out.write(value);
+    }
+  }
+
+  private static final class Entry {
+    private final byte[] title;
+    private final int id;
+    private final int order;
+
+    private Entry(byte[] title, int id, int order) {
+      this.title = title;
+      this.id = id;
+      this.order = order;
+    }
+  }
+}
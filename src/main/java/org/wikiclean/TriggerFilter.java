@@ -0,0 +1,151 @@
+/**
+ * WikiClean: A Java Wikipedia markup to plain text converter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wikiclean;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+
+/**
+ * Aho-Corasick automaton that finds which of up to 64 ASCII literals occur in a text, in a single
+ * scan. Literals are matched ignoring the case of ASCII letters, so a literal may be reported even
+ * if it only occurs with different case, but never missed.
+ */
+final class TriggerFilter {
+  private static final int ALPHABET = 128;
+
+  private final String[] literals;
+  private final int maxLength;
+  // Transitions of the automaton, ALPHABET per state; non-ASCII characters lead back to the root.
+  private final int[] next;
+  // Literals that end in each state, as bits.
+  private final long[] found;
+
+  /**
+   * Class constructor.
+   * @param literals ASCII literals to look for
+   */
+  TriggerFilter(String... literals) {
+    if (literals.length > Long.SIZE) {
+      throw new IllegalArgumentException("Too many literals: " + literals.length);
+    }
+    this.literals = literals.clone();
+
+    int states = 1;
+    int maxLength = 0;
+    for (String literal : literals) {
+      states += literal.length();
+      maxLength = Math.max(maxLength, literal.length());
+    }
+    this.maxLength = maxLength;
+
+    // Trie of the literals, with -1 for missing transitions.
+    int[] next = new int[states * ALPHABET];
+    long[] found = new long[states];
+    Arrays.fill(next, -1);
+    int count = 1;
+    for (int i = 0; i < literals.length; i++) {
+      int state = 0;
+      for (int j = 0; j < literals[i].length(); j++) {
+        int c = toLowerCase(literals[i].charAt(j));
+        if (c >= ALPHABET) {
+          throw new IllegalArgumentException("Not an ASCII literal: " + literals[i]);
+        }
+        if (next[state * ALPHABET + c] < 0) {
+          next[state * ALPHABET + c] = count++;
+        }
+        state = next[state * ALPHABET + c];
+      }
+      found[state] |= 1L << i;
+    }
+
+    // Breadth-first, missing transitions are filled in from the failure state, which is shallower.
+    int[] fail = new int[count];
+    Queue<Integer> queue = new ArrayDeque<>();
+    for (int c = 0; c < ALPHABET; c++) {
+      if (next[c] < 0) {
+        next[c] = 0;
+      } else {
+        queue.add(next[c]);
+      }
+    }
+    while (!queue.isEmpty()) {
+      int state = queue.remove();
+      found[state] |= found[fail[state]];
+      for (int c = 0; c < ALPHABET; c++) {
+        int target = next[state * ALPHABET + c];
+        if (target < 0) {
+          next[state * ALPHABET + c] = next[fail[state] * ALPHABET + c];
+        } else {
+          fail[target] = next[fail[state] * ALPHABET + c];
+          queue.add(target);
+        }
+      }
+    }
+
+    this.next = Arrays.copyOf(next, count * ALPHABET);
+    this.found = Arrays.copyOf(found, count);
+  }
+
+  /**
+   * @param literal one of the literals
+   * @return bit of the literal in the results of {@link #scan}
+   */
+  long bit(String literal) {
+    int i = Arrays.asList(literals).indexOf(literal);
+    if (i < 0) {
+      throw new IllegalArgumentException("Unknown literal: " + literal);
+    }
+    return 1L << i;
+  }
+
+  /**
+   * @return bits of all literals
+   */
+  long all() {
+    return literals.length == Long.SIZE ? -1L : (1L << literals.length) - 1;
+  }
+
+  /**
+   * @return length of the longest literal
+   */
+  int maxLength() {
+    return maxLength;
+  }
+
+  /**
+   * Looks for the literals in part of a text.
+   * @param s text
+   * @param from start of the part, inclusive
+   * @param to end of the part, exclusive
+   * @return bits of the literals that occur in the part
+   */
+  long scan(CharSequence s, int from, int to) {
+    long result = 0;
+    int state = 0;
+    for (int i = from; i < to; i++) {
+      char c = s.charAt(i);
+      state = c < ALPHABET ? next[state * ALPHABET + toLowerCase(c)] : 0;
+      result |= found[state];
+    }
+    return result;
+  }
+
+  private static int toLowerCase(char c) {
+    return c >= 'A' && c <= 'Z' ? c + 'a' - 'A' : c;
+  }
+}
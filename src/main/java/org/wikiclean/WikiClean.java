@@ -16,11 +16,22 @@
 
 package org.wikiclean;
 
-import org.apache.commons.lang3.StringEscapeUtils;
 import org.wikiclean.languages.English;
 import org.wikiclean.languages.Language;
 import org.wikiclean.languages.Languages;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
@@ -44,18 +55,144 @@ public class WikiClean {
     KN
   };
 
+  /**
+   * Cleaning engines, which give the same output.
+   */
+  public enum Engine {
+    /** Chain of regular expressions, one per kind of markup. */
+    REGEX,
+    /**
+     * Single pass over the markup, which is faster. Markup it cannot handle exactly like
+     * {@link #REGEX}, which is rare, is cleaned with the regular expressions instead.
+     */
+    LEXER
+  };
+
+  /**
+   * Built-in cleaning stages, in the order in which they run by default.
+   */
+  public enum Stage implements CleaningStage {
+    /** References, e.g. {@code <ref>...</ref>}, and line breaks. */
+    REFS((s, lang) -> removeRefs(s), (s, lang) -> {
+      s.replaceAll(BR, "", BR_TRIGGERS);
+      rewrite(s, LinearStages::removeRefs);
+    }),
+    /** Links to other Wikipedias, e.g. {@code [[de:Anarchismus]]}. */
+    INTER_WIKI_LINKS((s, lang) -> removeInterWikiLinks(s),
+        (s, lang) -> rewrite(s, LinearStages::removeInterWikiLinks)),
+    /** Pronunciations, e.g. {@code ({{IPA|...}})}. */
+    PARENTHETICALS((s, lang) -> removeParentheticals(s),
+        (s, lang) -> rewrite(s, LinearStages::removeParentheticals)),
+    /** Unit conversions, e.g. {@code {{convert|5|km}}}, which are replaced by {@code 5 km}. */
+    UNIT_CONVERSION((s, lang) -> fixUnitConversion(s),
+        (s, lang) -> rewrite(s, LinearStages::fixUnitConversion)),
+    /** Images, together with their captions. */
+    IMAGE_CAPTIONS((s, lang) -> ImageCaptionsRemover.remove(s)),
+    /** Templates, e.g. infoboxes. */
+    TEMPLATES((s, lang) -> DoubleBracesRemover.remove(s)),
+    /** HTML comments. */
+    HTML_COMMENTS((s, lang) -> removeHtmlComments(s),
+        (s, lang) -> rewrite(s, LinearStages::removeHtmlComments)),
+    /** Bold and italic markup; the text itself is kept. */
+    EMPHASIS((s, lang) -> removeEmphasis(s)),
+    /** Heading markup; the headings themselves are kept. */
+    HEADINGS((s, lang) -> removeHeadings(s), (s, lang) -> rewrite(s, LinearStages::removeHeadings)),
+    /** Category links of the language. */
+    CATEGORY_LINKS(WikiClean::removeCategoryLinks),
+    /** Link markup; the text of the links is kept. Not run if links are kept. */
+    LINKS((s, lang) -> removeLinks(s), (s, lang) -> rewrite(s, LinearStages::removeLinks)),
+    /** Math formulas. */
+    MATH((s, lang) -> removeMath(s), (s, lang) -> rewrite(s, LinearStages::removeMath)),
+    /** Galleries. */
+    GALLERY((s, lang) -> removeGallery(s), (s, lang) -> rewrite(s, LinearStages::removeGallery)),
+    /** {@code __NOTOC__}. */
+    NO_TOC((s, lang) -> removeNoToc(s)),
+    /** Indentation at the start of lines. */
+    INDENTATION((s, lang) -> removeIndentation(s)),
+    /** Tables. */
+    TABLES((s, lang) -> TableRemover.remove(s)),
+    /** HTML entities, which are decoded, twice if they are doubly encoded. */
+    HTML_ENTITIES((s, lang) -> unescapeHtmlEntities(s)),
+    /** HTML tags. */
+    HTML_TAGS((s, lang) -> removeHtmlTags(s), (s, lang) -> rewrite(s, LinearStages::removeHtmlTags)),
+    /** Runs of newlines, which are folded into a single empty line. */
+    MULTIPLE_NEWLINES((s, lang) -> compressMultipleNewlines(s));
+
+    private final BiConsumer<Scratch, Language> step;
+    // Same as the step, in time linear in the length of the text, for articles over budget.
+    private final BiConsumer<Scratch, Language> linearStep;
+
+    // For steps that take linear time already.
+    Stage(BiConsumer<Scratch, Language> step) {
+      this(step, step);
+    }
+
+    Stage(BiConsumer<Scratch, Language> step, BiConsumer<Scratch, Language> linearStep) {
+      this.step = step;
+      this.linearStep = linearStep;
+    }
+
+    @Override
+    public boolean clean(CharSequence text, StringBuilder out, Language lang) {
+      Scratch scratch = new Scratch();
+      scratch.set(text);
+      scratch.scanTriggers();
+      if (!clean(scratch, lang)) {
+        return false;
+      }
+      out.append(scratch.text);
+      return true;
+    }
+
+    // Runs the step on the text of the scratch, in place; returns whether it changed the text.
+    boolean clean(Scratch scratch, Language lang) {
+      int versions = scratch.versions;
+      step.accept(scratch, lang);
+      return scratch.versions != versions;
+    }
+  };
+
+  private static final List<CleaningStage> DEFAULT_STAGES = Arrays.asList(Stage.values());
+
   private boolean withTitle;
   private boolean withFooter;
   private Language lang;
 
   private boolean keepLinks = false;
+  private List<CleaningStage> stages = DEFAULT_STAGES;
+  // Whether the stages are the default ones, which is what the lexer implements.
+  private boolean defaultStages = true;
+  private Engine engine = Engine.REGEX;
+  // Null if statistics are not collected.
+  private StatsRecorder stats;
+  // Characters that can be read per character of markup, and time per article; 0 for no limit.
+  private long stepBudget;
+  private long timeBudget;
+  private Consumer<String> budgetExceededHandler = WikiClean::reportBudgetExceeded;
+  private final ThreadLocal<MarkupLexer> lexers =
+      ThreadLocal.withInitial(() -> new MarkupLexer(lang, keepLinks));
 
   // Use the builder to construct.
   private WikiClean() {
   }
 
-  private void setKeepLinks(boolean flag) {
-    this.keepLinks = flag;
+  private void setStages(List<CleaningStage> stages) {
+    this.stages = Collections.unmodifiableList(new ArrayList<>(stages));
+    this.keepLinks = !stages.contains(Stage.LINKS);
+
+    List<CleaningStage> lexed = new ArrayList<>(DEFAULT_STAGES);
+    if (keepLinks) {
+      lexed.remove(Stage.LINKS);
+    }
+    this.defaultStages = stages.equals(lexed);
+  }
+
+  /**
+   * Returns the stages this cleaner runs, in order.
+   * @return stages run
+   */
+  public List<CleaningStage> getStages() {
+    return stages;
   }
 
   /**
@@ -117,21 +254,73 @@ public class WikiClean {
     return lang;
   }
 
+  private void setStats(boolean flag) {
+    if (!flag) {
+      this.stats = null;
+      return;
+    }
+    String[] names = new String[FIRST_STAGE + stages.size()];
+    names[FOOTER] = "FOOTER";
+    names[LEXER] = "LEXER";
+    for (int i = 0; i < stages.size(); i++) {
+      names[FIRST_STAGE + i] = stages.get(i).toString();
+    }
+    this.stats = new StatsRecorder(names);
+  }
+
+  /**
+   * Returns the time spent on each stage so far, by all threads, if this cleaner collects
+   * statistics.
+   * @return statistics, or null if this cleaner does not collect them
+   */
+  public CleanerStats getStats() {
+    return stats == null ? null : stats.snapshot();
+  }
+
+  private void setBudget(long stepsPerChar, long nanos, Consumer<String> handler) {
+    this.stepBudget = Math.max(stepsPerChar, 0);
+    this.timeBudget = Math.max(nanos, 0);
+    this.budgetExceededHandler = handler;
+  }
+
+  private static void reportBudgetExceeded(String id) {
+    System.err.println("Cleaning budget exceeded for page " + id + ", cleaned it linearly");
+  }
+
+  private void setEngine(Engine engine) {
+    this.engine = engine;
+  }
+
+  /**
+   * Asks this cleaner which engine it uses.
+   * @return engine used
+   */
+  public Engine getEngine() {
+    return engine;
+  }
+
   private static final String XML_START_TAG_TITLE = "<title>";
   private static final String XML_END_TAG_TITLE = "</title>";
 
+  // Buffers and matchers, reused from article to article by each thread.
+  private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
   /**
    * Returns the title of a Wikipedia article
    * @param s Wikipedia article
    * @return article title
    */
   public final String getTitle(String s) {
-    int start = s.indexOf(XML_START_TAG_TITLE);
-    int end = s.indexOf(XML_END_TAG_TITLE, start);
+    return title(s);
+  }
+
+  private static String title(CharSequence s) {
+    int start = indexOf(s, XML_START_TAG_TITLE, 0);
+    int end = indexOf(s, XML_END_TAG_TITLE, start);
     if (start < 0 || end < 0) {
       return "";
     }
-    return StringEscapeUtils.unescapeHtml4(s.substring(start + 7, end));
+    return HtmlEntities.unescape(s.subSequence(start + 7, end).toString());
   }
 
   private static final String XML_START_TAG_ID = "<id>";
@@ -149,6 +338,12 @@ public class WikiClean {
     return (start == -1 || end == -1 || start > end) ? "0" : s.substring(start + 4, end);
   }
 
+  private static String id(CharSequence s) {
+    int start = indexOf(s, XML_START_TAG_ID, 0);
+    int end = indexOf(s, XML_END_TAG_ID, 0);
+    return (start == -1 || end == -1 || start > end) ? "0" : s.subSequence(start + 4, end).toString();
+  }
+
   private static final String XML_START_TAG_TEXT = "<text xml:space=\"preserve\"";
   private static final String XML_END_TAG_TEXT = "</text>";
 
@@ -158,22 +353,30 @@ public class WikiClean {
    * @return Wikipedia markup
    */
   public String getWikiMarkup(String s) {
+    StringBuilder markup = new StringBuilder();
+    appendWikiMarkup(s, markup);
+    return markup.toString();
+  }
+
+  private static void appendWikiMarkup(CharSequence s, StringBuilder b) {
     // parse out actual text of article
-    int textStart = s.indexOf(XML_START_TAG_TEXT);
-    int textEnd = s.indexOf(XML_END_TAG_TEXT, textStart);
+    int textStart = indexOf(s, XML_START_TAG_TEXT, 0);
+    int textEnd = indexOf(s, XML_END_TAG_TEXT, textStart);
 
     if (textStart == -1 || textStart + 27 > textEnd) {
-      // Returning empty string is preferable to returning null to prevent NPE.
-      return "";
+      // Appending nothing is preferable to failing, as for an empty article.
+      return;
     }
 
-    String s2 = s.substring(textStart + 27, textEnd);
-    if (s2.startsWith("bytes=")) {
-      textEnd = s2.indexOf(">");
-      s2 = s2.substring(textEnd + 1);
+    int start = textStart + 27;
+    if (start + 6 <= textEnd && startsWith(s, "bytes=", start)) {
+      int close = indexOf(s, ">", start);
+      if (close >= 0 && close < textEnd) {
+        start = close + 1;
+      }
     }
 
-    return s2;
+    b.append(s, start, textEnd);
   }
 
   /**
@@ -182,46 +385,213 @@ public class WikiClean {
    * @return cleaned output
    */
   public String clean(String page) {
-    String content = getWikiMarkup(page);
+    StringBuilder out = new StringBuilder();
+    clean(page, out);
+    return out.toString();
+  }
 
+  /**
+   * Cleans a Wikipedia article that has already been parsed, e.g., by
+   * {@link WikipediaArticlesDump#pages()}.
+   * @param page Wikipedia article
+   * @return cleaned output
+   */
+  public String clean(Page page) {
+    Scratch scratch = SCRATCH.get();
+    scratch.set(page.getWikiMarkup());
+    if (!cleanWikiMarkup(scratch)) {
+      budgetExceededHandler.accept(String.valueOf(page.getId()));
+      scratch.set(page.getWikiMarkup());
+      cleanLinearly(scratch);
+    }
+
+    if (withTitle) {
+      return page.getTitle() + "\n\n" + scratch.text;
+    }
+
+    return scratch.text.toString();
+  }
+
+  /**
+   * Tells whether an article is a redirect without cleaning it, from the redirect element of the
+   * page or from a redirect magic word of the language of this cleaner, e.g., {@code #REDIRECT}
+   * or {@code #WEITERLEITUNG}, at the start of its markup.
+   * @param page Wikipedia article
+   * @return whether the article is a redirect
+   */
+  public boolean isRedirect(Page page) {
+    return page.isRedirect() || lang.isRedirect(page.getWikiMarkup());
+  }
+
+  /**
+   * Cleans a Wikipedia article and appends the cleaned output to a buffer. Intermediate results
+   * are kept in buffers that each thread reuses, so that little is allocated besides the output.
+   * @param page Wikipedia article
+   * @param out buffer the cleaned output is appended to
+   */
+  public void clean(CharSequence page, StringBuilder out) {
+    if (withTitle) {
+      out.append(title(page)).append("\n\n");
+    }
+    out.append(cleanWikiMarkup(page));
+  }
+
+  /**
+   * Cleans a Wikipedia article and writes the cleaned output. Intermediate results are kept in
+   * buffers that each thread reuses, so that little is allocated besides the output.
+   * @param page Wikipedia article
+   * @param out destination of the cleaned output
+   * @throws IOException if the output cannot be written
+   */
+  public void clean(CharSequence page, Appendable out) throws IOException {
+    if (withTitle) {
+      out.append(title(page)).append("\n\n");
+    }
+    out.append(cleanWikiMarkup(page));
+  }
+
+  // Returns a buffer of the calling thread, which holds the cleaned output until the next call.
+  private StringBuilder cleanWikiMarkup(CharSequence page) {
+    Scratch scratch = SCRATCH.get();
+    scratch.text.setLength(0);
+    appendWikiMarkup(page, scratch.text);
+    if (!cleanWikiMarkup(scratch)) {
+      budgetExceededHandler.accept(id(page));
+      scratch.text.setLength(0);
+      appendWikiMarkup(page, scratch.text);
+      cleanLinearly(scratch);
+    }
+    return scratch.text;
+  }
+
+  // Indexes of the steps in the statistics, which are followed by the stages.
+  private static final int FOOTER = 0;
+  private static final int LEXER = 1;
+  private static final int FIRST_STAGE = 2;
+
+  // Returns false if the article ran out of budget, in which case the text is left half cleaned.
+  private boolean cleanWikiMarkup(Scratch content) {
+    content.budgeted = stepBudget > 0 || timeBudget > 0;
+    if (content.budgeted) {
+      long chars = content.text.length() + MIN_BUDGET_CHARS;
+      content.stepBudget = stepBudget == 0 || stepBudget > Long.MAX_VALUE / chars
+          ? Long.MAX_VALUE : stepBudget * chars;
+      content.budget.start(timeBudget);
+    }
+
+    try {
+      if (stats == null) {
+        content.counters = null;
+        runStages(content);
+        return true;
+      }
+
+      content.counters = stats.counters();
+      long start = System.nanoTime();
+      int length = content.text.length();
+      runStages(content);
+      content.counters.recordArticle(System.nanoTime() - start, length, content.text.length());
+      return true;
+    } catch (Budget.Exceeded e) {
+      return false;
+    } finally {
+      content.budgeted = false;
+    }
+  }
+
+  // Short articles get the budget of an article of this many characters, so that the fixed cost
+  // of the stages fits in it.
+  private static final int MIN_BUDGET_CHARS = 1024;
+
+  // Cleans the text with the versions of the stages that take linear time, which need no budget.
+  // Other stages are run as they are, since they have no budget in the first place.
+  private void cleanLinearly(Scratch content) {
+    content.counters = null;
     if (!withFooter) {
-      content = removeFooter(content);
+      removeFooter(content);
     }
 
-    content = removeRefs(content);
-    content = removeInterWikiLinks(content);
-    content = removeParentheticals(content);
-    content = fixUnitConversion(content);
-    content = ImageCaptionsRemover.remove(content);
-    content = DoubleBracesRemover.remove(content);
-    content = removeHtmlComments(content);
-    content = removeEmphasis(content);
-    content = removeHeadings(content);
-    content = removeCategoryLinks(content);
+    content.scanTriggers();
+    for (CleaningStage stage : stages) {
+      if (stage instanceof Stage) {
+        ((Stage) stage).linearStep.accept(content, lang);
+      } else if (stage.clean(content.text, content.spare(), lang)) {
+        content.swap();
+        content.scanTriggers();
+      }
+    }
+
+    content.trim();
+  }
 
-    if (!keepLinks) {
-      content = removeLinks(content);
+  private void runStages(Scratch content) {
+    if (!withFooter) {
+      content.begin();
+      removeFooter(content);
+      content.end(FOOTER);
     }
 
-    content = removeMath(content);
-    content = removeGallery(content);
-    content = removeNoToc(content);
-    content = removeIndentation(content);
+    if (engine == Engine.LEXER && defaultStages) {
+      content.begin();
+      content.startBudget();
+      boolean lexed = lexers.get().clean(content.input(), content.spare());
+      if (lexed) {
+        content.swap();
+      }
+      content.end(LEXER);
+      if (lexed) {
+        return;
+      }
+    }
 
-    content = TableRemover.remove(content);
+    content.scanTriggers();
+    for (int i = 0; i < stages.size(); i++) {
+      CleaningStage stage = stages.get(i);
+      content.begin();
+      content.startBudget();
+      if (stage instanceof Stage) {
+        ((Stage) stage).step.accept(content, lang);
+      } else if (stage.clean(content.text, content.spare(), lang)) {
+        content.swap();
+        // Where the text changed is not known, so it is scanned again.
+        content.scanTriggers();
+      }
+      content.end(FIRST_STAGE + i);
+    }
 
-    // For some reason, some HTML entities are doubly encoded.
-    content = StringEscapeUtils.unescapeHtml4(StringEscapeUtils.unescapeHtml4(content));
-    content = removeHtmlTags(content);
+    content.trim();
+  }
 
-    // Finally, fold multiple newlines.
-    content = compressMultipleNewlines(content);
+  // Runs a step that rewrites the whole text.
+  private static void rewrite(Scratch s, BiPredicate<CharSequence, StringBuilder> step) {
+    if (step.test(s.text, s.spare())) {
+      s.swap();
+      // Where the text changed is not known, so it is scanned again.
+      s.scanTriggers();
+    }
+  }
 
-    if (withTitle) {
-      return getTitle(page) + "\n\n" + content.trim();
+  private static void unescapeHtmlEntities(Scratch s) {
+    // For some reason, some HTML entities are doubly encoded.
+    if (HtmlEntities.unescapeTwice(s.text, s.spare())) {
+      s.swap();
+      s.scanTriggers();
     }
+  }
 
-    return content.trim();
+  // Literals that every match of a step contains, which are all looked for in a single scan. Steps
+  // whose literals do not occur in the text are skipped.
+  private static final TriggerFilter TRIGGERS = new TriggerFilter(
+      "&lt;br", "&lt;ref", "[[", "]]", "{{ipa", "{{convert|", "[[file:", "[[image:", "[[datei",
+      "{{", "!--", "''", "=", "&lt;math&gt;", "&lt;gallery&gt;", "__notoc__", "\n:", "\r:", "{|",
+      "<", "\n\n", "\n\r", "\r\n", "\r\r");
+
+  private static long triggers(String... literals) {
+    long bits = 0;
+    for (String literal : literals) {
+      bits |= TRIGGERS.bit(literal);
+    }
+    return bits;
   }
 
   private static final Pattern UNIT_CONVERSION1 =
@@ -229,298 +599,468 @@ public class WikiClean {
   private static final Pattern UNIT_CONVERSION2 =
       Pattern.compile("\\{\\{convert\\|(\\d+)\\|([^|]+)\\|[^}]+\\}\\}");
 
-  private String fixUnitConversion(String s) {
-    String t = UNIT_CONVERSION1.matcher(s).replaceAll("$1 $2");
-    return UNIT_CONVERSION2.matcher(t).replaceAll("$1 $2");
+  private static final long UNIT_CONVERSION_TRIGGERS = triggers("{{convert|");
+
+  private static void fixUnitConversion(Scratch s) {
+    s.replaceAll(UNIT_CONVERSION1, "$1 $2", UNIT_CONVERSION_TRIGGERS);
+    s.replaceAll(UNIT_CONVERSION2, "$1 $2", UNIT_CONVERSION_TRIGGERS);
   }
 
   private static final Pattern HTML_TAGS = Pattern.compile("<[^>]+>");
+  private static final long HTML_TAGS_TRIGGERS = triggers("<");
 
-  private String removeHtmlTags(String s) {
-    return HTML_TAGS.matcher(s).replaceAll("");
+  private static void removeHtmlTags(Scratch s) {
+    s.replaceAll(HTML_TAGS, "", HTML_TAGS_TRIGGERS);
   }
 
   private static final Pattern GALLERY = Pattern.compile("&lt;gallery&gt;.*?&lt;/gallery&gt;",
       Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+  private static final long GALLERY_TRIGGERS = triggers("&lt;gallery&gt;");
 
-  private String removeGallery(String s) {
-    return GALLERY.matcher(s).replaceAll("");
+  private static void removeGallery(Scratch s) {
+    s.replaceAll(GALLERY, "", GALLERY_TRIGGERS);
   }
 
   private static final Pattern NO_TOC = Pattern.compile("__NOTOC__");
+  private static final long NO_TOC_TRIGGERS = triggers("__notoc__");
 
-  private String removeNoToc(String s) {
-    return NO_TOC.matcher(s).replaceAll("");
+  private static void removeNoToc(Scratch s) {
+    s.replaceAll(NO_TOC, "", NO_TOC_TRIGGERS);
   }
 
   private static final Pattern INDENTATION = Pattern.compile("[\\n\\r]:\\s*");
+  private static final long INDENTATION_TRIGGERS = triggers("\n:", "\r:");
 
-  private String removeIndentation(String s) {
-    return INDENTATION.matcher(s).replaceAll("\n");
+  private static void removeIndentation(Scratch s) {
+    s.replaceAll(INDENTATION, "\n", INDENTATION_TRIGGERS);
   }
 
   private static final Pattern MATH = Pattern.compile("&lt;math&gt;.*?&lt;/math&gt;",
       Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+  private static final long MATH_TRIGGERS = triggers("&lt;math&gt;");
 
-  private String removeMath(String s) {
-    return MATH.matcher(s).replaceAll("");
+  private static void removeMath(Scratch s) {
+    s.replaceAll(MATH, "", MATH_TRIGGERS);
   }
 
   // IPA parenthetical may be enclosed either with parentheses or brackets (de articles).
   private static final Pattern IPA1 = Pattern.compile(" (\\(|\\[)\\{\\{IPA[^\\}]+\\}\\}(\\)|\\])");
   private static final Pattern IPA2 = Pattern.compile(" \\{\\{IPA[^\\}]+\\}\\}");
+  private static final long IPA_TRIGGERS = triggers("{{ipa");
 
-  private String removeParentheticals(String s) {
+  private static void removeParentheticals(Scratch s) {
     // Take care of things like: id 36
     // '''Albedo''' ({{IPAc-en|icon|æ|l|ˈ|b|iː|d|oʊ}}), or ''reflection coefficient'' ...
     //
     // Note that we shouldn't just leave to the double-curly remover, since that would leave
     // the dangling empty parens.
-    s = IPA1.matcher(s).replaceAll("");
+    s.replaceAll(IPA1, "", IPA_TRIGGERS);
 
     // Straight-up IPA, with no parenthetical.
-    s = IPA2.matcher(s).replaceAll("");
-
-    return s;
+    s.replaceAll(IPA2, "", IPA_TRIGGERS);
   }
 
   private static final Pattern MULTIPLE_NEWLINES = Pattern.compile("[\\n\\r][\\n\\r]+");
+  private static final long MULTIPLE_NEWLINES_TRIGGERS = triggers("\n\n", "\n\r", "\r\n", "\r\r");
 
-  private String compressMultipleNewlines(String s) {
-    return MULTIPLE_NEWLINES.matcher(s).replaceAll("\n\n");
+  private static void compressMultipleNewlines(Scratch s) {
+    s.replaceAll(MULTIPLE_NEWLINES, "\n\n", MULTIPLE_NEWLINES_TRIGGERS);
   }
 
-  private String removeFooter(String s) {
-    return lang.removeFooter(s);
+  private void removeFooter(Scratch s) {
+    if (lang.removeFooter(s.text, s.spare())) {
+      s.swap();
+    }
   }
 
-  private String removeCategoryLinks(String s) {
-    return lang.removeCategoryLinks(s);
+  private static void removeCategoryLinks(Scratch s, Language lang) {
+    if (lang.removeCategoryLinks(s.text, s.spare())) {
+      s.swap();
+      // Where the text changed is not known, so it is scanned again.
+      s.scanTriggers();
+    }
   }
 
   private static final Pattern LINKS1 = Pattern.compile("\\[\\[[^\\]]+\\|([^\\]]+)\\]\\]");
   private static final Pattern LINKS2 = Pattern.compile("(\\[\\[|\\]\\])");
+  private static final long LINKS1_TRIGGERS = triggers("[[");
+  private static final long LINKS2_TRIGGERS = triggers("[[", "]]");
 
-  private String removeLinks(String s) {
-    return LINKS2.matcher(LINKS1.matcher(s).replaceAll("$1")).replaceAll("");
+  private static void removeLinks(Scratch s) {
+    s.replaceAll(LINKS1, "$1", LINKS1_TRIGGERS);
+    s.replaceAll(LINKS2, "", LINKS2_TRIGGERS);
   }
 
   private static final Pattern HEADINGS = Pattern.compile("=+\\s?(.*?)=+");
+  private static final long HEADINGS_TRIGGERS = triggers("=");
 
-  private String removeHeadings(String s) {
+  private static void removeHeadings(Scratch s) {
     // Make sure there's an extra newline after headings.
-    return HEADINGS.matcher(s).replaceAll("$1\n");
+    s.replaceAll(HEADINGS, "$1\n", HEADINGS_TRIGGERS);
   }
 
   private static final Pattern EMPHASIS = Pattern.compile("('''|'')");
+  private static final long EMPHASIS_TRIGGERS = triggers("''");
 
-  private String removeEmphasis(String s) {
-    return EMPHASIS.matcher(s).replaceAll("");
+  private static void removeEmphasis(Scratch s) {
+    s.replaceAll(EMPHASIS, "", EMPHASIS_TRIGGERS);
   }
 
   private static final Pattern HTML_COMMENT = Pattern.compile(
       "(<|&lt;|&#60;)!--.*?--(>|&gt;|&#62;)", Pattern.DOTALL);
+  private static final long HTML_COMMENT_TRIGGERS = triggers("!--");
 
-  private String removeHtmlComments(String s) {
-    return HTML_COMMENT.matcher(s).replaceAll("");
+  private static void removeHtmlComments(Scratch s) {
+    s.replaceAll(HTML_COMMENT, "", HTML_COMMENT_TRIGGERS);
   }
 
   private static final Pattern BR = Pattern.compile("&lt;br */&gt;");
   private static final Pattern REF1 = Pattern.compile("&lt;ref[^/]+/&gt;", Pattern.DOTALL);
   private static final Pattern REF2 = Pattern.compile("&lt;ref.*?&lt;/ref&gt;", Pattern.DOTALL);
+  private static final long BR_TRIGGERS = triggers("&lt;br");
+  private static final long REF_TRIGGERS = triggers("&lt;ref");
 
-  private String removeRefs(String s) {
-    s = BR.matcher(s).replaceAll(""); // See test case for why we do this.
-    s = REF1.matcher(s).replaceAll("");
-    s = REF2.matcher(s).replaceAll("");
-    return s;
+  private static void removeRefs(Scratch s) {
+    s.replaceAll(BR, "", BR_TRIGGERS); // See test case for why we do this.
+    s.replaceAll(REF1, "", REF_TRIGGERS);
+    s.replaceAll(REF2, "", REF_TRIGGERS);
   }
 
   // Note that WiktionaryLinks have the form [[wikt:anarchism|anarchism]], which is easily confused
   // with
   // inter-wikilinks. The distinguishing characteristic is the lack of pipe (|).
   private static final Pattern INTER_WIKI_LINKS = Pattern.compile("\\[\\[[a-z\\-]+:[^|\\]]+\\]\\]");
+  private static final long INTER_WIKI_LINKS_TRIGGERS = triggers("[[");
 
-  private String removeInterWikiLinks(String s) {
-    return INTER_WIKI_LINKS.matcher(s).replaceAll(" ");
+  private static void removeInterWikiLinks(Scratch s) {
+    s.replaceAll(INTER_WIKI_LINKS, " ", INTER_WIKI_LINKS_TRIGGERS);
   }
 
-  private static final class ImageCaptionsRemover {
-    private static final int DEFAULT_NO_BRACKET = 0;
-    private static final int STATE_1CLOSE_BRACKET = 1;
-    private static final int STATE_1OPEN_BRACKET = 2;
+  static int indexOf(CharSequence s, String t, int from) {
+    if (s instanceof String) {
+      return ((String) s).indexOf(t, from);
+    }
+    if (s instanceof StringBuilder) {
+      return ((StringBuilder) s).indexOf(t, from);
+    }
 
-    private static String remove(String s) {
-      String[] labels = { "[[File:", "[[Image:", "[[Datei" // We see this in de wikipedia.
-      };
-      for (String label : labels) {
-        s = removeLabel(s, label);
+    for (int i = Math.max(from, 0); i <= s.length() - t.length(); i++) {
+      if (startsWith(s, t, i)) {
+        return i;
       }
-      return s;
     }
+    return -1;
+  }
 
-    // This method encodes a finite state machine to handle links in caption, which result in
-    // nested [[ ... [[foo]] ... ]] constructs.
-    private static String removeLabel(String s, String label) {
-      int i = s.indexOf(label);
-      while (i != -1) {
-        int state = DEFAULT_NO_BRACKET;
-        int level = 1;
-        int cur = i + label.length();
+  private static boolean startsWith(CharSequence s, String t, int i) {
+    if (i + t.length() > s.length()) {
+      return false;
+    }
+    for (int j = 0; j < t.length(); j++) {
+      if (s.charAt(i + j) != t.charAt(j)) {
+        return false;
+      }
+    }
+    return true;
+  }
 
-        while (cur < s.length()) {
-          if (state == STATE_1OPEN_BRACKET && s.charAt(cur) == '[') {
-            level++;
-            state = DEFAULT_NO_BRACKET;
-          }
-          // If there's only one close, move back to default state.
-          if (state == STATE_1OPEN_BRACKET) {
-            state = DEFAULT_NO_BRACKET;
-          }
-          if (s.charAt(cur) == '[') {
-            state = STATE_1OPEN_BRACKET;
-          }
+  // Text being cleaned, which each step rewrites from one buffer into the other, and matchers
+  // that are reset for each step instead of being created for it. Package-private so that
+  // benchmarks can run a stage on a scratch they reuse, as clean(Page) does.
+  static final class Scratch {
+    private StringBuilder text = new StringBuilder();
+    private StringBuilder spare = new StringBuilder();
+    private final Map<Pattern, Matcher> matchers = new IdentityHashMap<>();
+    // Trigger literals that may occur in the text; literals that are not set do not occur.
+    private long triggers = TRIGGERS.all();
+    // Pairs of start and end of the parts of the next version of the text that steps replaced, or
+    // of the points where they removed something. Trigger literals that the step created by
+    // joining text can only be found across these.
+    private int[] changes = new int[64];
+    private int changeCount;
+    // Number of times the text was rewritten.
+    private int versions;
+    // Counters the steps are recorded in, or null if statistics are not collected.
+    private StatsRecorder.Counters counters;
+    private long startNanos;
+    private int startLength;
+    // Whether the article has a budget, which steps that may backtrack read the text through.
+    private boolean budgeted;
+    private final Budget budget = new Budget();
+    // Characters each step can read, from the length of the article before cleaning.
+    private long stepBudget;
+
+    private void set(CharSequence s) {
+      set(s, TRIGGERS.all());
+    }
 
-          if (state == STATE_1CLOSE_BRACKET && s.charAt(cur) == ']') {
-            level--;
-            if (level == 0) {
-              break;
-            }
-            state = DEFAULT_NO_BRACKET;
-          } else {
-            // If there's only one close, move back to default state.
-            if (state == STATE_1CLOSE_BRACKET) {
-              state = DEFAULT_NO_BRACKET;
-            }
-            if (s.charAt(cur) == ']') {
-              state = STATE_1CLOSE_BRACKET;
-            }
-          }
-          cur++;
-        }
+    // Sets the text, with the trigger literals that may occur in it, e.g., from triggers().
+    void set(CharSequence s, long triggers) {
+      text.setLength(0);
+      text.append(s);
+      this.triggers = triggers;
+    }
 
-        if (cur == s.length()) {
-          return s.substring(0, i);
-        }
+    // Returns the trigger literals that occur in the text.
+    long triggers() {
+      return TRIGGERS.scan(text, 0, text.length());
+    }
+
+    CharSequence text() {
+      return text;
+    }
 
-        s = s.substring(0, i) + s.substring(cur + 1, s.length());
-        i = s.indexOf(label, i);
+    // Starts timing a step, if statistics are collected.
+    private void begin() {
+      if (counters != null) {
+        startNanos = System.nanoTime();
+        startLength = text.length();
       }
+    }
 
-      return s;
+    private void end(int step) {
+      if (counters != null) {
+        counters.record(step, System.nanoTime() - startNanos, startLength, text.length());
+      }
     }
-  }
 
-  private static final class DoubleBracesRemover {
-    private static final int DEFAULT_NO_BRACE = 0;
-    private static final int STATE_1CLOSE_BRACE = 1;
-    private static final int STATE_1OPEN_BRACE = 2;
+    // Returns the text, as steps that may read it many times should read it.
+    private CharSequence input() {
+      return budgeted ? budget.wrap(text) : text;
+    }
 
-    // This method encodes a finite state machine to handle nested double braces (e.g., in
-    // infoboxes).
-    private static String remove(String s) {
-      int i = s.indexOf("{{");
-      while (i != -1) {
-        int state = DEFAULT_NO_BRACE;
-        int level = 1;
-        int cur = i + 2;
-
-        while (cur < s.length()) {
-          if (state == STATE_1OPEN_BRACE && s.charAt(cur) == '{') {
-            level++;
-            state = DEFAULT_NO_BRACE;
-          }
-          // If there's only one close, move back to default state.
-          if (state == STATE_1OPEN_BRACE) {
-            state = DEFAULT_NO_BRACE;
-          }
-          if (s.charAt(cur) == '{') {
-            state = STATE_1OPEN_BRACE;
-          }
+    // Starts the budget of the next step, which fails if the time is up.
+    private void startBudget() {
+      if (budgeted) {
+        budget.startStep(stepBudget);
+      }
+    }
 
-          if (state == STATE_1CLOSE_BRACE && s.charAt(cur) == '}') {
-            level--;
-            if (level == 0) {
-              break;
-            }
-            state = DEFAULT_NO_BRACE;
-          } else {
-            // If there's only one close, move back to default state.
-            if (state == STATE_1CLOSE_BRACE) {
-              state = DEFAULT_NO_BRACE;
-            }
-            if (s.charAt(cur) == '}') {
-              state = STATE_1CLOSE_BRACE;
-            }
-          }
-          cur++;
-        }
+    // Looks for trigger literals in the whole text.
+    private void scanTriggers() {
+      triggers = triggers();
+    }
 
-        if (cur == s.length()) {
-          return s.substring(0, i);
-        }
+    private boolean mayContain(long literals) {
+      return (triggers & literals) != 0;
+    }
 
-        s = s.substring(0, i) + s.substring(cur + 1, s.length());
-        i = s.indexOf("{{", i);
+    private void changed(int start, int end) {
+      if (changeCount + 2 > changes.length) {
+        changes = Arrays.copyOf(changes, changes.length * 2);
       }
+      changes[changeCount++] = start;
+      changes[changeCount++] = end;
+    }
 
-      return s;
+    // Returns the other buffer, emptied, to write the next version of the text to.
+    private StringBuilder spare() {
+      spare.setLength(0);
+      changeCount = 0;
+      return spare;
+    }
+
+    // Makes the other buffer the text, and looks for trigger literals that the changes created.
+    private void swap() {
+      StringBuilder t = text;
+      text = spare;
+      spare = t;
+      versions++;
+
+      int margin = TRIGGERS.maxLength() - 1;
+      for (int i = 0; i < changeCount && triggers != TRIGGERS.all(); i += 2) {
+        triggers |= TRIGGERS.scan(text, Math.max(changes[i] - margin, 0),
+            Math.min(changes[i + 1] + margin, text.length()));
+      }
+      changeCount = 0;
+    }
+
+    // Same as Matcher.replaceAll; the text is not copied if there are no matches, and the pattern
+    // is not even looked for if none of the given trigger literals occur.
+    private void replaceAll(Pattern pattern, String replacement, long literals) {
+      if (!mayContain(literals)) {
+        return;
+      }
+
+      Matcher m = matchers.computeIfAbsent(pattern, p -> p.matcher("")).reset(input());
+      if (!m.find()) {
+        return;
+      }
+
+      StringBuilder b = spare();
+      int last = 0;
+      do {
+        // The text between the matches is appended first, and then the replacement.
+        int start = b.length() + m.start() - last;
+        m.appendReplacement(b, replacement);
+        changed(start, b.length());
+        last = m.end();
+      } while (m.find());
+      m.appendTail(b);
+      swap();
+    }
+
+    // Same as String.trim.
+    private void trim() {
+      int end = text.length();
+      while (end > 0 && text.charAt(end - 1) <= ' ') {
+        end--;
+      }
+      text.setLength(end);
+
+      int start = 0;
+      while (start < end && text.charAt(start) <= ' ') {
+        start++;
+      }
+      text.delete(0, start);
     }
   }
 
-  private static final class TableRemover {
+  // Removes every construct that starts with 'label', in a single forward pass over the text.
+  // Removed constructs are skipped instead of being cut out of the text one at a time, which
+  // copies the rest of the text for every construct. An unterminated construct removes the rest of
+  // the text.
+  private static void removeNested(Scratch s, String label, NestingCounter counter, long literals) {
+    if (!s.mayContain(literals)) {
+      return;
+    }
+
+    CharSequence text = s.text;
+    int i = indexOf(text, label, 0);
+    if (i == -1) {
+      return;
+    }
+
+    StringBuilder b = s.spare();
+    int from = 0;
+    while (i != -1) {
+      b.append(text, from, i);
+      s.changed(b.length(), b.length());
+      int end = counter.end(text, i + label.length());
+      if (end == -1) {
+        s.swap();
+        return;
+      }
+      from = end + 1;
+      i = indexOf(text, label, from);
+    }
+    b.append(text, from, text.length());
+    s.swap();
+  }
+
+  private static String removeNested(String s, String label, NestingCounter counter) {
+    Scratch scratch = new Scratch();
+    scratch.set(s);
+    removeNested(scratch, label, counter, TRIGGERS.all());
+    return scratch.text.toString();
+  }
+
+  // This class encodes a finite state machine to handle nested constructs, e.g., links in
+  // captions, which result in nested [[ ... [[foo]] ... ]] constructs.
+  private static final class NestingCounter {
     private static final int DEFAULT = 0;
-    private static final int STATE_PIPE = 1;
-    private static final int STATE_1OPEN_BRACE = 2;
+    private static final int STATE_1CLOSE = 1;
+    private static final int STATE_1OPEN = 2;
+
+    private final char open1;
+    private final char open2;
+    private final char close1;
+    private final char close2;
+
+    private NestingCounter(char open1, char open2, char close1, char close2) {
+      this.open1 = open1;
+      this.open2 = open2;
+      this.close1 = close1;
+      this.close2 = close2;
+    }
 
-    private static String remove(String s) {
-      int i = s.indexOf("{|");
-      while (i != -1) {
-        int state = DEFAULT;
-        int level = 1;
-        int cur = i + 2;
-
-        while (cur < s.length()) {
-          if (state == STATE_1OPEN_BRACE && s.charAt(cur) == '|') {
-            level++;
-            state = DEFAULT;
+    // Returns the position of the last character of the construct whose body starts at 'cur', or
+    // -1 if the construct is unterminated.
+    private int end(CharSequence s, int cur) {
+      int state = DEFAULT;
+      int level = 1;
+
+      for (; cur < s.length(); cur++) {
+        char c = s.charAt(cur);
+        if (state == STATE_1OPEN && c == open2) {
+          level++;
+          state = DEFAULT;
+        }
+        // If there's only one open, move back to default state.
+        if (state == STATE_1OPEN) {
+          state = DEFAULT;
+        }
+        if (c == open1) {
+          state = STATE_1OPEN;
+        }
+
+        if (state == STATE_1CLOSE && c == close2) {
+          level--;
+          if (level == 0) {
+            return cur;
           }
+          state = DEFAULT;
+        } else {
           // If there's only one close, move back to default state.
-          if (state == STATE_1OPEN_BRACE) {
+          if (state == STATE_1CLOSE) {
             state = DEFAULT;
           }
-          if (s.charAt(cur) == '{') {
-            state = STATE_1OPEN_BRACE;
+          if (c == close1) {
+            state = STATE_1CLOSE;
           }
-
-          if (state == STATE_PIPE && s.charAt(cur) == '}') {
-            level--;
-            if (level == 0) {
-              break;
-            }
-            state = DEFAULT;
-          } else {
-            // If there's a pipe but no close brace, move back to default state.
-            if (state == STATE_PIPE) {
-              state = DEFAULT;
-            }
-            if (s.charAt(cur) == '|') {
-              state = STATE_PIPE;
-            }
-          }
-          cur++;
         }
+      }
 
-        if (cur == s.length()) {
-          return s.substring(0, i);
-        }
+      return -1;
+    }
+  }
 
-        s = s.substring(0, i) + s.substring(cur + 1, s.length());
-        i = s.indexOf("{|", i);
-      }
+  private static final class ImageCaptionsRemover {
+    private static final String[] LABELS = { "[[File:", "[[Image:", "[[Datei" // We see this in de wikipedia.
+    };
+    private static final long[] LABEL_TRIGGERS = {
+        triggers("[[file:"), triggers("[[image:"), triggers("[[datei") };
+    private static final NestingCounter BRACKETS = new NestingCounter('[', '[', ']', ']');
 
+    private static String remove(String s) {
+      for (String label : LABELS) {
+        s = removeNested(s, label, BRACKETS);
+      }
       return s;
     }
+
+    private static void remove(Scratch s) {
+      for (int i = 0; i < LABELS.length; i++) {
+        removeNested(s, LABELS[i], BRACKETS, LABEL_TRIGGERS[i]);
+      }
+    }
+  }
+
+  private static final class DoubleBracesRemover {
+    private static final NestingCounter BRACES = new NestingCounter('{', '{', '}', '}');
+    private static final long BRACES_TRIGGERS = triggers("{{");
+
+    // Handles nested double braces (e.g., in infoboxes).
+    private static String remove(String s) {
+      return removeNested(s, "{{", BRACES);
+    }
+
+    private static void remove(Scratch s) {
+      removeNested(s, "{{", BRACES, BRACES_TRIGGERS);
+    }
+  }
+
+  private static final class TableRemover {
+    private static final NestingCounter TABLES = new NestingCounter('{', '|', '|', '}');
+    private static final long TABLES_TRIGGERS = triggers("{|");
+
+    private static String remove(String s) {
+      return removeNested(s, "{|", TABLES);
+    }
+
+    private static void remove(Scratch s) {
+      removeNested(s, "{|", TABLES, TABLES_TRIGGERS);
+    }
   }
 
   /**
@@ -531,6 +1071,12 @@ public class WikiClean {
     private boolean withFooter = false;
     private boolean keepLinks = false;
     private Language lang = new English();
+    private List<CleaningStage> stages = new ArrayList<>(DEFAULT_STAGES);
+    private Engine engine = Engine.REGEX;
+    private boolean withStats = false;
+    private long stepBudget = 0;
+    private long timeBudget = 0;
+    private Consumer<String> budgetExceededHandler = WikiClean::reportBudgetExceeded;
 
     /**
      * Class constructor.
@@ -588,6 +1134,131 @@ public class WikiClean {
       return this;
     }
 
+    /**
+     * Sets the stages to run, in order, which replace the default ones, i.e., all the
+     * {@link Stage}s in order. Stages can be dropped, reordered, or added this way.
+     * @param stages stages to run
+     * @return self for method chaining
+     */
+    public Builder withStages(List<? extends CleaningStage> stages) {
+      this.stages = new ArrayList<>(stages);
+      return this;
+    }
+
+    /**
+     * Sets the stages to run, in order, which replace the default ones.
+     * @param stages stages to run
+     * @return self for method chaining
+     */
+    public Builder withStages(CleaningStage... stages) {
+      return withStages(Arrays.asList(stages));
+    }
+
+    /**
+     * Skips stages, e.g. {@link Stage#TABLES} to keep tables.
+     * @param stages stages not to run
+     * @return self for method chaining
+     */
+    public Builder withoutStages(CleaningStage... stages) {
+      this.stages.removeAll(Arrays.asList(stages));
+      return this;
+    }
+
+    /**
+     * Adds a stage, which runs after the other stages.
+     * @param stage stage to add
+     * @return self for method chaining
+     */
+    public Builder addStage(CleaningStage stage) {
+      this.stages.add(stage);
+      return this;
+    }
+
+    /**
+     * Adds a stage, which runs just before another one.
+     * @param before stage that the stage runs before
+     * @param stage stage to add
+     * @return self for method chaining
+     * @throws IllegalArgumentException if {@code before} is not one of the stages
+     */
+    public Builder addStageBefore(CleaningStage before, CleaningStage stage) {
+      int i = this.stages.indexOf(before);
+      if (i < 0) {
+        throw new IllegalArgumentException("Not a stage: " + before);
+      }
+      this.stages.add(i, stage);
+      return this;
+    }
+
+    /**
+     * Sets the cleaning engine. Only the default stages can be run by the lexer; with other
+     * stages, {@link Engine#LEXER} falls back to {@link Engine#REGEX}.
+     * @param engine engine
+     * @return self for method chaining
+     */
+    public Builder withEngine(Engine engine) {
+      this.engine = engine;
+      return this;
+    }
+
+    /**
+     * Sets whether or not to collect statistics of the time spent on each stage, which are
+     * available from {@link WikiClean#getStats}. Collecting them costs two calls to
+     * {@link System#nanoTime} per stage; otherwise, there is no overhead.
+     * @param flag whether or not to collect statistics
+     * @return self for method chaining
+     */
+    public Builder withStats(boolean flag) {
+      this.withStats = flag;
+      return this;
+    }
+
+    /**
+     * Limits the work of cleaning an article, so that no article can take much longer than others
+     * of its length, whatever its markup. Each of the steps that may read the text many times,
+     * i.e., the regular expressions that backtrack and the lexer, can read at most this many
+     * characters per character of markup; short articles get the budget of one of 1024
+     * characters. Articles that run out of budget are cleaned again with versions of the stages
+     * that take linear time, whose output may differ a little, and are reported to the
+     * {@linkplain #withBudgetExceededHandler handler}. Stages other than the {@link Stage}s have
+     * no budget, and are run as they are in both cases. No step reads more than about ten
+     * characters per character of an ordinary article, so a budget of 100 is only exceeded by
+     * pathological markup, which then takes at most a few times as long as an ordinary article.
+     * By default, there is no limit.
+     * @param stepsPerChar characters that each step can read per character of markup, or 0 for
+     *     no limit
+     * @return self for method chaining
+     */
+    public Builder withStepBudget(long stepsPerChar) {
+      this.stepBudget = stepsPerChar;
+      return this;
+    }
+
+    /**
+     * Limits the time of cleaning an article. Articles that take longer are cleaned again in
+     * linear time, as with {@link #withStepBudget}. The time is looked at before each step and
+     * every 16,384 characters read, so it can be overrun a little. By default, there is no limit.
+     * @param time time an article can take, or 0 for no limit
+     * @param unit unit of the time
+     * @return self for method chaining
+     */
+    public Builder withTimeBudget(long time, TimeUnit unit) {
+      this.timeBudget = unit.toNanos(time);
+      return this;
+    }
+
+    /**
+     * Sets what to do with articles that run out of budget, e.g., to log them. The handler is
+     * called with the id of the article, before it is cleaned again in linear time, on the
+     * thread that cleans it. By default, the id is printed to {@link System#err}.
+     * @param handler handler, which is given the id of the article
+     * @return self for method chaining
+     */
+    public Builder withBudgetExceededHandler(Consumer<String> handler) {
+      this.budgetExceededHandler = handler;
+      return this;
+    }
+
     /**
      * Constructs the {@link WikiClean} instance.
      * @return the {@link WikiClean} instance
@@ -597,7 +1268,14 @@ public class WikiClean {
       clean.setWithTitle(withTitle);
       clean.setWithFooter(withFooter);
       clean.setLanguage(lang);
-      clean.setKeepLinks(keepLinks);
+      List<CleaningStage> stages = new ArrayList<>(this.stages);
+      if (keepLinks) {
+        stages.removeAll(Collections.singleton(Stage.LINKS));
+      }
+      clean.setStages(stages);
+      clean.setStats(withStats);
+      clean.setBudget(stepBudget, timeBudget, budgetExceededHandler);
+      clean.setEngine(engine);
 
       return clean;
     }
@@ -16,46 +16,374 @@
 
 package org.wikiclean;
 
+import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.tools.bzip2.CBZip2InputStream;
 import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
 import org.kohsuke.args4j.Option;
 import org.kohsuke.args4j.ParserProperties;
 import org.wikiclean.WikiClean.WikiLanguage;
+import org.wikiclean.codecs.InputCodecs;
+import org.wikiclean.codecs.OrderedParallelInputStream;
+import org.wikiclean.codecs.PlainCodec;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintStream;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.stream.LongStream;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 /**
- * Object for reading Wikipedia articles from a bz2-compressed dump file.
+ * Object for reading Wikipedia articles from a dump file, either compressed (bz2, gzip, xz) or
+ * uncompressed. Multistream dumps can be read together with their index, in which case the
+ * independent bz2 streams are decompressed in parallel.
  */
-public class WikipediaArticlesDump implements Iterable<String> {
-  private static final int DEFAULT_STRINGBUFFER_CAPACITY = 1024;
+public class WikipediaArticlesDump implements Iterable<String>, Closeable {
+  private final PageSplitter splitter;
 
-  private final BufferedReader reader;
-  private final FileInputStream stream;
+  // Only set for multistream dumps.
+  private final FileChannel channel;
+  private final MultistreamIndex index;
+  private final long[] bounds;
+  // First bz2 stream to decompress, which is only changed when resuming.
+  private int nextStream = 0;
+
+  private final Progress progress = new Progress();
+  private boolean started = false;
 
   /**
-   * Class constructor.
+   * Class constructor, using one decompression thread per available processor.
    * @param file path to dump file
    * @throws IOException if any file-related errors are encountered
    */
   public WikipediaArticlesDump(File file) throws IOException {
-    stream = new FileInputStream(file);
-    byte[] ignoreBytes = new byte[2];
-    stream.read(ignoreBytes); // "B", "Z" bytes from commandline tools
-    reader = new BufferedReader(new InputStreamReader(new CBZip2InputStream(
-            new BufferedInputStream(stream)), "UTF8"));
+    this(file, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Class constructor. The format of the dump (bz2, gzip, xz, or uncompressed XML) is detected
+   * from its first bytes; see {@link InputCodecs}. Codecs may use several threads, e.g., bz2 dumps
+   * are decompressed block-parallel; articles are still returned in dump order. Uncompressed dumps
+   * are mapped into memory and split into articles in place, rather than read through a stream.
+   * @param file path to dump file
+   * @param threads number of decompression threads
+   * @throws IOException if any file-related errors are encountered
+   */
+  public WikipediaArticlesDump(File file, int threads) throws IOException {
+    if (threads < 1) {
+      throw new IllegalArgumentException("Number of threads must be positive: " + threads);
+    }
+
+    channel = null;
+    index = null;
+    bounds = null;
+    if (InputCodecs.detect(file) instanceof PlainCodec) {
+      splitter = new PageSplitter(FileChannel.open(file.toPath(), StandardOpenOption.READ),
+          PageSplitter.DEFAULT_WINDOW_SIZE);
+    } else {
+      splitter = new PageSplitter(InputCodecs.open(file, threads));
+    }
+  }
+
+  /**
+   * Class constructor for a multistream dump, using one decompression thread per available
+   * processor.
+   * @param file path to multistream dump file
+   * @param index path to the companion index file
+   * @throws IOException if any file-related errors are encountered
+   */
+  public WikipediaArticlesDump(File file, File index) throws IOException {
+    this(file, index, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Class constructor for a multistream dump. The bz2 streams listed in the index are decompressed
+   * independently on a pool of worker threads; articles are still returned in dump order. The index
+   * also enables random access to individual pages with {@link #get(long)} and
+   * {@link #getByTitle(String)}.
+   * @param file path to multistream dump file
+   * @param index path to the companion index file
+   * @param threads number of decompression threads
+   * @throws IOException if any file-related errors are encountered
+   */
+  public WikipediaArticlesDump(File file, File index, int threads) throws IOException {
+    if (threads < 1) {
+      throw new IllegalArgumentException("Number of threads must be positive: " + threads);
+    }
+
+    this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    this.index = new MultistreamIndex(index);
+    this.bounds = streamBounds(this.index.getStreamOffsets(), channel.size());
+
+    Iterator<Callable<byte[]>> tasks = new Iterator<Callable<byte[]>>() {
+      public boolean hasNext() {
+        return nextStream < bounds.length - 1;
+      }
+
+      public Callable<byte[]> next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        final long start = bounds[nextStream];
+        final long end = bounds[++nextStream];
+        return () -> decompressStream(channel, start, end);
+      }
+    };
+
+    // The channel stays open after iteration for random access; see close().
+    splitter = new PageSplitter(new OrderedParallelInputStream(tasks, threads, null));
+  }
+
+  /**
+   * Returns a single article of a multistream dump, decompressing only the bz2 stream that holds
+   * it. Articles are returned in the same form as by {@link #iterator()}.
+   * @param pageId page id
+   * @return the article, or empty if the page is not in the index
+   * @throws IOException if any file-related errors are encountered
+   * @throws UnsupportedOperationException if the dump was opened without an index
+   */
+  public Optional<String> get(long pageId) throws IOException {
+    checkMultistream();
+
+    long offset = index.getOffset(pageId);
+    if (offset < 0) {
+      return Optional.empty();
+    }
+
+    String tag = "<id>" + pageId + "</id>";
+    return findPage(offset, page -> {
+      // The first id element of a page is the page id; later ones belong to revisions.
+      int i = page.indexOf("<id>");
+      return i >= 0 && page.startsWith(tag, i);
+    });
+  }
+
+  /**
+   * Returns a single article of a multistream dump by title, decompressing only the bz2 stream
+   * that holds it. Articles are returned in the same form as by {@link #iterator()}.
+   * @param title article title, e.g., "Anarchism"
+   * @return the article, or empty if the title is not in the index
+   * @throws IOException if any file-related errors are encountered
+   * @throws UnsupportedOperationException if the dump was opened without an index
+   */
+  public Optional<String> getByTitle(String title) throws IOException {
+    checkMultistream();
+
+    // Depending on the dump, titles in the index may or may not be XML-escaped.
+    String escaped = StringEscapeUtils.escapeXml10(title);
+    long[] offsets = index.getOffsets(title);
+    if (!escaped.equals(title)) {
+      offsets = LongStream.concat(Arrays.stream(offsets), Arrays.stream(index.getOffsets(escaped)))
+          .sorted().distinct().toArray();
+    }
+
+    for (long offset : offsets) {
+      Optional<String> page = findPage(offset, p -> title.equals(getTitle(p)));
+      if (page.isPresent()) {
+        return page;
+      }
+    }
+    return Optional.empty();
+  }
+
+  private void checkMultistream() {
+    if (index == null) {
+      throw new UnsupportedOperationException("Random access requires a multistream index");
+    }
+  }
+
+  // Decompresses the bz2 stream at the given offset and returns the first page that matches.
+  private Optional<String> findPage(long offset, Predicate<String> matches) throws IOException {
+    int i = Arrays.binarySearch(bounds, offset);
+    if (i < 0 || i == bounds.length - 1) {
+      return Optional.empty();
+    }
+
+    PageSplitter pages = new PageSplitter(
+        new ByteArrayInputStream(decompressStream(channel, bounds[i], bounds[i + 1])));
+    while (pages.next()) {
+      String page = pages.decode();
+      if (matches.test(page)) {
+        return Optional.of(page);
+      }
+    }
+    return Optional.empty();
+  }
+
+  private static String getTitle(String page) {
+    int start = page.indexOf("<title>");
+    int end = page.indexOf("</title>", start);
+    if (start < 0 || end < 0) {
+      return "";
+    }
+    return StringEscapeUtils.unescapeXml(page.substring(start + 7, end));
+  }
+
+  /**
+   * Returns a checkpoint after the last article read through {@link #iterator()} or a sequential
+   * stream, from which reading can be resumed with {@link #resume(DumpCheckpoint)}. Checkpoints
+   * are not meaningful for parallel streams. This method must be called on the thread that
+   * consumes the articles, e.g., after the output for the last article has been written.
+   * @return a checkpoint after the last article read
+   */
+  public DumpCheckpoint checkpoint() {
+    // Multistream dumps are resumed by page id, since the bz2 streams are decompressed separately.
+    return new DumpCheckpoint(index == null ? progress.end : -1, progress.pageId(), progress.pages);
+  }
+
+  /**
+   * Resumes reading after a checkpoint. Multistream dumps resume at the bz2 stream of the last
+   * page read, which is looked up in the index. Other dumps resume at the position in the
+   * decompressed dump; for compressed dumps, the data before it is still decompressed, but not
+   * split into pages. This method must be called before any articles are read.
+   * @param checkpoint checkpoint from {@link #checkpoint()}
+   * @throws IOException if any file-related errors are encountered, or the checkpoint does not
+   *     match the dump
+   */
+  public void resume(DumpCheckpoint checkpoint) throws IOException {
+    if (started) {
+      throw new IllegalStateException("Cannot resume after reading has started");
+    }
+
+    long pageId = checkpoint.getPageId();
+    if (index != null && pageId >= 0) {
+      int i = Arrays.binarySearch(bounds, index.getOffset(pageId));
+      if (i < 0) {
+        throw new IOException("Page " + pageId + " of checkpoint is not in the index");
+      }
+      nextStream = i;
+
+      // Skip the pages of the stream up to and including the last page read.
+      while (true) {
+        if (!splitter.next()) {
+          throw new IOException("Page " + pageId + " of checkpoint is not in the dump");
+        }
+        if (Page.parse(splitter.decode()).getId() == pageId) {
+          break;
+        }
+      }
+    } else if (index == null && checkpoint.getPosition() > 0) {
+      splitter.skip(checkpoint.getPosition());
+    }
+
+    progress.end = splitter.end();
+    progress.pageId = pageId;
+    progress.pages = checkpoint.getPages();
+  }
+
+  /**
+   * Last article handed out by an iterator or a sequential stream, from which checkpoints are
+   * taken. Only accessed by the thread that consumes the articles.
+   */
+  static final class Progress {
+    private long end = 0;
+    private long pages = 0;
+    private long pageId = -1;
+    // The last article, from which its id is parsed on demand.
+    private byte[] bytes;
+    private int offset;
+    private int length;
+    private String page;
+
+    void consumed(long end, byte[] bytes, int offset, int length) {
+      this.end = end;
+      this.bytes = bytes;
+      this.offset = offset;
+      this.length = length;
+      this.page = null;
+      pages++;
+    }
+
+    void consumed(long end, String page) {
+      this.end = end;
+      this.bytes = null;
+      this.page = page;
+      pages++;
+    }
+
+    long pageId() {
+      if (bytes != null) {
+        pageId = Page.parse(bytes, offset, length).getId();
+        bytes = null;
+      } else if (page != null) {
+        pageId = Page.parse(page).getId();
+        page = null;
+      }
+      return pageId;
+    }
+  }
+
+  /**
+   * Closes this dump and releases any file handles and decompression threads.
+   * @throws IOException if any file-related errors are encountered
+   */
+  @Override
+  public void close() throws IOException {
+    splitter.close();
+    if (channel != null) {
+      channel.close();
+    }
+  }
+
+  // Boundaries of all bz2 streams in the file: the header stream (siteinfo) before the first
+  // offset, the streams listed in the index, and the trailing stream with the closing tag.
+  private static long[] streamBounds(long[] offsets, long size) {
+    long[] bounds = new long[offsets.length + 2];
+    int n = 0;
+    bounds[n++] = 0;
+    for (long offset : offsets) {
+      if (offset > bounds[n - 1] && offset < size) {
+        bounds[n++] = offset;
+      }
+    }
+    if (bounds[n - 1] < size) {
+      bounds[n++] = size;
+    }
+    return Arrays.copyOf(bounds, n);
+  }
+
+  // Reads and decompresses the byte range [start, end) of the file, which holds one or more
+  // complete bz2 streams.
+  private static byte[] decompressStream(FileChannel channel, long start, long end)
+      throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, start + buffer.position()) < 0) {
+        throw new IOException("Unexpected end of file at offset " + (start + buffer.position()));
+      }
+    }
+
+    byte[] compressed = buffer.array();
+    if (compressed.length < 2 || compressed[0] != 'B' || compressed[1] != 'Z') {
+      throw new IOException("No bz2 stream at offset " + start);
+    }
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream(compressed.length * 4);
+    try (InputStream in = new CBZip2InputStream(
+        new ByteArrayInputStream(compressed, 2, compressed.length - 2), true)) {
+      byte[] b = new byte[8192];
+      int n;
+      while ((n = in.read(b)) != -1) {
+        out.write(b, 0, n);
+      }
+    }
+    return out.toByteArray();
   }
 
   /**
@@ -63,8 +391,20 @@ public class WikipediaArticlesDump implements Iterable<String> {
    * @return an iterator over Wikipedia articles
    */
   public Iterator<String> iterator() {
+    return iterator(null);
+  }
+
+  /**
+   * Provides an iterator over Wikipedia articles that pass a filter. The filter is applied to the
+   * raw bytes of each article, and only articles that pass it are decoded.
+   * @param filter filter on the raw bytes of articles, or null to keep all articles
+   * @return an iterator over Wikipedia articles
+   */
+  public Iterator<String> iterator(PageFilter filter) {
+    started = true;
     return new Iterator<String>() {
       private String nextArticle = null;
+      private long nextEnd = 0;
 
       public boolean hasNext() {
         if (nextArticle != null) {
@@ -96,6 +436,7 @@ public class WikipediaArticlesDump implements Iterable<String> {
 
         String article = nextArticle;
         nextArticle = null;
+        progress.consumed(nextEnd, article);
         return article;
       }
 
@@ -104,48 +445,98 @@ public class WikipediaArticlesDump implements Iterable<String> {
       }
 
       private String readNext() throws IOException {
-        String s;
-        StringBuilder sb = new StringBuilder(DEFAULT_STRINGBUFFER_CAPACITY);
-
-        while ((s = reader.readLine()) != null) {
-          if (s.endsWith("<page>"))
-            break;
-        }
-
-        if (s == null) {
-          stream.close();
-          reader.close();
+        if (!splitter.next(filter)) {
           return null;
         }
-
-        sb.append(s).append("\n");
-
-        while ((s = reader.readLine()) != null) {
-          sb.append(s).append("\n");
-
-          if (s.endsWith("</page>"))
-            break;
-        }
-
-        return sb.toString();
+        nextEnd = splitter.end();
+        return splitter.decode();
       }
     };
   }
 
   /**
-   * Provides a stream of Wikipedia articles.
+   * Provides a spliterator over Wikipedia articles. Articles are read ahead on a separate thread
+   * and handed out in batches of roughly equal size in bytes, so that parallel streams scale. A
+   * spliterator that is not consumed to the end must be closed, which stops the read-ahead thread.
+   * @return a spliterator over Wikipedia articles
+   */
+  @Override
+  public Spliterator<String> spliterator() {
+    started = true;
+    return new PageSpliterator<>(splitter, null, PageSpliterator.STRINGS, progress);
+  }
+
+  /**
+   * Provides a stream of Wikipedia articles. The stream may be made parallel, e.g.,
+   * {@code stream().parallel().map(cleaner::clean)}, in which case articles are decoded and
+   * processed on all cores while a separate thread reads ahead. The stream must be closed, e.g.,
+   * with try-with-resources, unless it is consumed to the end: short-circuiting operations such
+   * as {@code findFirst()} or {@code limit()} leave the read-ahead thread, and the buffers it
+   * holds, running until the stream is closed, or else until it is garbage collected.
    * @return a stream of Wikipedia articles
    */
   public Stream<String> stream() {
-    return StreamSupport.stream(this.spliterator(), false);
+    return stream(null, PageSpliterator.STRINGS);
+  }
+
+  /**
+   * Provides a stream of Wikipedia articles that pass a filter. The filter is applied to the raw
+   * bytes of each article, and only articles that pass it are decoded. Like {@link #stream()}, the
+   * stream must be closed unless it is consumed to the end.
+   * @param filter filter on the raw bytes of articles
+   * @return a stream of Wikipedia articles
+   */
+  public Stream<String> stream(PageFilter filter) {
+    return stream(filter, PageSpliterator.STRINGS);
+  }
+
+  /**
+   * Provides a stream of parsed Wikipedia articles. Each article is parsed directly from its raw
+   * bytes in a single pass. Like {@link #stream()}, the stream may be made parallel, and must be
+   * closed unless it is consumed to the end.
+   * @return a stream of parsed Wikipedia articles
+   */
+  public Stream<Page> pages() {
+    return pages(null);
+  }
+
+  /**
+   * Provides a stream of parsed Wikipedia articles that pass a filter. The filter is applied to the
+   * raw bytes of each article, and only articles that pass it are parsed. A
+   * {@link PageHeaderFilter} is checked as soon as the page header has been read, so that the text
+   * of rejected articles is never buffered. Like {@link #stream()}, the stream must be closed
+   * unless it is consumed to the end.
+   * @param filter filter on the raw bytes of articles, or null to keep all articles
+   * @return a stream of parsed Wikipedia articles
+   */
+  public Stream<Page> pages(PageFilter filter) {
+    return stream(filter, PageSpliterator.PAGES);
+  }
+
+  private <T> Stream<T> stream(PageFilter filter, PageSpliterator.Decoder<T> decoder) {
+    started = true;
+    PageSpliterator<T> spliterator = new PageSpliterator<>(splitter, filter, decoder, progress);
+    return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
   }
 
   private static final class Args {
     @Option(name = "-input", metaVar = "[path]", required = true, usage = "input path")
     File input;
 
+    @Option(name = "-index", metaVar = "[path]", usage = "multistream index path")
+    File index;
+
+    @Option(name = "-threads", metaVar = "[num]", usage = "number of decompression threads")
+    int threads = Runtime.getRuntime().availableProcessors();
+
     @Option(name = "-lang", metaVar = "[lang]", usage = "two-letter language code")
     String lang = "en";
+
+    @Option(name = "-checkpoint", metaVar = "[path]", usage = "checkpoint path")
+    File checkpoint;
+
+    @Option(name = "-resume", usage = "resume from the last checkpoint")
+    boolean resume = false;
   }
 
   /**
@@ -172,23 +563,27 @@ public class WikipediaArticlesDump implements Iterable<String> {
       lang = WikiLanguage.ZH;
     }
 
-    PrintStream out = new PrintStream(System.out, true, "UTF-8");
     WikiClean cleaner = new WikiClean.Builder().withLanguage(lang).build();
 
-    WikipediaArticlesDump wikipedia = new WikipediaArticlesDump(args.input);
+    WikipediaArticlesDump wikipedia = args.index == null ?
+        new WikipediaArticlesDump(args.input, args.threads) :
+        new WikipediaArticlesDump(args.input, args.index, args.threads);
+    CheckpointedOutput output =
+        new CheckpointedOutput(wikipedia, (File) null, args.checkpoint, args.resume);
+    PrintWriter out = output.writer();
 
     AtomicInteger cnt = new AtomicInteger();
-    wikipedia.stream()
-        // See https://en.wikipedia.org/wiki/Wikipedia:Namespace
-        .filter(s -> !s.contains("<ns>") || s.contains("<ns>0</ns>"))
-        .forEach(s -> {
-          out.println("Title = " + cleaner.getTitle(s));
-          out.println("Id = " + cleaner.getId(s));
-          out.println(cleaner.clean(s) + "\n\n#################################\n");
+    // See https://en.wikipedia.org/wiki/Wikipedia:Namespace
+    wikipedia.pages(new PageHeaderFilter.Builder().withNamespaces(0).build())
+        .forEach(page -> {
+          out.println("Title = " + page.getTitle());
+          out.println("Id = " + page.getId());
+          out.println(cleaner.clean(page) + "\n\n#################################\n");
           cnt.incrementAndGet();
+          output.commit();
         });
 
     out.println("Total of " + cnt + " articles read.");
-    out.close();
+    output.close();
   }
 }
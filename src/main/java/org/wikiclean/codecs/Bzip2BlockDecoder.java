@@ -0,0 +1,378 @@
+/**
+ * WikiClean: A Java Wikipedia markup to plain text converter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wikiclean.codecs;
+
+import org.apache.tools.bzip2.CBZip2InputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Block-parallel decoder for bz2 files, in the spirit of pbzip2 and lbzip2. The file is scanned
+ * for the bit-aligned 48-bit magic numbers that start each compressed block; every block is then
+ * wrapped into a standalone single-block bz2 stream and decoded on a worker pool, and the output
+ * is stitched back together in order.
+ *
+ * <p>The block magic may also occur by chance inside compressed data. A candidate boundary that
+ * does not decode is therefore merged with the following one, and a candidate start that does not
+ * decode is dropped if the preceding block already covers it.</p>
+ */
+final class Bzip2BlockDecoder {
+  private static final long BLOCK_MAGIC = 0x314159265359L;
+  private static final long EOS_MAGIC = 0x177245385090L;
+  private static final long MAGIC_MASK = (1L << 48) - 1;
+
+  // Number of following candidate boundaries tried as the end of a block before giving up.
+  private static final int MAX_CANDIDATE_ENDS = 4;
+  private static final int SCAN_BUFFER_SIZE = 1 << 20;
+  private static final byte[] EMPTY = new byte[0];
+
+  // Bytes that occur in either magic number, one per bit alignment; used to skip most positions
+  // with a single table lookup.
+  private static final boolean[] MAGIC_BYTES = new boolean[256];
+
+  static {
+    for (int shift = 0; shift < 8; shift++) {
+      MAGIC_BYTES[(int) (BLOCK_MAGIC >>> (8 - shift)) & 0xff] = true;
+      MAGIC_BYTES[(int) (EOS_MAGIC >>> (8 - shift)) & 0xff] = true;
+    }
+  }
+
+  private Bzip2BlockDecoder() {}
+
+  /**
+   * Opens a bz2 file for block-parallel decoding.
+   * @param file bz2 file, possibly with several concatenated streams
+   * @param threads number of decoding threads
+   * @return decompressed contents of the file
+   * @throws IOException if any file-related errors are encountered
+   */
+  static InputStream open(File file, int threads) throws IOException {
+    FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    ByteBuffer header = ByteBuffer.allocate(3);
+    channel.read(header, 0);
+    if (header.get(0) != 'B' || header.get(1) != 'Z' || header.get(2) != 'h') {
+      channel.close();
+      throw new IOException("Not a bz2 file: " + file);
+    }
+
+    return new OrderedParallelInputStream(new BlockTasks(channel), threads, channel);
+  }
+
+  /**
+   * Boundary between compressed blocks: the bit offset of a block magic or an end-of-stream
+   * magic.
+   */
+  private static final class Candidate {
+    final long bit;
+    final boolean endOfStream;
+
+    Candidate(long bit, boolean endOfStream) {
+      this.bit = bit;
+      this.endOfStream = endOfStream;
+    }
+  }
+
+  /**
+   * Scans the file sequentially for candidate boundaries.
+   */
+  private static final class Scanner {
+    private final InputStream in;
+    private final byte[] buffer = new byte[SCAN_BUFFER_SIZE];
+    private int length = 0;
+    private int pos = 0;
+    private long offset = 0;
+    private long window = 0;
+    // Candidates found at the current byte, at most one per bit alignment.
+    private final List<Candidate> pending = new ArrayList<>();
+    private boolean done = false;
+
+    Scanner(FileChannel channel) throws IOException {
+      this.in = Channels.newInputStream(channel.position(0));
+    }
+
+    Candidate next() throws IOException {
+      while (pending.isEmpty()) {
+        if (pos == length) {
+          if (done) {
+            return null;
+          }
+          length = in.read(buffer);
+          pos = 0;
+          if (length <= 0) {
+            length = 0;
+            done = true;
+            return null;
+          }
+        }
+
+        window = (window << 8) | (buffer[pos++] & 0xff);
+        offset++;
+        if (offset < 7 || !MAGIC_BYTES[(int) (window >>> 8) & 0xff]) {
+          continue;
+        }
+
+        // Check alignments in order of increasing bit offset.
+        for (int shift = 7; shift >= 0; shift--) {
+          long value = (window >>> shift) & MAGIC_MASK;
+          if (value == BLOCK_MAGIC || value == EOS_MAGIC) {
+            pending.add(new Candidate(offset * 8 - shift - 48, value == EOS_MAGIC));
+          }
+        }
+      }
+      return pending.remove(0);
+    }
+  }
+
+  /**
+   * Produces one decoding task per candidate block start, in file order.
+   */
+  private static final class BlockTasks implements Iterator<Callable<byte[]>> {
+    private final FileChannel channel;
+    private final Scanner scanner;
+    private final List<Candidate> lookahead = new ArrayList<>();
+    private BlockTask previous = null;
+    private int index = 0;
+
+    BlockTasks(FileChannel channel) throws IOException {
+      this.channel = channel;
+      this.scanner = new Scanner(channel);
+    }
+
+    private boolean fill(int n) {
+      try {
+        while (lookahead.size() < n) {
+          Candidate c = scanner.next();
+          if (c == null) {
+            return false;
+          }
+          lookahead.add(c);
+        }
+        return true;
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      // End-of-stream markers separate streams but do not start blocks.
+      while (fill(1) && lookahead.get(0).endOfStream) {
+        lookahead.remove(0);
+        index++;
+      }
+      return !lookahead.isEmpty();
+    }
+
+    @Override
+    public Callable<byte[]> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      fill(MAX_CANDIDATE_ENDS + 1);
+
+      long end;
+      try {
+        end = channel.size() * 8;
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+
+      long start = lookahead.get(0).bit;
+      List<Long> ends = new ArrayList<>();
+      for (int i = 1; i < lookahead.size(); i++) {
+        ends.add(lookahead.get(i).bit);
+      }
+      if (lookahead.size() < MAX_CANDIDATE_ENDS + 1) {
+        // Truncated file without a final end-of-stream marker.
+        ends.add(end);
+      }
+
+      BlockTask task = new BlockTask(channel, index, start, ends, previous);
+      previous = task;
+      lookahead.remove(0);
+      index++;
+      return task;
+    }
+  }
+
+  /**
+   * Decodes the block starting at a candidate boundary.
+   */
+  private static final class BlockTask implements Callable<byte[]> {
+    private final FileChannel channel;
+    private final int index;
+    private final long start;
+    private final List<Long> ends;
+    private final BlockTask previous;
+    // Index of the first candidate after the data this task covers.
+    private final CompletableFuture<Integer> covered = new CompletableFuture<>();
+
+    BlockTask(FileChannel channel, int index, long start, List<Long> ends, BlockTask previous) {
+      this.channel = channel;
+      this.index = index;
+      this.start = start;
+      this.ends = ends;
+      this.previous = previous;
+    }
+
+    @Override
+    public byte[] call() throws Exception {
+      try {
+        byte[] output = null;
+        int end = index;
+        for (int i = 0; i < ends.size() && output == null; i++) {
+          output = decode(channel, start, ends.get(i));
+          end = index + i + 1;
+        }
+
+        // If the previous block had to extend past this start, then this start was a false
+        // boundary and the data has already been decoded. Otherwise a failure is real.
+        int previousEnd = previous == null ? index : previous.covered.get();
+        if (previousEnd > index) {
+          covered.complete(Math.max(previousEnd, output == null ? index : end));
+          return EMPTY;
+        }
+        if (output == null) {
+          throw new IOException("Invalid bz2 block at bit offset " + start);
+        }
+        covered.complete(end);
+        return output;
+      } catch (ExecutionException e) {
+        covered.completeExceptionally(e.getCause());
+        throw e;
+      } catch (Exception e) {
+        covered.completeExceptionally(e);
+        throw e;
+      }
+    }
+  }
+
+  // Decodes the bits [start, end) of the file as a single block, or returns null if they do not
+  // form a valid block.
+  private static byte[] decode(FileChannel channel, long start, long end) throws IOException {
+    if (end - start < 80) {
+      return null;
+    }
+
+    long first = start / 8;
+    ByteBuffer buffer = ByteBuffer.allocate((int) ((end + 7) / 8 - first) + 1);
+    while (buffer.position() < buffer.limit() - 1) {
+      if (channel.read(buffer, first + buffer.position()) < 0) {
+        break;
+      }
+    }
+    byte[] bytes = buffer.array();
+    int shift = (int) (start % 8);
+    int bits = (int) (end - start);
+
+    // Wrap the block into a stream of its own: a header, the block, and an end-of-stream marker
+    // with the combined CRC, which for a single block is the block CRC itself.
+    BitWriter out = new BitWriter(bits / 8 + 16);
+    out.write(8, 'h');
+    out.write(8, '9');
+    for (int i = 0; i + 8 <= bits; i += 8) {
+      int k = (shift + i) >> 3;
+      out.write(8, (((bytes[k] & 0xff) << 8 | (bytes[k + 1] & 0xff)) >>> (8 - shift)) & 0xff);
+    }
+    for (int i = bits & ~7; i < bits; i++) {
+      out.write(1, bit(bytes, shift + i));
+    }
+    long crc = 0;
+    for (int i = 48; i < 80; i++) {
+      crc = (crc << 1) | bit(bytes, shift + i);
+    }
+    out.write(48, EOS_MAGIC);
+    out.write(32, crc);
+    out.flush();
+
+    ByteArrayOutputStream result = new ByteArrayOutputStream(bits / 2);
+    try (InputStream in = new CBZip2InputStream(
+        new ByteArrayInputStream(out.buffer, 0, out.length), false)) {
+      byte[] b = new byte[8192];
+      int n;
+      while ((n = in.read(b)) != -1) {
+        result.write(b, 0, n);
+      }
+    } catch (IOException | RuntimeException e) {
+      // Not a valid block, or not a complete one.
+      return null;
+    }
+    return result.toByteArray();
+  }
+
+  private static int bit(byte[] bytes, long i) {
+    return (bytes[(int) (i >> 3)] >>> (7 - (i & 7))) & 1;
+  }
+
+  private static final class BitWriter {
+    private byte[] buffer;
+    private int length = 0;
+    private long bits = 0;
+    private int live = 0;
+
+    BitWriter(int capacity) {
+      buffer = new byte[capacity];
+    }
+
+    void write(int n, long value) {
+      if (n == 8 && live == 0) {
+        put((int) value);
+        return;
+      }
+      for (int i = n - 1; i >= 0; i--) {
+        bits = (bits << 1) | ((value >>> i) & 1);
+        if (++live == 8) {
+          put((int) bits);
+          bits = 0;
+          live = 0;
+        }
+      }
+    }
+
+    void flush() {
+      if (live > 0) {
+        put((int) (bits << (8 - live)));
+        bits = 0;
+        live = 0;
+      }
+    }
+
+    private void put(int b) {
+      if (length == buffer.length) {
+        buffer = Arrays.copyOf(buffer, length * 2);
+      }
+      buffer[length++] = (byte) b;
+    }
+  }
+}
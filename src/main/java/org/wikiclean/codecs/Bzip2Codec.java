@@ -0,0 +1,53 @@
+/**
+ * WikiClean: A Java Wikipedia markup to plain text converter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wikiclean.codecs;
+
+import org.apache.tools.bzip2.CBZip2InputStream;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Codec for bz2 files. With more than one thread, compressed blocks are located and decoded in
+ * parallel; see {@link Bzip2BlockDecoder}.
+ */
+public class Bzip2Codec implements InputCodec {
+  @Override
+  public String getName() {
+    return "bz2";
+  }
+
+  @Override
+  public boolean matches(byte[] header, int length) {
+    return InputCodecs.startsWith(header, length, 'B', 'Z', 'h');
+  }
+
+  @Override
+  public InputStream open(File file, int threads) throws IOException {
+    if (threads > 1) {
+      return Bzip2BlockDecoder.open(file, threads);
+    }
+
+    InputStream stream = new FileInputStream(file);
+    byte[] ignoreBytes = new byte[2];
+    stream.read(ignoreBytes); // "B", "Z" bytes from commandline tools
+    return new CBZip2InputStream(new BufferedInputStream(stream), true);
+  }
+}
@@ -0,0 +1,50 @@
+/**
+ * WikiClean: A Java Wikipedia markup to plain text converter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wikiclean.codecs;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decoder for a dump file format, e.g., bz2 or gzip. Codecs are registered with and detected by
+ * {@link InputCodecs}.
+ */
+public interface InputCodec {
+  /**
+   * @return short name of the format, e.g., "bz2"
+   */
+  String getName();
+
+  /**
+   * Checks whether a file is in the format of this codec.
+   * @param header first bytes of the file
+   * @param length number of valid bytes in {@code header}, which may be fewer than
+   *     {@link InputCodecs#HEADER_LENGTH} for short files
+   * @return whether this codec can decode the file
+   */
+  boolean matches(byte[] header, int length);
+
+  /**
+   * Opens a file for decoding.
+   * @param file path to file
+   * @param threads number of decoding threads the codec may use
+   * @return decoded contents of the file
+   * @throws IOException if any file-related errors are encountered
+   */
+  InputStream open(File file, int threads) throws IOException;
+}
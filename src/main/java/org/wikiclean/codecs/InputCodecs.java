@@ -0,0 +1,137 @@
+/**
+ * WikiClean: A Java Wikipedia markup to plain text converter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wikiclean.codecs;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Manages available input codecs and detects the format of dump files from their magic bytes.
+ * Besides the built-in codecs, codecs can be added with {@link #addCodec(InputCodec)} or provided
+ * as a {@link ServiceLoader} service for {@link InputCodec}.
+ */
+public final class InputCodecs {
+  private InputCodecs() {
+  }
+
+  /**
+   * Number of bytes from the start of a file passed to {@link InputCodec#matches(byte[], int)}.
+   */
+  public static final int HEADER_LENGTH = 16;
+
+  // Codecs are tried in order, so codecs added later come first.
+  private static final List<InputCodec> codecs = new CopyOnWriteArrayList<>();
+
+  static {
+    // add built-in codecs
+    addCodec(new PlainCodec());
+    addCodec(new XzCodec());
+    addCodec(new GzipCodec());
+    addCodec(new Bzip2Codec());
+
+    for (InputCodec codec : ServiceLoader.load(InputCodec.class)) {
+      addCodec(codec);
+    }
+  }
+
+  /**
+   * @return all available codecs, in the order they are tried (immutable)
+   */
+  public static Collection<InputCodec> codecs() {
+    return Collections.unmodifiableCollection(codecs);
+  }
+
+  /**
+   * Add a codec to the list. Codecs added later take precedence over earlier ones that match the
+   * same files.
+   *
+   * @param codec codec to add
+   * @return true if codec was added, false if codec with given name already existed
+   */
+  public static synchronized boolean addCodec(InputCodec codec) {
+    if (codecs.stream().anyMatch(c -> codec.getName().equals(c.getName()))) {
+      return false;
+    }
+    codecs.add(0, codec);
+    return true;
+  }
+
+  /**
+   * @param name name of codec to fetch
+   * @return codec with given name if present, else empty optional
+   */
+  public static Optional<InputCodec> codec(String name) {
+    return codecs.stream().filter(c -> name.equals(c.getName())).findFirst();
+  }
+
+  /**
+   * Detects the format of a file from its first bytes.
+   *
+   * @param file path to file
+   * @return first codec that matches the file
+   * @throws IOException if the file cannot be read or is in an unknown format
+   */
+  public static InputCodec detect(File file) throws IOException {
+    byte[] header = new byte[HEADER_LENGTH];
+    int length = 0;
+    try (InputStream in = new FileInputStream(file)) {
+      int n;
+      while (length < header.length && (n = in.read(header, length, header.length - length)) > 0) {
+        length += n;
+      }
+    }
+
+    for (InputCodec codec : codecs) {
+      if (codec.matches(header, length)) {
+        return codec;
+      }
+    }
+    throw new IOException("Unknown file format: " + file);
+  }
+
+  /**
+   * Detects the format of a file and opens it for decoding.
+   *
+   * @param file path to file
+   * @param threads number of decoding threads the codec may use
+   * @return decoded contents of the file
+   * @throws IOException if any file-related errors are encountered
+   */
+  public static InputStream open(File file, int threads) throws IOException {
+    return detect(file).open(file, threads);
+  }
+
+  static boolean startsWith(byte[] header, int length, int... magic) {
+    if (length < magic.length) {
+      return false;
+    }
+    for (int i = 0; i < magic.length; i++) {
+      if ((header[i] & 0xff) != magic[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,168 @@
+/**
+ * WikiClean: A Java Wikipedia markup to plain text converter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wikiclean.codecs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Input stream that runs a sequence of decoding tasks on a worker pool and returns their output
+ * in task order. At most a fixed number of tasks are in flight at any time, which bounds memory.
+ */
+public final class OrderedParallelInputStream extends InputStream {
+  private static final byte[] EMPTY = new byte[0];
+
+  private final Iterator<Callable<byte[]>> tasks;
+  private final ExecutorService executor;
+  private final Deque<Future<byte[]>> window = new ArrayDeque<>();
+  private final int windowSize;
+  private final Closeable source;
+
+  private byte[] current = EMPTY;
+  private int pos = 0;
+  private boolean closed = false;
+
+  /**
+   * Class constructor.
+   * @param tasks decoding tasks, in output order
+   * @param threads number of worker threads
+   * @param source underlying resource closed along with this stream, may be null
+   */
+  public OrderedParallelInputStream(Iterator<Callable<byte[]>> tasks, int threads,
+      Closeable source) {
+    this.tasks = tasks;
+    this.windowSize = 2 * threads;
+    this.source = source;
+    this.executor = Executors.newFixedThreadPool(threads, r -> {
+      Thread t = new Thread(r, "wikiclean-decoder");
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (pos == current.length && !advance()) {
+      return -1;
+    }
+    return current[pos++] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (pos == current.length && !advance()) {
+      return -1;
+    }
+
+    int n = Math.min(len, current.length - pos);
+    System.arraycopy(current, pos, b, off, n);
+    pos += n;
+    return n;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    if (n <= 0 || (pos == current.length && !advance())) {
+      return 0;
+    }
+
+    int k = (int) Math.min(n, current.length - pos);
+    pos += k;
+    return k;
+  }
+
+  @Override
+  public int available() {
+    return current.length - pos;
+  }
+
+  private boolean advance() throws IOException {
+    if (closed) {
+      return false;
+    }
+
+    // Skip over tasks that produce no output.
+    do {
+      fill();
+      Future<byte[]> next = window.poll();
+      if (next == null) {
+        close();
+        return false;
+      }
+
+      try {
+        current = next.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      } catch (ExecutionException e) {
+        close();
+        if (e.getCause() instanceof IOException) {
+          throw (IOException) e.getCause();
+        }
+        throw new IOException(e.getCause());
+      }
+      pos = 0;
+    } while (current.length == 0);
+
+    fill();
+    return true;
+  }
+
+  private void fill() throws IOException {
+    try {
+      while (window.size() < windowSize && tasks.hasNext()) {
+        window.add(executor.submit(tasks.next()));
+      }
+    } catch (UncheckedIOException e) {
+      // Producing the tasks themselves may require I/O, e.g., to find block boundaries.
+      close();
+      throw e.getCause();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+
+    closed = true;
+    current = EMPTY;
+    pos = 0;
+    window.forEach(f -> f.cancel(true));
+    window.clear();
+    executor.shutdownNow();
+    if (source != null) {
+      source.close();
+    }
+  }
+}
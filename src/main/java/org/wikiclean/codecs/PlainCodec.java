@@ -0,0 +1,53 @@
+/**
+ * WikiClean: A Java Wikipedia markup to plain text converter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wikiclean.codecs;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Codec for uncompressed XML, which is read as is.
+ */
+public class PlainCodec implements InputCodec {
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  @Override
+  public String getName() {
+    return "xml";
+  }
+
+  @Override
+  public boolean matches(byte[] header, int length) {
+    int i = 0;
+    // Skip a UTF-8 byte order mark and leading whitespace.
+    if (InputCodecs.startsWith(header, length, 0xef, 0xbb, 0xbf)) {
+      i = 3;
+    }
+    while (i < length && Character.isWhitespace(header[i])) {
+      i++;
+    }
+    return i < length && header[i] == '<';
+  }
+
+  @Override
+  public InputStream open(File file, int threads) throws IOException {
+    return new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+  }
+}
@@ -0,0 +1,60 @@
+/**
+ * WikiClean: A Java Wikipedia markup to plain text converter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wikiclean.codecs;
+
+import org.tukaani.xz.XZInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Codec for xz files. Requires the optional {@code org.tukaani:xz} dependency.
+ */
+public class XzCodec implements InputCodec {
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  @Override
+  public String getName() {
+    return "xz";
+  }
+
+  @Override
+  public boolean matches(byte[] header, int length) {
+    return InputCodecs.startsWith(header, length, 0xfd, '7', 'z', 'X', 'Z', 0x00);
+  }
+
+  @Override
+  public InputStream open(File file, int threads) throws IOException {
+    try {
+      Class.forName("org.tukaani.xz.XZInputStream");
+    } catch (ClassNotFoundException e) {
+      throw new IOException("Reading xz files requires org.tukaani:xz on the classpath", e);
+    }
+    return Decoder.open(file);
+  }
+
+  // Keeps references to the optional dependency out of XzCodec itself, so that the codec can be
+  // registered even if the dependency is missing.
+  private static final class Decoder {
+    static InputStream open(File file) throws IOException {
+      return new XZInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+    }
+  }
+}
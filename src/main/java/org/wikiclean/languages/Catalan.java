@@ -1,5 +1,6 @@
 package org.wikiclean.languages;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.regex.Pattern;
 
@@ -17,4 +18,9 @@ public class Catalan extends Language {
   protected List<Pattern> categoryLinkPatterns() {
     return categoryLinkPatterns("Categoria");
   }
+
+  @Override
+  protected List<String> redirectKeywords() {
+    return Arrays.asList("#REDIRECCIÓ", "#REDIRECCIO");
+  }
 }
@@ -26,4 +26,9 @@ public class Chinese extends Language {
   protected List<Pattern> categoryLinkPatterns() {
     return categoryLinkPatterns(English.CATEGORY_LINKS1); //ZH use the same category tag as EN
   }
+
+  @Override
+  protected List<String> redirectKeywords() {
+    return Arrays.asList("#重定向");
+  }
 }
@@ -0,0 +1,213 @@
+package org.wikiclean.languages;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Patterns built from a list of names, e.g. footer headings, which can also be applied all
+ * together in a single scan over the text, with the names looked up in a trie.
+ */
+abstract class CombinedPatterns extends AbstractList<Pattern> {
+  private final List<Pattern> patterns;
+  private final boolean ignoreCase;
+  private final Node names = new Node();
+
+  CombinedPatterns(List<Pattern> patterns, boolean ignoreCase, String... names) {
+    this.patterns = patterns;
+    this.ignoreCase = ignoreCase;
+    for (String name : names) {
+      this.names.add(name, ignoreCase);
+    }
+  }
+
+  @Override
+  public Pattern get(int index) {
+    return patterns.get(index);
+  }
+
+  @Override
+  public int size() {
+    return patterns.size();
+  }
+
+  /**
+   * Removes all matches of the patterns from a text.
+   * @param text text to clean
+   * @param out buffer the cleaned text is appended to
+   * @return false if there are no matches, in which case nothing is appended
+   */
+  abstract boolean removeAll(CharSequence text, StringBuilder out);
+
+  /**
+   * Returns the end of the longest name that starts at a position and that is followed by what
+   * {@code tail} accepts.
+   */
+  int matchName(CharSequence s, int i, Tail tail) {
+    int end = -1;
+    Node node = names;
+    for (int j = i; node != null; j++) {
+      if (node.name && tail.accepts(s, j)) {
+        end = j;
+      }
+      if (j == s.length()) {
+        break;
+      }
+      node = node.child(ignoreCase ? toLowerCase(s.charAt(j)) : s.charAt(j));
+    }
+    return end;
+  }
+
+  interface Tail {
+    boolean accepts(CharSequence s, int i);
+  }
+
+  // Same as Pattern.CASE_INSENSITIVE, which only folds ASCII characters.
+  static char toLowerCase(char c) {
+    return c >= 'A' && c <= 'Z' ? (char) (c + 'a' - 'A') : c;
+  }
+
+  static int indexOf(CharSequence s, char c1, char c2, int from) {
+    for (int i = from; i < s.length() - 1; i++) {
+      if (s.charAt(i) == c1 && s.charAt(i + 1) == c2) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static final class Node {
+    private char[] chars = new char[0];
+    private Node[] children = new Node[0];
+    private boolean name;
+
+    private void add(String name, boolean ignoreCase) {
+      Node node = this;
+      for (int i = 0; i < name.length(); i++) {
+        char c = ignoreCase ? toLowerCase(name.charAt(i)) : name.charAt(i);
+        Node child = node.child(c);
+        if (child == null) {
+          child = new Node();
+          int n = node.chars.length;
+          node.chars = Arrays.copyOf(node.chars, n + 1);
+          node.children = Arrays.copyOf(node.children, n + 1);
+          node.chars[n] = c;
+          node.children[n] = child;
+        }
+        node = child;
+      }
+      node.name = true;
+    }
+
+    private Node child(char c) {
+      for (int i = 0; i < chars.length; i++) {
+        if (chars[i] == c) {
+          return children[i];
+        }
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Patterns {@code ==\s*Heading\s*==.*}, which remove everything from the earliest footer
+   * heading on. Headings are matched literally, ignoring the case of ASCII letters.
+   */
+  static final class Footer extends CombinedPatterns {
+    private static final Tail CLOSE = (s, i) -> {
+      int j = skipWhitespace(s, i);
+      return j + 1 < s.length() && s.charAt(j) == '=' && s.charAt(j + 1) == '=';
+    };
+
+    Footer(List<Pattern> patterns, String... headings) {
+      super(patterns, true, headings);
+    }
+
+    /**
+     * Returns the start of the earliest footer heading.
+     * @param text text to search
+     * @return start of the footer, or -1 if there is none
+     */
+    int start(CharSequence text) {
+      for (int i = indexOf(text, '=', '=', 0); i >= 0; i = indexOf(text, '=', '=', i + 1)) {
+        if (matchName(text, skipWhitespace(text, i + 2), CLOSE) >= 0) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    boolean removeAll(CharSequence text, StringBuilder out) {
+      int start = start(text);
+      if (start < 0) {
+        return false;
+      }
+      out.append(text, 0, start);
+      return true;
+    }
+
+    // Same as \s*.
+    private static int skipWhitespace(CharSequence s, int i) {
+      while (i < s.length()) {
+        char c = s.charAt(i);
+        if (c != ' ' && c != '\t' && c != '\n' && c != '\u000B' && c != '\f' && c != '\r') {
+          break;
+        }
+        i++;
+      }
+      return i;
+    }
+  }
+
+  /**
+   * Patterns {@code \[\[Name:([^\]]+)\]\]}, which remove category links. Names are matched
+   * literally.
+   */
+  static final class CategoryLinks extends CombinedPatterns {
+    private static final Tail COLON = (s, i) -> i < s.length() && s.charAt(i) == ':';
+
+    CategoryLinks(List<Pattern> patterns, String... names) {
+      super(patterns, false, names);
+    }
+
+    @Override
+    boolean removeAll(CharSequence text, StringBuilder out) {
+      boolean removed = false;
+      int from = 0;
+      // First ']' at or after the last name, which later names can reuse, so that links that are
+      // not closed do not make the text be scanned again for every name, e.g. "[[Category:[[...".
+      int close = -1;
+      for (int i = indexOf(text, '[', '[', 0); i >= 0; ) {
+        int colon = matchName(text, i + 2, COLON);
+        if (colon >= 0 && close <= colon) {
+          close = colon + 1;
+          while (close < text.length() && text.charAt(close) != ']') {
+            close++;
+          }
+        }
+        int end = colon < 0 ? -1 : end(text, colon, close);
+        if (end < 0) {
+          i = indexOf(text, '[', '[', i + 1);
+          continue;
+        }
+        out.append(text, from, i);
+        removed = true;
+        from = end;
+        i = indexOf(text, '[', '[', end);
+      }
+      if (removed) {
+        out.append(text, from, text.length());
+      }
+      return removed;
+    }
+
+    // Returns the end of the category link whose name ends at 'colon', given the first ']' after
+    // it, or -1 if the link is not closed.
+    private static int end(CharSequence s, int colon, int close) {
+      return close > colon + 1 && close + 1 < s.length() && s.charAt(close + 1) == ']'
+          ? close + 2 : -1;
+    }
+  }
+}
@@ -1,5 +1,6 @@
 package org.wikiclean.languages;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.regex.Pattern;
 
@@ -17,4 +18,9 @@ public class Dutch extends Language {
   protected List<Pattern> categoryLinkPatterns() {
     return categoryLinkPatterns("Categorie");
   }
+
+  @Override
+  protected List<String> redirectKeywords() {
+    return Arrays.asList("#DOORVERWIJZING");
+  }
 }
@@ -1,5 +1,6 @@
 package org.wikiclean.languages;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.regex.Pattern;
 
@@ -19,4 +20,9 @@ public class German extends Language {
   protected List<Pattern> categoryLinkPatterns() {
     return categoryLinkPatterns("Kategorie");
   }
+
+  @Override
+  protected List<String> redirectKeywords() {
+    return Arrays.asList("#WEITERLEITUNG");
+  }
 }
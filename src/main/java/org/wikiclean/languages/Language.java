@@ -1,5 +1,7 @@
 package org.wikiclean.languages;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.regex.Pattern;
@@ -9,7 +11,13 @@ import java.util.regex.Pattern;
  * Subclasses can just provide patterns to be cleaned or define their own logic
  */
 public abstract class Language {
+  private static final String REDIRECT = "#REDIRECT";
+
   private final String code;
+  // Built on first use, since subclasses provide them.
+  private volatile List<Pattern> footerPatterns;
+  private volatile List<Pattern> categoryLinkPatterns;
+  private volatile List<String> redirectKeywords;
 
   /**
    * @param code ISO 639-1 language code
@@ -18,53 +26,147 @@ public abstract class Language {
     this.code = code;
   }
 
-  private String cleanWithPatterns(String text, List<Pattern> patterns) {
-    String cleaned = text;
+  private boolean cleanWithPatterns(CharSequence text, StringBuilder out, List<Pattern> patterns) {
+    if (patterns instanceof CombinedPatterns) {
+      return ((CombinedPatterns) patterns).removeAll(text, out);
+    }
 
+    String cleaned = text.toString();
     for (Pattern pattern : patterns) {
       cleaned = pattern.matcher(cleaned).replaceAll("");
     }
-    return cleaned;
+    if (cleaned.length() == text.length()) {
+      return false;
+    }
+    out.append(cleaned);
+    return true;
+  }
+
+  private String cleanWithPatterns(String text, List<Pattern> patterns) {
+    StringBuilder out = new StringBuilder();
+    return cleanWithPatterns(text, out, patterns) ? out.toString() : text;
+  }
+
+  private List<Pattern> footerPatternsOnce() {
+    if (footerPatterns == null) {
+      footerPatterns = footerPatterns();
+    }
+    return footerPatterns;
+  }
+
+  private List<Pattern> categoryLinkPatternsOnce() {
+    if (categoryLinkPatterns == null) {
+      categoryLinkPatterns = categoryLinkPatterns();
+    }
+    return categoryLinkPatterns;
+  }
+
+  private List<String> redirectKeywordsOnce() {
+    if (redirectKeywords == null) {
+      List<String> keywords = new ArrayList<>(redirectKeywords());
+      keywords.add(REDIRECT);
+      redirectKeywords = keywords;
+    }
+    return redirectKeywords;
   }
 
   /**
-   * Patterns used in removeFooter's default implementation
+   * Patterns used in removeFooter's default implementation; called once per instance
    * @return list of patterns to delete from footers
    */
   protected abstract List<Pattern> footerPatterns();
 
   /**
-   * built common patterns out of headlines
-   * @param headings headings to use in patterns
+   * built common patterns out of headlines, which are applied together by finding the earliest
+   * heading in one scan
+   * @param headings headings to use in patterns, matched literally
    * @return patterns for footerPatterns()
    * */
   protected List<Pattern> footerPatterns(String... headings)  {
     List<Pattern> patterns = new LinkedList<>();
     for (String heading : headings) {
-      patterns.add(Pattern.compile("==\\s*" + heading + "\\s*==.*",
+      patterns.add(Pattern.compile("==\\s*" + Pattern.quote(heading) + "\\s*==.*",
           Pattern.CASE_INSENSITIVE | Pattern.DOTALL));
     }
-    return patterns;
+    return new CombinedPatterns.Footer(Collections.unmodifiableList(patterns), headings);
   }
 
   /**
-   * Patterns used in removeCategoryLink's default implementation
+   * Patterns used in removeCategoryLink's default implementation; called once per instance
    * @return list of patterns to delete
    */
   protected abstract List<Pattern> categoryLinkPatterns();
 
   /**
-   * built common patterns out of category names
-   * @param names names to use in patterns
+   * built common patterns out of category names, which are applied together in one scan
+   * @param names names to use in patterns, matched literally
    * @return patterns for categoryLinkPatterns()
    * */
   protected List<Pattern> categoryLinkPatterns(String... names) {
     List<Pattern> patterns = new LinkedList<>();
     for (String name : names) {
-      patterns.add(Pattern.compile("\\[\\[" + name + ":([^\\]]+)\\]\\]"));
+      patterns.add(Pattern.compile("\\[\\[" + Pattern.quote(name) + ":([^\\]]+)\\]\\]"));
+
+    }
+    return new CombinedPatterns.CategoryLinks(Collections.unmodifiableList(patterns), names);
+  }
+
+  /**
+   * Magic words that start a redirect in this language, besides {@code #REDIRECT}, which works in
+   * all languages; called once per instance
+   * @return localized magic words, with their {@code #}, matched ignoring case
+   */
+  protected List<String> redirectKeywords() {
+    return Collections.emptyList();
+  }
+
+  /**
+   * Tells whether the wiki markup of a page is that of a redirect, i.e., starts with a redirect
+   * magic word followed by a link, as MediaWiki does, without cleaning it
+   * @param markup wiki markup of a page
+   * @return whether the page is a redirect
+   */
+  public boolean isRedirect(CharSequence markup) {
+    int start = skipWhitespace(markup, 0);
+    if (start == markup.length() || markup.charAt(start) != '#') {
+      return false;
+    }
 
+    for (String keyword : redirectKeywordsOnce()) {
+      if (!startsWithIgnoreCase(markup, start, keyword)) {
+        continue;
+      }
+      int i = skipWhitespace(markup, start + keyword.length());
+      if (i < markup.length() && markup.charAt(i) == ':') {
+        i = skipWhitespace(markup, i + 1);
+      }
+      if (i + 1 < markup.length() && markup.charAt(i) == '[' && markup.charAt(i + 1) == '[') {
+        return true;
+      }
     }
-    return patterns;
+    return false;
+  }
+
+  private static int skipWhitespace(CharSequence s, int i) {
+    while (i < s.length() && Character.isWhitespace(s.charAt(i))) {
+      i++;
+    }
+    return i;
+  }
+
+  private static boolean startsWithIgnoreCase(CharSequence s, int start, String prefix) {
+    if (s.length() - start < prefix.length()) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length(); i++) {
+      char a = s.charAt(start + i);
+      char b = prefix.charAt(i);
+      if (a != b && Character.toUpperCase(a) != Character.toUpperCase(b)
+          && Character.toLowerCase(a) != Character.toLowerCase(b)) {
+        return false;
+      }
+    }
+    return true;
   }
 
   /**
@@ -73,11 +175,31 @@ public abstract class Language {
    * @return cleaned footer
    */
   public String removeFooter(String footer) {
-    return cleanWithPatterns(footer, footerPatterns());
+    return cleanWithPatterns(footer, footerPatternsOnce());
+  }
+
+  /**
+   * used to clean footers in {@link org.wikiclean.WikiClean}, without creating strings
+   * @param text text to clean
+   * @param out buffer the cleaned text is appended to
+   * @return false if there is no footer, in which case nothing is appended
+   */
+  public boolean removeFooter(CharSequence text, StringBuilder out) {
+    return cleanWithPatterns(text, out, footerPatternsOnce());
   }
 
   public String removeCategoryLinks(String text) {
-    return cleanWithPatterns(text, categoryLinkPatterns());
+    return cleanWithPatterns(text, categoryLinkPatternsOnce());
+  }
+
+  /**
+   * used to clean category links in {@link org.wikiclean.WikiClean}, without creating strings
+   * @param text text to clean
+   * @param out buffer the cleaned text is appended to
+   * @return false if there are no category links, in which case nothing is appended
+   */
+  public boolean removeCategoryLinks(CharSequence text, StringBuilder out) {
+    return cleanWithPatterns(text, out, categoryLinkPatternsOnce());
   }
 
   /**
@@ -0,0 +1,169 @@
+/**
+ * WikiClean: A Java Wikipedia markup to plain text converter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wikiclean;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CheckpointedOutputTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testReadWrite() throws IOException {
+    File file = folder.newFile("checkpoint");
+    DumpCheckpoint checkpoint = new DumpCheckpoint(12345678901L, 42, 7, 100, 200);
+    checkpoint.write(file);
+
+    DumpCheckpoint read = DumpCheckpoint.read(file);
+    assertEquals(12345678901L, read.getPosition());
+    assertEquals(42, read.getPageId());
+    assertEquals(7, read.getPages());
+    assertArrayEquals(new long[] {100, 200}, read.getOutputs());
+
+    new DumpCheckpoint(0, -1, 0).write(file);
+    assertArrayEquals(new long[0], DumpCheckpoint.read(file).getOutputs());
+  }
+
+  @Test
+  public void testResume() throws IOException {
+    int pages = 2 * CheckpointedOutput.CHECKPOINT_INTERVAL + 100;
+    File dump = folder.newFile("dump.xml");
+    try (OutputStream out = new FileOutputStream(dump)) {
+      out.write("<mediawiki>\n".getBytes(StandardCharsets.UTF_8));
+      for (int id = 1; id <= pages; id++) {
+        out.write(WikipediaArticlesDumpTest.page(id).getBytes(StandardCharsets.UTF_8));
+      }
+      out.write("</mediawiki>\n".getBytes(StandardCharsets.UTF_8));
+    }
+    File output = new File(folder.getRoot(), "output.txt");
+    File checkpoint = new File(folder.getRoot(), "output.txt.checkpoint");
+
+    // Crash after writing some output past the second checkpoint.
+    try (WikipediaArticlesDump wikipedia = new WikipediaArticlesDump(dump)) {
+      CheckpointedOutput out = new CheckpointedOutput(wikipedia, output, checkpoint, false);
+      Iterator<Page> iterator = wikipedia.pages().iterator();
+      for (int i = 0; i < 2 * CheckpointedOutput.CHECKPOINT_INTERVAL + 10; i++) {
+        out.writer().println(iterator.next().getId());
+        out.commit();
+      }
+      out.writer().flush();
+    }
+    assertTrue(checkpoint.exists());
+    assertEquals(2 * CheckpointedOutput.CHECKPOINT_INTERVAL,
+        DumpCheckpoint.read(checkpoint).getPages());
+
+    try (WikipediaArticlesDump wikipedia = new WikipediaArticlesDump(dump)) {
+      CheckpointedOutput out = new CheckpointedOutput(wikipedia, output, checkpoint, true);
+      PrintWriter writer = out.writer();
+      wikipedia.pages().forEach(page -> {
+        writer.println(page.getId());
+        out.commit();
+      });
+      out.close();
+    }
+    assertFalse(checkpoint.exists());
+
+    StringBuilder expected = new StringBuilder();
+    for (int id = 1; id <= pages; id++) {
+      expected.append(id).append(System.lineSeparator());
+    }
+    assertEquals(expected.toString(),
+        new String(Files.readAllBytes(output.toPath()), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testResumeSeveralOutputs() throws IOException {
+    int pages = 2 * CheckpointedOutput.CHECKPOINT_INTERVAL + 100;
+    File dump = folder.newFile("dump.xml");
+    try (OutputStream out = new FileOutputStream(dump)) {
+      out.write("<mediawiki>\n".getBytes(StandardCharsets.UTF_8));
+      for (int id = 1; id <= pages; id++) {
+        out.write(WikipediaArticlesDumpTest.page(id).getBytes(StandardCharsets.UTF_8));
+      }
+      out.write("</mediawiki>\n".getBytes(StandardCharsets.UTF_8));
+    }
+    File ids = new File(folder.getRoot(), "ids.txt");
+    File squares = new File(folder.getRoot(), "squares");
+    File checkpoint = new File(folder.getRoot(), "output.checkpoint");
+
+    // Crash after writing some output past the second checkpoint.
+    try (WikipediaArticlesDump wikipedia = new WikipediaArticlesDump(dump)) {
+      CheckpointedOutput out = new CheckpointedOutput(wikipedia, Arrays.asList(
+          CheckpointedOutput.file(ids), new ShardedOutput(squares, 3, 0, false, 1)),
+          checkpoint, false);
+      Iterator<Page> iterator = wikipedia.pages().iterator();
+      for (int i = 0; i < 2 * CheckpointedOutput.CHECKPOINT_INTERVAL + 10; i++) {
+        long id = iterator.next().getId();
+        out.writer(0, id).println(id);
+        out.writer(1, id).println(id * id);
+        out.commit();
+      }
+      out.writer(0, 0).flush();
+    }
+    // The sizes of each output are preceded by their number.
+    assertEquals(1 + 1 + 1 + 3, DumpCheckpoint.read(checkpoint).getOutputs().length);
+
+    try (WikipediaArticlesDump wikipedia = new WikipediaArticlesDump(dump)) {
+      CheckpointedOutput out = new CheckpointedOutput(wikipedia, Arrays.asList(
+          CheckpointedOutput.file(ids), new ShardedOutput(squares, 3, 0, false, 1)),
+          checkpoint, true);
+      wikipedia.pages().forEach(page -> {
+        out.writer(0, page.getId()).println(page.getId());
+        out.writer(1, page.getId()).println(page.getId() * page.getId());
+        out.commit();
+      });
+      out.close();
+    }
+    assertFalse(checkpoint.exists());
+
+    StringBuilder expected = new StringBuilder();
+    long sum = 0;
+    for (long id = 1; id <= pages; id++) {
+      expected.append(id).append(System.lineSeparator());
+      sum += id * id;
+    }
+    assertEquals(expected.toString(),
+        new String(Files.readAllBytes(ids.toPath()), StandardCharsets.UTF_8));
+    long squared = 0;
+    int lines = 0;
+    for (File part : squares.listFiles()) {
+      for (String line : Files.readAllLines(part.toPath(), StandardCharsets.UTF_8)) {
+        squared += Long.parseLong(line);
+        lines++;
+      }
+    }
+    assertEquals(pages, lines);
+    assertEquals(sum, squared);
+  }
+}
@@ -0,0 +1,84 @@
+/**
+ * WikiClean: A Java Wikipedia markup to plain text converter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wikiclean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.apache.commons.lang3.StringEscapeUtils;
+import org.junit.Test;
+
+public class HtmlEntitiesTest {
+
+  private static String unescapeTwice(String s) {
+    StringBuilder out = new StringBuilder("prefix");
+    if (!HtmlEntities.unescapeTwice(s, out)) {
+      assertEquals("prefix", out.toString());
+      return s;
+    }
+    assertTrue(out.toString().startsWith("prefix"));
+    return out.substring(6);
+  }
+
+  @Test
+  public void testUnescape() throws Exception {
+    assertEquals("<b> & \"x\" é— ", HtmlEntities.unescape(
+        "&lt;b&gt; &amp; &quot;x&quot; &eacute;&mdash;&nbsp;"));
+    assertEquals("Aé😀", HtmlEntities.unescape("&#65;&#xe9;&#X1F600;"));
+    assertEquals("&lt;", HtmlEntities.unescape("&amp;lt;"));
+
+    // Not entities.
+    String s = "& &; &foo; &lt &#; &#x; &#12a; &#65 &#1114112; &#99999999999; &";
+    assertSame(s, HtmlEntities.unescape(s));
+    assertSame("no entities", HtmlEntities.unescape("no entities"));
+
+    assertEquals("<", unescapeTwice("&amp;lt;"));
+    assertEquals("&lt;", unescapeTwice("&amp;amp;lt;"));
+    assertEquals("a  b & c", unescapeTwice("a &amp;nbsp;b &amp; c"));
+    assertEquals("<x", unescapeTwice("&amp;&#108;t;x"));
+    assertFalse(HtmlEntities.unescapeTwice("a & b", new StringBuilder()));
+  }
+
+  @Test
+  public void testSameAsCommonsLang() throws Exception {
+    String[] atoms = { "&", "#", "x", "X", ";", "amp", "lt", "gt", "quot", "nbsp", "not", "notin",
+        "eacute", "Eacute", "euro", "1", "6", "0", "a", "F", "9", "12", "108", "x1F600", " ", "\n",
+        "é", "😀", "&amp;", "&#38;", "&#x26;" };
+    Random random = new Random(0);
+    for (int n = 0; n < 100000; n++) {
+      StringBuilder b = new StringBuilder();
+      int length = random.nextInt(12);
+      for (int i = 0; i < length; i++) {
+        b.append(atoms[random.nextInt(atoms.length)]);
+      }
+      String s = b.toString();
+      assertEquals(s, StringEscapeUtils.unescapeHtml4(s), HtmlEntities.unescape(s));
+      assertEquals(s, StringEscapeUtils.unescapeHtml4(StringEscapeUtils.unescapeHtml4(s)),
+          unescapeTwice(s));
+    }
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(HtmlEntitiesTest.class);
+  }
+}
@@ -0,0 +1,118 @@
+/**
+ * WikiClean: A Java Wikipedia markup to plain text converter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wikiclean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+import org.wikiclean.languages.English;
+import org.wikiclean.languages.German;
+import org.wikiclean.languages.Language;
+import org.wikiclean.languages.Russian;
+
+public class LanguageTest {
+
+  @Test
+  public void testRemoveFooter() {
+    Language en = new English();
+    assertEquals("Text\n", en.removeFooter("Text\n== See also ==\n* x\n== References ==\n"));
+    assertEquals("Text\n", en.removeFooter("Text\n==references==\n== See also ==\n"));
+    assertEquals("Text\n=", en.removeFooter("Text\n=== Further reading ===\n"));
+    assertEquals("Text\n== Seealso ==", en.removeFooter("Text\n== Seealso =="));
+    assertEquals("Text\n== See also =", en.removeFooter("Text\n== See also ="));
+
+    // Headings are matched literally, and only ASCII letters are folded.
+    Language ru = new Russian();
+    assertEquals("Текст\n", ru.removeFooter("Текст\n== См. также ==\n"));
+    assertEquals("Текст\n== См, также ==\n", ru.removeFooter("Текст\n== См, также ==\n"));
+    assertEquals("Текст\n== ССЫЛКИ ==\n", ru.removeFooter("Текст\n== ССЫЛКИ ==\n"));
+
+    StringBuilder out = new StringBuilder();
+    assertFalse(en.removeFooter("No footer", out));
+    assertEquals("", out.toString());
+    assertTrue(en.removeFooter(new StringBuilder("Text== External links =="), out));
+    assertEquals("Text", out.toString());
+  }
+
+  @Test
+  public void testRemoveCategoryLinks() {
+    Language de = new German();
+    assertEquals("a b c", de.removeCategoryLinks("a [[Kategorie:X]]b[[Kategorie:Y|Z]] c"));
+    assertEquals("[[Kategorie:]] [[kategorie:X]] [[Kategorie:X]",
+        de.removeCategoryLinks("[[Kategorie:]] [[kategorie:X]] [[Kategorie:X]"));
+    assertEquals("[[", de.removeCategoryLinks("[[[[Kategorie:X]]"));
+
+    StringBuilder out = new StringBuilder();
+    assertFalse(de.removeCategoryLinks("[[Category:X]]", out));
+    assertEquals("", out.toString());
+  }
+
+  @Test
+  public void testIsRedirect() {
+    Language en = new English();
+    assertTrue(en.isRedirect("#REDIRECT [[Target]]"));
+    assertTrue(en.isRedirect("\n #redirect:[[Target]]"));
+    assertTrue(en.isRedirect("#Redirect\n[[Target|x]] {{R from move}}"));
+    assertFalse(en.isRedirect("#REDIRECT Target"));
+    assertFalse(en.isRedirect("Text #REDIRECT [[Target]]"));
+    assertFalse(en.isRedirect("#WEITERLEITUNG [[Ziel]]"));
+    assertFalse(en.isRedirect("#REDIRECT"));
+    assertFalse(en.isRedirect(""));
+
+    // Localized magic words work besides the English one.
+    Language de = new German();
+    assertTrue(de.isRedirect("#WEITERLEITUNG [[Ziel]]"));
+    assertTrue(de.isRedirect("#weiterleitung[[Ziel]]"));
+    assertTrue(de.isRedirect("#REDIRECT [[Ziel]]"));
+
+    Language ru = new Russian();
+    assertTrue(ru.isRedirect("#перенаправление [[Цель]]"));
+    assertTrue(ru.isRedirect("#ПЕРЕНАПР [[Цель]]"));
+    assertFalse(ru.isRedirect("#ПЕРЕНАПРАВЛЕНИЯ [[Цель]]"));
+  }
+
+  @Test
+  public void testCustomPatterns() {
+    // Patterns that are not built from names are applied one after the other.
+    Language custom = new Language("xx") {
+      @Override
+      protected List<Pattern> footerPatterns() {
+        return Collections.singletonList(Pattern.compile("--.*", Pattern.DOTALL));
+      }
+
+      @Override
+      protected List<Pattern> categoryLinkPatterns() {
+        return Collections.singletonList(Pattern.compile("#\\w+"));
+      }
+    };
+    assertEquals("Text ", custom.removeFooter("Text -- footer"));
+    assertEquals("a  b", custom.removeCategoryLinks("a #tag b"));
+    assertFalse(custom.removeFooter("x", new StringBuilder()));
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(LanguageTest.class);
+  }
+}
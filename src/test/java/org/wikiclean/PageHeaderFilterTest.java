@@ -0,0 +1,93 @@
+/**
+ * WikiClean: A Java Wikipedia markup to plain text converter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wikiclean;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PageHeaderFilterTest {
+  private static boolean accept(PageHeaderFilter filter, String page) {
+    byte[] bytes = ("xx" + page + "yy").getBytes(StandardCharsets.UTF_8);
+    return filter.accept(bytes, 2, bytes.length - 4);
+  }
+
+  private static PageHeaderFilter.Verdict acceptHeader(PageHeaderFilter filter, String page) {
+    byte[] bytes = page.getBytes(StandardCharsets.UTF_8);
+    return filter.acceptHeader(bytes, 0, bytes.length);
+  }
+
+  private static String page(int ns, boolean redirect, String textTag, String text) {
+    return "  <page>\n    <title>T</title>\n    <ns>" + ns + "</ns>\n    <id>1</id>\n" +
+        (redirect ? "    <redirect title=\"Target\" />\n" : "") +
+        "    <revision>\n      " + textTag + text + "</text>\n    </revision>\n  </page>\n";
+  }
+
+  @Test
+  public void testNamespacesAndRedirects() {
+    PageHeaderFilter all = new PageHeaderFilter.Builder().build();
+    PageHeaderFilter articles = new PageHeaderFilter.Builder().withNamespaces(0).build();
+    PageHeaderFilter noRedirects =
+        new PageHeaderFilter.Builder().withNamespaces(14, 0).skipRedirects().build();
+
+    String tag = "<text xml:space=\"preserve\">";
+    assertTrue(accept(all, page(4, true, tag, "Text")));
+    assertTrue(accept(articles, page(0, true, tag, "Text")));
+    assertFalse(accept(articles, page(1, false, tag, "Text")));
+    assertFalse(accept(articles, page(-1, false, tag, "Text")));
+    assertTrue(accept(noRedirects, page(14, false, tag, "Text")));
+    assertFalse(accept(noRedirects, page(0, true, tag, "#REDIRECT [[Target]]")));
+    assertFalse(accept(noRedirects, page(2, false, tag, "Text")));
+
+    // Escaped markup in the text is never mistaken for header elements.
+    assertTrue(accept(noRedirects, page(0, false, tag, "&lt;redirect&gt; &lt;ns&gt;1")));
+
+    // Pages without a namespace are articles.
+    assertTrue(accept(articles, "<page>\n<title>T</title>\n</page>\n"));
+  }
+
+  @Test
+  public void testTextBytes() {
+    PageHeaderFilter filter =
+        new PageHeaderFilter.Builder().withMinTextBytes(4).withMaxTextBytes(10).build();
+
+    // The size is taken from the header if possible.
+    String sized = "<text bytes=\"%d\" xml:space=\"preserve\">";
+    assertEquals(PageHeaderFilter.Verdict.ACCEPT,
+        acceptHeader(filter, page(0, false, String.format(sized, 4), "")));
+    assertEquals(PageHeaderFilter.Verdict.REJECT,
+        acceptHeader(filter, page(0, false, String.format(sized, 3), "")));
+    assertEquals(PageHeaderFilter.Verdict.REJECT,
+        acceptHeader(filter, page(0, false, String.format(sized, 11), "")));
+    assertTrue(accept(filter, page(0, false, String.format(sized, 10), "")));
+
+    // Otherwise, from the text itself.
+    String tag = "<text xml:space=\"preserve\">";
+    assertEquals(PageHeaderFilter.Verdict.NEEDS_TEXT,
+        acceptHeader(filter, page(0, false, tag, "Text")));
+    assertTrue(accept(filter, page(0, false, tag, "Text")));
+    assertFalse(accept(filter, page(0, false, tag, "Tex")));
+    assertFalse(accept(filter, page(0, false, tag, "Longer text")));
+    assertFalse(accept(filter, "<page>\n<text xml:space=\"preserve\" />\n</page>\n"));
+    assertTrue(accept(new PageHeaderFilter.Builder().withMaxTextBytes(10).build(),
+        "<page>\n<title>T</title>\n</page>\n"));
+  }
+}
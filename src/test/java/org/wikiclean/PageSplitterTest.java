@@ -0,0 +1,168 @@
+/**
+ * WikiClean: A Java Wikipedia markup to plain text converter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wikiclean;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PageSplitterTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static List<String> split(InputStream in) throws IOException {
+    return split(new PageSplitter(in));
+  }
+
+  private static List<String> split(PageSplitter splitter) throws IOException {
+    List<String> pages = new ArrayList<>();
+    while (splitter.next()) {
+      pages.add(splitter.decode());
+    }
+    return pages;
+  }
+
+  // Maps the dump from a file, with tiny windows to exercise remapping at every position.
+  private PageSplitter mapped(String s, int windowSize) throws IOException {
+    File file = folder.newFile();
+    Files.write(file.toPath(), s.getBytes(StandardCharsets.UTF_8));
+    return new PageSplitter(FileChannel.open(file.toPath(), StandardOpenOption.READ), windowSize);
+  }
+
+  private static InputStream bytes(String s) {
+    return new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_8));
+  }
+
+  // Returns at most one byte per read, to exercise refilling the buffer at every position.
+  private static InputStream trickle(String s) {
+    return new FilterInputStream(bytes(s)) {
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        return super.read(b, off, Math.min(len, 1));
+      }
+    };
+  }
+
+  @Test
+  public void testSplit() throws IOException {
+    String page1 = "  <page>\n    <title>政府</title>\n    <id>1</id>\n  </page>\n";
+    String page2 = "  <page>\n    <title>B</title>\n    <id>2</id>\n  </page>\n";
+    String dump = "<mediawiki>\n  <siteinfo>\n  </siteinfo>\n" + page1 + page2 + "</mediawiki>\n";
+
+    List<String> expected = new ArrayList<>();
+    expected.add(page1);
+    expected.add(page2);
+
+    assertEquals(expected, split(bytes(dump)));
+    assertEquals(expected, split(trickle(dump)));
+    for (int windowSize : new int[] {1, 7, 64, PageSplitter.DEFAULT_WINDOW_SIZE}) {
+      assertEquals(expected, split(mapped(dump, windowSize)));
+    }
+  }
+
+  @Test
+  public void testLargePage() throws IOException {
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 20000; i++) {
+      text.append("Line ").append(i).append(" of the article, with some text.\n");
+    }
+    String page = "  <page>\n    <text xml:space=\"preserve\">" + text + "</text>\n  </page>\n";
+
+    String dump = "<mediawiki>\n" + page + page + "</mediawiki>\n";
+    for (List<String> pages : Arrays.asList(split(bytes(dump)), split(mapped(dump, 1024)))) {
+      assertEquals(2, pages.size());
+      assertEquals(page, pages.get(0));
+      assertEquals(page, pages.get(1));
+    }
+  }
+
+  @Test
+  public void testEndOfStream() throws IOException {
+    // No newline after the last page.
+    List<String> pages = split(bytes("<page>\n  <id>1</id>\n</page>"));
+    assertEquals(1, pages.size());
+    assertEquals("<page>\n  <id>1</id>\n</page>", pages.get(0));
+
+    // Truncated page.
+    pages = split(trickle("<page>\n  <id>1</id>\n</page>\n<page>\n  <id>2</id>\n"));
+    assertEquals(2, pages.size());
+    assertEquals("<page>\n  <id>2</id>\n", pages.get(1));
+
+    pages = split(mapped("<page>\n  <id>1</id>\n</page>\n<page>\n  <id>2</id>\n", 5));
+    assertEquals(2, pages.size());
+    assertEquals("<page>\n  <id>2</id>\n", pages.get(1));
+
+    assertEquals(0, split(bytes("")).size());
+    assertEquals(0, split(mapped("", 16)).size());
+    assertEquals(0, split(bytes("<mediawiki>\n</mediawiki>\n")).size());
+  }
+
+  @Test
+  public void testHeaderFilter() throws IOException {
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 20000; i++) {
+      text.append("Line ").append(i).append(" of the talk page, with some text.\n");
+    }
+    String talk = "  <page>\n    <ns>1</ns>\n    <text xml:space=\"preserve\">" + text +
+        "</text>\n  </page>\n";
+    String redirect = "  <page>\n    <ns>0</ns>\n    <redirect title=\"B\" />\n" +
+        "    <text xml:space=\"preserve\">#REDIRECT [[B]]</text>\n  </page>\n";
+    String article = "  <page>\n    <ns>0</ns>\n    <text xml:space=\"preserve\">Text</text>\n" +
+        "  </page>\n";
+    String dump = "<mediawiki>\n" + talk + redirect + article + talk + article + "</mediawiki>\n";
+
+    PageFilter filter = new PageHeaderFilter.Builder().withNamespaces(0).skipRedirects().build();
+    PageSplitter[] splitters = {new PageSplitter(bytes(dump)), new PageSplitter(trickle(dump)),
+        mapped(dump, 4096)};
+    for (PageSplitter splitter : splitters) {
+      List<String> pages = new ArrayList<>();
+      while (splitter.next(filter)) {
+        pages.add(splitter.decode());
+      }
+
+      assertEquals(2, pages.size());
+      assertEquals(article, pages.get(0));
+      assertEquals(article, pages.get(1));
+      // The talk pages were skipped without being buffered.
+      assertTrue(splitter.bufferSize() < text.length());
+    }
+
+    // Other filters see whole pages.
+    PageSplitter splitter = new PageSplitter(bytes(dump));
+    int count = 0;
+    while (splitter.next((bytes, offset, length) -> length < 200)) {
+      assertTrue(splitter.decode().endsWith("</page>\n"));
+      count++;
+    }
+    assertEquals(3, count);
+  }
+}
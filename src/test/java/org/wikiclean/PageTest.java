@@ -0,0 +1,105 @@
+/**
+ * WikiClean: A Java Wikipedia markup to plain text converter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wikiclean;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import org.wikiclean.languages.Language;
+import org.wikiclean.languages.Languages;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PageTest {
+  @Test
+  public void testParse() {
+    String raw = "  <page>\n" +
+        "    <title>AT&amp;T Corp</title>\n" +
+        "    <ns>0</ns>\n" +
+        "    <id>1234</id>\n" +
+        "    <redirect title=\"AT&amp;T &quot;Inc&quot;\" />\n" +
+        "    <revision>\n" +
+        "      <id>5678</id>\n" +
+        "      <parentid>5677</parentid>\n" +
+        "      <contributor>\n" +
+        "        <username>Someone</username>\n" +
+        "        <id>42</id>\n" +
+        "      </contributor>\n" +
+        "      <minor />\n" +
+        "      <text bytes=\"26\" xml:space=\"preserve\">#REDIRECT [[AT&amp;T Inc]]</text>\n" +
+        "      <sha1>0123456789abcdef</sha1>\n" +
+        "    </revision>\n" +
+        "  </page>\n";
+
+    Page page = Page.parse(raw);
+    assertEquals(1234, page.getId());
+    assertEquals(0, page.getNamespace());
+    assertEquals("AT&T Corp", page.getTitle());
+    assertTrue(page.isRedirect());
+    assertEquals("AT&T \"Inc\"", page.getRedirect());
+    assertEquals(5678, page.getRevisionId());
+    assertEquals("0123456789abcdef", page.getSha1());
+    assertEquals("#REDIRECT [[AT&amp;T Inc]]", page.getWikiMarkup());
+  }
+
+  @Test
+  public void testParseMissingFields() {
+    Page page = Page.parse("  <page>\n    <title>Talk:Foo</title>\n    <ns>1</ns>\n" +
+        "    <revision>\n      <contributor deleted=\"deleted\" />\n      <id>7</id>\n" +
+        "      <text bytes=\"0\" />\n    </revision>\n  </page>\n");
+    assertEquals(0, page.getId());
+    assertEquals(1, page.getNamespace());
+    assertEquals("Talk:Foo", page.getTitle());
+    assertFalse(page.isRedirect());
+    assertNull(page.getRedirect());
+    assertEquals(7, page.getRevisionId());
+    assertEquals("", page.getSha1());
+    assertEquals("", page.getWikiMarkup());
+
+    page = Page.parse("");
+    assertEquals(0, page.getId());
+    assertEquals("", page.getTitle());
+    assertEquals("", page.getWikiMarkup());
+  }
+
+  @Test
+  public void testCleanMatchesRawPage() throws Exception {
+    for (File file : new File("src/test/resources").listFiles()) {
+      if (!file.getName().endsWith(".xml")) {
+        continue;
+      }
+
+      String code = file.getName().startsWith("simplewiki") ? "en" : file.getName().substring(0, 2);
+      Language lang = Languages.language(code).orElse(null);
+      WikiClean.Builder builder = new WikiClean.Builder().withTitle(true);
+      if (lang != null) {
+        builder.withLanguage(lang);
+      }
+      WikiClean cleaner = builder.build();
+
+      String raw = FileUtils.readFileToString(file, "UTF-8");
+      Page page = Page.parse(raw);
+      assertEquals(file.getName(), cleaner.getTitle(raw), page.getTitle());
+      assertEquals(file.getName(), cleaner.getId(raw), String.valueOf(page.getId()));
+      assertEquals(file.getName(), cleaner.getWikiMarkup(raw), page.getWikiMarkup());
+      assertEquals(file.getName(), cleaner.clean(raw), cleaner.clean(page));
+    }
+  }
+}
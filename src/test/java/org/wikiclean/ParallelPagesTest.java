@@ -0,0 +1,241 @@
+/**
+ * WikiClean: A Java Wikipedia markup to plain text converter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wikiclean;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ParallelPagesTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static List<Page> pages(int n) {
+    List<Page> pages = new ArrayList<>();
+    for (int id = 1; id <= n; id++) {
+      pages.add(Page.parse(WikipediaArticlesDumpTest.page(id)));
+    }
+    return pages;
+  }
+
+  // Takes longer for some pages than for others, so that results are ready out of order.
+  private static long work(Page page) {
+    if (page.getId() % 7 == 0) {
+      try {
+        Thread.sleep(5);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    return page.getId();
+  }
+
+  @Test
+  public void testOrdered() throws IOException {
+    List<Long> written = new ArrayList<>();
+    new ParallelPages<Long>(4, true).run(pages(500).iterator(), () -> null,
+        ParallelPagesTest::work, (pageId, id, mark) -> written.add(id));
+
+    assertEquals(500, written.size());
+    for (int i = 0; i < written.size(); i++) {
+      assertEquals(i + 1, (long) written.get(i));
+    }
+  }
+
+  @Test
+  public void testUnordered() throws IOException {
+    List<Long> written = new ArrayList<>();
+    new ParallelPages<Long>(4, false).run(pages(500).iterator(), () -> null,
+        ParallelPagesTest::work, (pageId, id, mark) -> written.add(id));
+
+    Collections.sort(written);
+    assertEquals(500, written.size());
+    for (int i = 0; i < written.size(); i++) {
+      assertEquals(i + 1, (long) written.get(i));
+    }
+  }
+
+  @Test
+  public void testBoundedWindow() throws IOException {
+    // The first page takes long, and holds up the others.
+    AtomicInteger read = new AtomicInteger();
+    AtomicInteger written = new AtomicInteger();
+    AtomicInteger maxInFlight = new AtomicInteger();
+    new ParallelPages<Long>(4, true, 8, Long.MAX_VALUE).run(pages(200).iterator(), () -> {
+      maxInFlight.accumulateAndGet(read.incrementAndGet() - written.get(), Math::max);
+      return null;
+    }, page -> {
+      if (page.getId() == 1) {
+        try {
+          Thread.sleep(200);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      return page.getId();
+    }, (pageId, id, mark) -> written.incrementAndGet());
+
+    assertEquals(200, written.get());
+    // A page is read before it waits for room in the window.
+    assertTrue("In flight: " + maxInFlight.get(), maxInFlight.get() <= 9);
+
+    // Pages longer than the window are let in one at a time.
+    AtomicInteger chars = new AtomicInteger();
+    new ParallelPages<Long>(2, false, 100, 1).run(pages(50).iterator(), () -> null, page -> {
+      assertEquals(1, chars.incrementAndGet());
+      work(page);
+      chars.decrementAndGet();
+      return page.getId();
+    }, (pageId, id, mark) -> {});
+  }
+
+  @Test
+  public void testFailures() throws IOException {
+    try {
+      new ParallelPages<Long>(4, true).run(pages(500).iterator(), () -> null, page -> {
+        if (page.getId() == 100) {
+          throw new IllegalStateException("Page 100");
+        }
+        return page.getId();
+      }, (pageId, id, mark) -> {});
+      fail();
+    } catch (IllegalStateException e) {
+      assertEquals("Page 100", e.getMessage());
+    }
+
+    try {
+      new ParallelPages<Long>(4, false).run(pages(500).iterator(), () -> null,
+          ParallelPagesTest::work, (pageId, id, mark) -> {
+            throw new IOException("Disk full");
+          });
+      fail();
+    } catch (IOException e) {
+      assertEquals("Disk full", e.getMessage());
+    }
+  }
+
+  @Test(timeout = 20000)
+  public void testReadFailure() {
+    // Reading fails while some pages are still waiting for a worker, at varying points so that
+    // the writer is sometimes already waiting for one of them.
+    List<Page> pages = pages(200);
+    for (int run = 0; run < 400; run++) {
+      int failAt = run % 200;
+      Iterator<Page> failing = new Iterator<Page>() {
+        private int read = 0;
+
+        @Override
+        public boolean hasNext() {
+          return true;
+        }
+
+        @Override
+        public Page next() {
+          if (read == failAt) {
+            throw new UncheckedIOException(new IOException("Truncated dump"));
+          }
+          return pages.get(read++);
+        }
+      };
+      try {
+        new ParallelPages<Long>(4, run % 2 == 0).run(failing, () -> null, Page::getId,
+            (pageId, id, mark) -> {});
+        fail();
+      } catch (IOException e) {
+        assertEquals("Truncated dump", e.getMessage());
+      }
+    }
+  }
+
+  @Test
+  public void testResume() throws IOException {
+    int pages = 2 * CheckpointedOutput.CHECKPOINT_INTERVAL + 100;
+    File dump = folder.newFile("dump.xml");
+    try (OutputStream out = new FileOutputStream(dump)) {
+      out.write("<mediawiki>\n".getBytes(StandardCharsets.UTF_8));
+      for (int id = 1; id <= pages; id++) {
+        out.write(WikipediaArticlesDumpTest.page(id).getBytes(StandardCharsets.UTF_8));
+      }
+      out.write("</mediawiki>\n".getBytes(StandardCharsets.UTF_8));
+    }
+    File output = new File(folder.getRoot(), "output.txt");
+    File checkpoint = new File(folder.getRoot(), "output.txt.checkpoint");
+
+    // Crash after writing some output past the second checkpoint, with many pages read ahead.
+    try (WikipediaArticlesDump wikipedia = new WikipediaArticlesDump(dump)) {
+      CheckpointedOutput out = new CheckpointedOutput(wikipedia, output, checkpoint, false);
+      PrintWriter writer = out.writer();
+      new ParallelPages<Long>(4, true).run(wikipedia.pages().iterator(), out::mark,
+          Page::getId, (pageId, id, mark) -> {
+            if (id > 2 * CheckpointedOutput.CHECKPOINT_INTERVAL + 10) {
+              throw new IOException("Crash");
+            }
+            writer.println(id);
+            out.commit(mark);
+          });
+      fail();
+    } catch (IOException e) {
+      assertEquals("Crash", e.getMessage());
+    }
+    assertTrue(checkpoint.exists());
+    assertEquals(2 * CheckpointedOutput.CHECKPOINT_INTERVAL,
+        DumpCheckpoint.read(checkpoint).getPages());
+
+    try (WikipediaArticlesDump wikipedia = new WikipediaArticlesDump(dump)) {
+      CheckpointedOutput out = new CheckpointedOutput(wikipedia, output, checkpoint, true);
+      PrintWriter writer = out.writer();
+      new ParallelPages<Long>(4, true).run(wikipedia.pages().iterator(), out::mark,
+          Page::getId, (pageId, id, mark) -> {
+            writer.println(id);
+            out.commit(mark);
+          });
+      out.close();
+    }
+    assertFalse(checkpoint.exists());
+
+    StringBuilder expected = new StringBuilder();
+    for (int id = 1; id <= pages; id++) {
+      expected.append(id).append(System.lineSeparator());
+    }
+    assertEquals(expected.toString(),
+        new String(Files.readAllBytes(output.toPath()), StandardCharsets.UTF_8));
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(ParallelPagesTest.class);
+  }
+}
@@ -0,0 +1,207 @@
+/**
+ * WikiClean: A Java Wikipedia markup to plain text converter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wikiclean;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ShardedOutputTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static String read(File part) throws IOException {
+    try (InputStream in = part.getName().endsWith(".gz") ?
+        new GZIPInputStream(new FileInputStream(part)) : new FileInputStream(part)) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      for (int n; (n = in.read(buffer)) > 0; ) {
+        bytes.write(buffer, 0, n);
+      }
+      return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+  }
+
+  private static File[] parts(File dir) {
+    File[] parts = dir.listFiles((d, name) -> name.startsWith("part-"));
+    Arrays.sort(parts);
+    return parts;
+  }
+
+  // Lines of all parts, sorted numerically.
+  private static long[] lines(File dir) throws IOException {
+    StringBuilder all = new StringBuilder();
+    for (File part : parts(dir)) {
+      all.append(read(part));
+    }
+    return all.length() == 0 ? new long[0] :
+        Arrays.stream(all.toString().split("\n")).mapToLong(Long::parseLong).sorted().toArray();
+  }
+
+  private static long[] range(int n) {
+    long[] ids = new long[n];
+    for (int i = 0; i < n; i++) {
+      ids[i] = i + 1;
+    }
+    return ids;
+  }
+
+  @Test
+  public void testHashSharding() throws IOException {
+    File dir = new File(folder.getRoot(), "parts");
+    ShardedOutput output = new ShardedOutput(dir, 4, 0, true, 2);
+    output.open(null);
+    // Enough output for several blocks per part.
+    int n = 1000000;
+    for (long id = 1; id <= n; id++) {
+      output.writer(id).print(id + "\n");
+      output.commit();
+    }
+    output.close();
+
+    File[] parts = parts(dir);
+    assertEquals(4, parts.length);
+    for (File part : parts) {
+      assertTrue(part.getName().matches("part-0000[0-3]\\.gz"));
+      // Each part gets a fair share of the articles.
+      int lines = read(part).split("\n").length;
+      assertTrue(lines > n / 8 && lines < n / 2);
+    }
+    assertTrue(Arrays.equals(range(n), lines(dir)));
+  }
+
+  @Test
+  public void testRollover() throws IOException {
+    File dir = new File(folder.getRoot(), "parts");
+    ShardedOutput output = new ShardedOutput(dir, 0, 1 << 20, false, 1);
+    output.open(null);
+    int n = 1000000;
+    for (long id = 1; id <= n; id++) {
+      output.writer(id).print(id + "\n");
+      output.commit();
+    }
+    output.close();
+
+    File[] parts = parts(dir);
+    assertTrue(parts.length > 2);
+    for (int i = 0; i < parts.length; i++) {
+      assertEquals(String.format("part-%05d", i), parts[i].getName());
+    }
+    // Parts are filled in order.
+    StringBuilder all = new StringBuilder();
+    for (File part : parts) {
+      all.append(read(part));
+    }
+    StringBuilder expected = new StringBuilder();
+    for (long id = 1; id <= n; id++) {
+      expected.append(id).append('\n');
+    }
+    assertEquals(expected.toString(), all.toString());
+  }
+
+  @Test
+  public void testEmptyParts() throws IOException {
+    File dir = new File(folder.getRoot(), "parts");
+    ShardedOutput output = new ShardedOutput(dir, 3, 0, true, 1);
+    output.open(null);
+    output.writer(1).print("1\n");
+    output.commit();
+    output.close();
+
+    File[] parts = parts(dir);
+    assertEquals(3, parts.length);
+    for (File part : parts) {
+      // Parts without any articles are still valid gzip files.
+      read(part);
+    }
+    assertTrue(Arrays.equals(new long[] {1}, lines(dir)));
+
+    // Part files of an earlier run are replaced.
+    output = new ShardedOutput(dir, 2, 0, true, 1);
+    output.open(null);
+    output.close();
+    assertEquals(2, parts(dir).length);
+    assertEquals(0, lines(dir).length);
+  }
+
+  private void testResume(int shards, long partSize) throws IOException {
+    int pages = 2 * CheckpointedOutput.CHECKPOINT_INTERVAL + 100;
+    File dump = folder.newFile("dump.xml");
+    try (OutputStream out = new FileOutputStream(dump)) {
+      out.write("<mediawiki>\n".getBytes(StandardCharsets.UTF_8));
+      for (int id = 1; id <= pages; id++) {
+        out.write(WikipediaArticlesDumpTest.page(id).getBytes(StandardCharsets.UTF_8));
+      }
+      out.write("</mediawiki>\n".getBytes(StandardCharsets.UTF_8));
+    }
+    File dir = new File(folder.getRoot(), "parts");
+    File checkpoint = new File(folder.getRoot(), "parts.checkpoint");
+
+    // Crash after writing some output past the second checkpoint.
+    try (WikipediaArticlesDump wikipedia = new WikipediaArticlesDump(dump)) {
+      ShardedOutput parts = new ShardedOutput(dir, shards, partSize, true, 1);
+      CheckpointedOutput out = new CheckpointedOutput(wikipedia, parts, checkpoint, false);
+      Iterator<Page> iterator = wikipedia.pages().iterator();
+      for (int i = 0; i < 2 * CheckpointedOutput.CHECKPOINT_INTERVAL + 10; i++) {
+        Page page = iterator.next();
+        out.writer(page.getId()).print(page.getId() + "\n");
+        out.commit();
+      }
+      // Output after the checkpoint reaches the disk, without closing.
+      parts.sync();
+    }
+    assertTrue(checkpoint.exists());
+
+    try (WikipediaArticlesDump wikipedia = new WikipediaArticlesDump(dump)) {
+      CheckpointedOutput out = new CheckpointedOutput(wikipedia,
+          new ShardedOutput(dir, shards, partSize, true, 1), checkpoint, true);
+      wikipedia.pages().forEach(page -> {
+        out.writer(page.getId()).print(page.getId() + "\n");
+        out.commit();
+      });
+      out.close();
+    }
+    assertFalse(checkpoint.exists());
+    assertTrue(Arrays.equals(range(pages), lines(dir)));
+  }
+
+  @Test
+  public void testResumeHashSharding() throws IOException {
+    testResume(3, 0);
+  }
+
+  @Test
+  public void testResumeRollover() throws IOException {
+    testResume(0, 4096);
+  }
+}
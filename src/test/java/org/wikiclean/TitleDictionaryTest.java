@@ -0,0 +1,118 @@
+/**
+ * WikiClean: A Java Wikipedia markup to plain text converter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wikiclean;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TitleDictionaryTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testLookup() {
+    TitleDictionary titles = new TitleDictionary.Builder()
+        .add("Anarchism", 12).add("Autism", 25).add("Albedo", 39).add("A", 290)
+        .add("Anarchism in Spain", 1000).add("Ängelholm", 7).add("東京", 8).add("", 9)
+        .add("Autism", 26).build();
+
+    assertEquals(8, titles.size());
+    assertEquals(12, titles.get("Anarchism"));
+    assertEquals(1000, titles.get("Anarchism in Spain"));
+    assertEquals(290, titles.get("A"));
+    assertEquals(7, titles.get("Ängelholm"));
+    assertEquals(8, titles.get("東京"));
+    assertEquals(9, titles.get(""));
+    // The last id of a title is kept.
+    assertEquals(26, titles.get("Autism"));
+
+    assertEquals(-1, titles.get("Anarchis"));
+    assertEquals(-1, titles.get("Anarchism in"));
+    assertEquals(-1, titles.get("anarchism"));
+    assertEquals(-1, titles.get("0"));
+    assertEquals(-1, titles.get("Zebra"));
+    assertEquals(-1, titles.get("東京都庁舎の長いタイトルの記事"));
+
+    assertEquals(-1, new TitleDictionary.Builder().build().get("A"));
+  }
+
+  @Test
+  public void testManyTitles() throws IOException {
+    // Titles that share long prefixes, in many buckets, with ids that are not in title order.
+    List<String> list = new ArrayList<>();
+    for (int i = 0; i < 10000; i++) {
+      list.add("List of " + (i % 7 == 0 ? "films" : "songs") + " " + i);
+    }
+    Collections.shuffle(list, new Random(42));
+    TitleDictionary.Builder builder = new TitleDictionary.Builder();
+    for (int i = 0; i < list.size(); i++) {
+      builder.add(list.get(i), i);
+    }
+
+    File file = folder.newFile("titles.dict");
+    builder.write(file);
+    assertTrue(TitleDictionary.isDictionary(file));
+    TitleDictionary titles = TitleDictionary.open(file);
+    assertEquals(list.size(), titles.size());
+    for (int i = 0; i < list.size(); i++) {
+      assertEquals(i, titles.get(list.get(i)));
+      assertEquals(-1, titles.get(list.get(i) + " "));
+      assertEquals(-1, titles.get(list.get(i).substring(0, list.get(i).length() - 1) + "x"));
+    }
+    // Front coding keeps the file smaller than the titles alone.
+    long bytes = list.stream().mapToLong(s -> s.length()).sum();
+    assertTrue(file.length() < bytes);
+  }
+
+  @Test
+  public void testLoad() throws IOException {
+    File text = folder.newFile("titles.txt");
+    Files.write(text.toPath(), Arrays.asList("12\tAnarchism", "25\tAutism", "7\tÄngelholm"),
+        StandardCharsets.UTF_8);
+    assertFalse(TitleDictionary.isDictionary(text));
+
+    TitleDictionary titles = TitleDictionary.load(text);
+    assertEquals(3, titles.size());
+    assertEquals(7, titles.get("Ängelholm"));
+
+    File file = folder.newFile("titles.dict");
+    new TitleDictionary.Builder().addAll(text).write(file);
+    titles = TitleDictionary.load(file);
+    assertEquals(25, titles.get("Autism"));
+    assertEquals(-1, titles.get("Albedo"));
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(TitleDictionaryTest.class);
+  }
+}
@@ -19,12 +19,21 @@ package org.wikiclean;
 import junit.framework.JUnit4TestAdapter;
 import org.apache.commons.io.FileUtils;
 import org.junit.Test;
+import org.wikiclean.languages.English;
+import org.wikiclean.languages.German;
 
 import java.io.File;
+import java.io.StringWriter;
 import java.lang.reflect.Method;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 public class WikiCleanBasicTest {
@@ -157,6 +166,53 @@ public class WikiCleanBasicTest {
     } catch (Exception e) {}
   }
 
+  @Test
+  public void testNestedRemovalScalesLinearly() throws Exception {
+    Method[] removers = new Method[3];
+    String[] names = { "ImageCaptionsRemover", "DoubleBracesRemover", "TableRemover" };
+    for (int i = 0; i < names.length; i++) {
+      removers[i] = Class.forName("org.wikiclean.WikiClean$" + names[i])
+          .getDeclaredMethod("remove", String.class);
+      removers[i].setAccessible(true);
+    }
+
+    // A page with many templates, captions, and tables, as in infobox- and table-heavy articles.
+    String unit = "{{Infobox|a={{b|c}}}}x[[File:a.jpg|[[link]] caption]]y{|\n| cell {|\n|}\n|}z";
+    StringBuilder small = new StringBuilder();
+    for (int i = 0; i < 20000; i++) {
+      small.append(unit);
+    }
+    StringBuilder large = new StringBuilder();
+    for (int i = 0; i < 8; i++) {
+      large.append(small);
+    }
+
+    String expected = new String(new char[20000 * 8]).replace("\0", "xyz");
+    assertEquals(expected, removeAll(removers, large.toString()));
+
+    // Eight times the constructs should take about eight times as long, not 64 times.
+    long smallTime = Long.MAX_VALUE;
+    long largeTime = Long.MAX_VALUE;
+    for (int i = 0; i < 5; i++) {
+      long start = System.nanoTime();
+      removeAll(removers, small.toString());
+      smallTime = Math.min(smallTime, System.nanoTime() - start);
+
+      start = System.nanoTime();
+      removeAll(removers, large.toString());
+      largeTime = Math.min(largeTime, System.nanoTime() - start);
+    }
+    assertTrue("Small: " + smallTime + "ns, large: " + largeTime + "ns",
+        largeTime < 32 * smallTime);
+  }
+
+  private static String removeAll(Method[] removers, String s) throws Exception {
+    for (Method remover : removers) {
+      s = (String) remover.invoke(null, s);
+    }
+    return s;
+  }
+
   @Test
   public void testBuilderOptions() throws Exception {
     String raw = FileUtils.readFileToString(new File("src/test/resources/enwiki-20120104-id12.xml"), "UTF-8");
@@ -232,6 +288,182 @@ public class WikiCleanBasicTest {
     assertEquals(false, cleaner.withTitle());
   }
 
+  @Test
+  public void testCleanIntoBuffer() throws Exception {
+    String raw = FileUtils.readFileToString(new File("src/test/resources/enwiki-20120104-id12.xml"), "UTF-8");
+    for (WikiClean.Engine engine : WikiClean.Engine.values()) {
+      WikiClean cleaner = new WikiClean.Builder().withTitle(true).withEngine(engine).build();
+      String expected = cleaner.clean(raw);
+      assertTrue(expected.startsWith("Anarchism\n\nAnarchism is generally"));
+
+      // Output is appended, and buffers are reused from one article to the next.
+      StringBuilder out = new StringBuilder("prefix");
+      cleaner.clean(raw, out);
+      cleaner.clean(new StringBuilder(raw), out);
+      assertEquals("prefix" + expected + expected, out.toString());
+
+      StringWriter writer = new StringWriter();
+      cleaner.clean(CharBuffer.wrap(raw), writer);
+      assertEquals(expected, writer.toString());
+    }
+  }
+
+  @Test
+  public void testMarkupJoinedByEarlierSteps() throws Exception {
+    WikiClean cleaner = new WikiClean.Builder().build();
+
+    // Each construct only appears once the reference (or the escaped tag) in it is removed.
+    assertEquals("a 5 km b", cleaner.clean(
+        "<text xml:space=\"preserve\">a {&lt;ref&gt;x&lt;/ref&gt;{convert|5|km}} b</text>"));
+    assertEquals("a bold b", cleaner.clean(
+        "<text xml:space=\"preserve\">a '&lt;ref&gt;x&lt;/ref&gt;'bold'' b</text>"));
+    assertEquals("a link b", cleaner.clean(
+        "<text xml:space=\"preserve\">a [&lt;ref&gt;x&lt;/ref&gt;[link]] b</text>"));
+    assertEquals("a c", cleaner.clean("<text xml:space=\"preserve\">a &amp;lt;b&amp;gt;c</text>"));
+  }
+
+  @Test
+  public void testStages() throws Exception {
+    String raw = FileUtils.readFileToString(new File("src/test/resources/enwiki-20120104-id12.xml"), "UTF-8");
+    String expected = new WikiClean.Builder().build().clean(raw);
+
+    WikiClean cleaner = new WikiClean.Builder().withStages(WikiClean.Stage.values()).build();
+    assertEquals(Arrays.asList(WikiClean.Stage.values()), cleaner.getStages());
+    assertEquals(expected, cleaner.clean(raw));
+
+    // Dropping the links stage is the same as keeping links.
+    cleaner = new WikiClean.Builder().withoutStages(WikiClean.Stage.LINKS).build();
+    assertTrue(cleaner.keepLinks());
+    assertEquals(new WikiClean.Builder().keepLinks().build().clean(raw), cleaner.clean(raw));
+
+    String markup = "<text xml:space=\"preserve\">a {|\n| cell\n|} ''b'' [[c|d]]</text>";
+    assertEquals("a  b d", new WikiClean.Builder().build().clean(markup));
+    assertEquals("a {|\n| cell\n|} b d",
+        new WikiClean.Builder().withoutStages(WikiClean.Stage.TABLES).build().clean(markup));
+    assertEquals("a {|\n| cell\n|} ''b'' d",
+        new WikiClean.Builder().withStages(WikiClean.Stage.LINKS).build().clean(markup));
+
+    // Added stages, which the lexer cannot run.
+    CleaningStage parentheses = (text, out, lang) -> {
+      out.append(text.toString().replace("[[", "(").replace("]]", ")"));
+      return true;
+    };
+    for (WikiClean.Engine engine : WikiClean.Engine.values()) {
+      assertEquals("a  b d", new WikiClean.Builder().withEngine(engine).addStage(parentheses)
+          .build().clean(markup));
+      assertEquals("a  b (c|d)", new WikiClean.Builder().withEngine(engine)
+          .addStageBefore(WikiClean.Stage.LINKS, parentheses).build().clean(markup));
+    }
+
+    // Built-in stages can also be run on their own.
+    StringBuilder out = new StringBuilder();
+    assertTrue(WikiClean.Stage.EMPHASIS.clean("''b''", out, new English()));
+    assertEquals("b", out.toString());
+    assertFalse(WikiClean.Stage.EMPHASIS.clean("b", out, new English()));
+    assertEquals("b", out.toString());
+  }
+
+  @Test
+  public void testStats() throws Exception {
+    String raw = FileUtils.readFileToString(new File("src/test/resources/enwiki-20120104-id12.xml"), "UTF-8");
+    assertNull(new WikiClean.Builder().build().getStats());
+
+    for (WikiClean.Engine engine : WikiClean.Engine.values()) {
+      WikiClean cleaner = new WikiClean.Builder().withEngine(engine).withStats(true).build();
+      String expected = new WikiClean.Builder().withEngine(engine).build().clean(raw);
+      assertEquals(0, cleaner.getStats().getArticles());
+      for (int i = 0; i < 3; i++) {
+        assertEquals(expected, cleaner.clean(raw));
+      }
+
+      CleanerStats stats = cleaner.getStats();
+      assertEquals(3, stats.getArticles());
+      assertEquals(3 * expected.length(), stats.getArticle().getCharsOut());
+      assertEquals("FOOTER", stats.getStages().get(0).getName());
+      assertEquals(engine == WikiClean.Engine.LEXER ? "LEXER" : "REFS",
+          stats.getStages().get(1).getName());
+
+      long nanos = 0;
+      for (CleanerStats.Stage stage : stats.getStages()) {
+        assertEquals(3, stage.getCalls());
+        assertTrue(stage.getPercentileNanos(50) <= stage.getPercentileNanos(99));
+        assertTrue(stage.getPercentileNanos(100) * 3 >= stage.getNanos());
+        nanos += stage.getNanos();
+      }
+      assertTrue(nanos <= stats.getArticle().getNanos());
+      assertEquals(Math.min(3, stats.getStages().size()), stats.getSlowestStages(3).size());
+      assertTrue(stats.getSlowestStages(3).get(0).getNanos() >= stats.getSlowestStages(3).get(1).getNanos());
+    }
+
+    for (int bucket = 0; bucket < 248; bucket++) {
+      assertEquals(bucket, StatsRecorder.bucket(StatsRecorder.upperBound(bucket)));
+      assertEquals(bucket, StatsRecorder.bucket(StatsRecorder.upperBound(bucket - 1) + 1));
+    }
+  }
+
+  @Test
+  public void testIsRedirect() {
+    WikiClean cleaner = new WikiClean.Builder().build();
+    assertTrue(cleaner.isRedirect(Page.parse("<page><title>T</title><redirect title=\"U\" />"
+        + "<revision><text xml:space=\"preserve\">Not a redirect</text></revision></page>")));
+    assertTrue(cleaner.isRedirect(Page.parse("<page><title>T</title><revision>"
+        + "<text xml:space=\"preserve\">#REDIRECT [[U]]</text></revision></page>")));
+    assertFalse(cleaner.isRedirect(Page.parse("<page><title>T</title><revision>"
+        + "<text xml:space=\"preserve\">#WEITERLEITUNG [[U]]</text></revision></page>")));
+    assertTrue(new WikiClean.Builder().withLanguage(new German()).build()
+        .isRedirect(Page.parse("<page><title>T</title><revision>"
+        + "<text xml:space=\"preserve\">#WEITERLEITUNG [[U]]</text></revision></page>")));
+  }
+
+  @Test
+  public void testBudget() throws Exception {
+    String raw = FileUtils.readFileToString(new File("src/test/resources/enwiki-20120104-id12.xml"), "UTF-8");
+    List<String> exceeded = new ArrayList<>();
+    for (WikiClean.Engine engine : WikiClean.Engine.values()) {
+      String expected = new WikiClean.Builder().withEngine(engine).build().clean(raw);
+      WikiClean cleaner = new WikiClean.Builder().withEngine(engine).withStepBudget(100)
+          .withTimeBudget(1, TimeUnit.MINUTES).withBudgetExceededHandler(exceeded::add).build();
+      assertEquals(expected, cleaner.clean(raw));
+      assertTrue(exceeded.isEmpty());
+
+      // The linear versions of the stages clean this article exactly like the others.
+      cleaner = new WikiClean.Builder().withEngine(engine).withStepBudget(1)
+          .withBudgetExceededHandler(exceeded::add).build();
+      assertEquals(expected, cleaner.clean(raw));
+      assertEquals(Arrays.asList("12"), exceeded);
+      exceeded.clear();
+    }
+
+    // Openings that are never closed, which the regular expressions look for the end of from each
+    // one, i.e., in quadratic time or worse.
+    String[] units = { "&lt;ref x ", "&lt;!-- ", "[[a|b ", "<a ", "[[en:x[", "{{convert|1|km ",
+        "&lt;math&gt; " };
+    WikiClean cleaner = new WikiClean.Builder().withStepBudget(100)
+        .withBudgetExceededHandler(exceeded::add).build();
+    for (String unit : units) {
+      StringBuilder page = new StringBuilder("<page><title>T</title><id>42</id><revision>");
+      page.append("<text xml:space=\"preserve\">");
+      for (int i = 0; i < 20000; i++) {
+        page.append(unit);
+      }
+      page.append("</text></revision></page>");
+      cleaner.clean(page.toString());
+      assertEquals(unit, Arrays.asList("42"), exceeded);
+      exceeded.clear();
+    }
+
+    // Other stages are run on articles over budget as well.
+    CleaningStage upperCase = (text, out, lang) -> {
+      out.append(text.toString().toUpperCase());
+      return true;
+    };
+    String expected = new WikiClean.Builder().build().clean(raw).toUpperCase();
+    cleaner = new WikiClean.Builder().withStepBudget(1).addStage(upperCase)
+        .withBudgetExceededHandler(exceeded::add).build();
+    assertEquals(expected, cleaner.clean(raw));
+    assertEquals(Arrays.asList("12"), exceeded);
+  }
+
   public static junit.framework.Test suite() {
     return new JUnit4TestAdapter(WikiCleanBasicTest.class);
   }
@@ -0,0 +1,155 @@
+/**
+ * WikiClean: A Java Wikipedia markup to plain text converter
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wikiclean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import org.wikiclean.languages.*;
+
+public class WikiCleanLexerTest {
+
+  private static final Language[] LANGUAGES = { new Breton(), new Catalan(), new Chinese(),
+      new Dutch(), new English(), new Esperanto(), new French(), new Galician(), new German(),
+      new Greek(), new Italian(), new Kannada(), new Polish(), new Portuguese(), new Russian(),
+      new Spanish(), new Ukrainian() };
+
+  // Pieces of markup that random pages are made of, which removing some can join into others.
+  private static final String[] FRAGMENTS = { "{", "|", "}", "{{", "}}", "{|", "|}", "[", "]",
+      "[[", "]]", "'", "''", "'''", "''''", "=", "==", "(", ")", " ", "\n", "\n:", ":", "_", "-",
+      ";", "&", "x", "abc", "IPA", "[[Category:", "[[Image:", "[[File:", "[[Datei:", "[[fr:Bar]]",
+      "Cat", "egory:", "{{IPA|x}}", "{{IPA|y}}", " ({{IPA|x}})", "{{convert|5|km}}",
+      "{{convert|5|m|x}}", "<!--", "-->", "&lt;!--", "--&gt;", "&#60;!--", "--&#62;", "&lt;",
+      "&gt;", "&gt", "lt;", "&amp;", "&lt;br/&gt;", "&lt;ref&gt;", "&lt;/ref&gt;",
+      "&lt;ref name=a/&gt;", "&lt;math&gt;", "&lt;/math&gt;", "&lt;ma", "th&gt;", "&lt;/ma",
+      "&lt;gallery&gt;", "&lt;/gallery&gt;", "__NOTOC__", "__NO", "TOC__" };
+
+  private static Language language(File file) {
+    String name = file.getName();
+    String code = name.startsWith("simple") ? "en" : name.substring(0, 2);
+    for (Language lang : LANGUAGES) {
+      if (lang.getCode().equals(code)) {
+        return lang;
+      }
+    }
+    throw new IllegalArgumentException("No language for " + name);
+  }
+
+  @Test
+  public void testSameOutputAsRegex() throws Exception {
+    for (File file : new File("src/test/resources").listFiles((dir, name) -> name.endsWith(".xml"))) {
+      String raw = FileUtils.readFileToString(file, "UTF-8");
+      for (int config = 0; config < 4; config++) {
+        boolean footer = (config & 1) != 0;
+        boolean keepLinks = (config & 2) != 0;
+        WikiClean.Builder builder = new WikiClean.Builder()
+            .withLanguage(language(file)).withTitle(true).withFooter(footer);
+        if (keepLinks) {
+          builder.keepLinks();
+        }
+
+        String expected = builder.withEngine(WikiClean.Engine.REGEX).build().clean(raw);
+        String actual = builder.withEngine(WikiClean.Engine.LEXER).build().clean(raw);
+        assertEquals(file.getName() + " footer=" + footer + " keepLinks=" + keepLinks,
+            expected, actual);
+      }
+    }
+  }
+
+  @Test
+  public void testSameOutputAsRegexOnJoinedMarkup() {
+    // Removing text joins what is around it, which the regular expressions that come later match.
+    String[] pages = { "{''|", "{[[|", "{]]|}", "[[[Image:[[a|b]]",
+        "&[[fr:Bar]] ({{IPA|x}}){{IPA|x}}abc", "[[Category:==]]==References==", "[''[[A|x]]",
+        "&lt;gallery&gt;[[{|)&lt;/gallery&gt;]]", "__NO&lt;gallery&gt;&lt;/gallery&gt;TOC__",
+        "{|[[\n|&lt;math&gt;]]|}}&lt;/math&gt;", "[[apostrophe|']]", " &lt;br/&gt;(2010)",
+        "[[a|=]] x=", "[[Equals sign|=]]" };
+    for (String markup : pages) {
+      assertSameOutput(markup);
+    }
+  }
+
+  @Test
+  public void testSameOutputAsRegexOnRandomMarkup() {
+    Random random = new Random(42);
+    for (int i = 0; i < 10000; i++) {
+      StringBuilder markup = new StringBuilder();
+      for (int k = random.nextInt(24); k >= 0; k--) {
+        markup.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+      }
+      assertSameOutput(markup.toString());
+    }
+  }
+
+  private static final WikiClean REGEX =
+      new WikiClean.Builder().withEngine(WikiClean.Engine.REGEX).build();
+  private static final WikiClean LEXER =
+      new WikiClean.Builder().withEngine(WikiClean.Engine.LEXER).build();
+  private static final WikiClean REGEX_LINKS =
+      new WikiClean.Builder().keepLinks().withEngine(WikiClean.Engine.REGEX).build();
+  private static final WikiClean LEXER_LINKS =
+      new WikiClean.Builder().keepLinks().withEngine(WikiClean.Engine.LEXER).build();
+
+  private static void assertSameOutput(String markup) {
+    String page = "<page><title>Title</title><id>1</id><revision><text xml:space=\"preserve\">"
+        + markup + "</text></revision></page>";
+    assertEquals(markup, REGEX.clean(page), LEXER.clean(page));
+    assertEquals(markup + " keepLinks=true", REGEX_LINKS.clean(page), LEXER_LINKS.clean(page));
+  }
+
+  @Test
+  public void testNoFallback() throws Exception {
+    // These articles are cleaned by the lexer without falling back to the regular expressions.
+    String[] files = { "enwiki-20120104-id12.xml", "enwiki-20120104-id39.xml",
+        "dewiki-20130602-id1.xml", "dewiki-20130602-id81.xml", "zhwiki-20150423-id13.xml" };
+    for (String name : files) {
+      File file = new File("src/test/resources/" + name);
+      Language lang = language(file);
+      WikiClean cleaner = new WikiClean.Builder().withLanguage(lang).build();
+      String markup = lang.removeFooter(cleaner.getWikiMarkup(
+          FileUtils.readFileToString(file, "UTF-8")));
+      assertNotNull(name, new MarkupLexer(lang, false).clean(markup));
+    }
+  }
+
+  @Test
+  public void testMarkup() {
+    MarkupLexer lexer = new MarkupLexer(new English(), false);
+    assertEquals("Title \n\nSome bold and italic text.",
+        lexer.clean("== Title ==\nSome '''bold''' and ''italic'' text.{{cite|x}}"));
+    assertEquals("A link and a label.",
+        lexer.clean("A [[link]] and a [[Target|label]].[[Category:Test]]"));
+    assertEquals("Before", lexer.clean("Before<!-- comment -->{{unterminated"));
+    assertEquals("x < y & z", lexer.clean("x &amp;lt; y &amp; z"));
+    assertEquals("5 km", lexer.clean("{{convert|5|km}}"));
+
+    // Markup that the lexer does not support falls back to the regular expressions.
+    assertNull(lexer.clean("A\uE000B"));
+  }
+
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(WikiCleanLexerTest.class);
+  }
+}
@@ -16,18 +16,40 @@
 
 package org.wikiclean;
 
+import org.apache.tools.bzip2.CBZip2OutputStream;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZOutputStream;
+import org.wikiclean.codecs.InputCodecs;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class WikipediaArticlesDumpTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
   @Test(expected = NoSuchElementException.class)
   public void testReadArticles1() throws IOException {
     WikipediaArticlesDump wikipedia =
@@ -81,4 +103,396 @@ public class WikipediaArticlesDumpTest {
     // Should get a NoSuchElementException.
     iter.next();
   }
+
+  @Test
+  public void testReadMultistream() throws IOException {
+    File dump = folder.newFile("multistream.xml.bz2");
+    File index = folder.newFile("multistream-index.txt.bz2");
+    writeMultistreamDump(dump, index, 250, 100);
+
+    WikiClean cleaner = new WikiClean.Builder().build();
+
+    for (int threads : new int[] {1, 2, 4}) {
+      List<String> articles = new WikipediaArticlesDump(dump, index, threads).stream()
+          .collect(Collectors.toList());
+      assertEquals(250, articles.size());
+      for (int i = 0; i < articles.size(); i++) {
+        assertEquals("Article" + (i + 1), cleaner.getTitle(articles.get(i)));
+        assertEquals(String.valueOf(i + 1), cleaner.getId(articles.get(i)));
+        assertEquals("Text of article " + (i + 1) + ".", cleaner.clean(articles.get(i)));
+      }
+    }
+  }
+
+  @Test
+  public void testRandomAccess() throws IOException {
+    File dump = folder.newFile("multistream.xml.bz2");
+    File index = folder.newFile("multistream-index.txt.bz2");
+    writeMultistreamDump(dump, index, 250, 100);
+
+    WikiClean cleaner = new WikiClean.Builder().build();
+
+    try (WikipediaArticlesDump wikipedia = new WikipediaArticlesDump(dump, index, 2)) {
+      for (int id : new int[] {1, 100, 101, 173, 250}) {
+        Optional<String> article = wikipedia.get(id);
+        assertTrue(article.isPresent());
+        assertEquals(page(id), article.get());
+        assertEquals(String.valueOf(id), cleaner.getId(article.get()));
+
+        article = wikipedia.getByTitle("Article" + id);
+        assertTrue(article.isPresent());
+        assertEquals(page(id), article.get());
+      }
+
+      assertFalse(wikipedia.get(0).isPresent());
+      assertFalse(wikipedia.get(251).isPresent());
+      assertFalse(wikipedia.getByTitle("Article251").isPresent());
+
+      // Random access also works after iterating through the dump.
+      assertEquals(250, wikipedia.stream().count());
+      assertEquals(page(42), wikipedia.get(42).get());
+    }
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testRandomAccessWithoutIndex() throws IOException {
+    new WikipediaArticlesDump(new File("src/test/resources/article-stubs.xml.bz2")).get(1);
+  }
+
+  @Test
+  public void testReadBlockParallel() throws IOException {
+    // Small blocks, so that the dump spans many of them.
+    File dump = folder.newFile("dump.xml.bz2");
+    try (OutputStream out = new FileOutputStream(dump)) {
+      out.write('B');
+      out.write('Z');
+      try (OutputStream bz2 = new CBZip2OutputStream(out, 1)) {
+        bz2.write("<mediawiki>\n".getBytes(StandardCharsets.UTF_8));
+        for (int id = 1; id <= 2000; id++) {
+          bz2.write(page(id).getBytes(StandardCharsets.UTF_8));
+        }
+        bz2.write("</mediawiki>\n".getBytes(StandardCharsets.UTF_8));
+      }
+    }
+
+    List<String> expected = new WikipediaArticlesDump(dump, 1).stream()
+        .collect(Collectors.toList());
+    assertEquals(2000, expected.size());
+    assertEquals(page(1), expected.get(0));
+    assertEquals(page(2000), expected.get(1999));
+
+    for (int threads : new int[] {2, 4, 8}) {
+      assertEquals(expected, new WikipediaArticlesDump(dump, threads).stream()
+          .collect(Collectors.toList()));
+    }
+  }
+
+  @Test
+  public void testReadMultistreamWithoutIndex() throws IOException {
+    File dump = folder.newFile("multistream.xml.bz2");
+    File index = folder.newFile("multistream-index.txt.bz2");
+    writeMultistreamDump(dump, index, 250, 100);
+
+    for (int threads : new int[] {1, 4}) {
+      List<String> articles = new WikipediaArticlesDump(dump, threads).stream()
+          .collect(Collectors.toList());
+      assertEquals(250, articles.size());
+      for (int i = 0; i < articles.size(); i++) {
+        assertEquals(page(i + 1), articles.get(i));
+      }
+    }
+  }
+
+  @Test
+  public void testReadCompressionFormats() throws IOException {
+    StringBuilder xml = new StringBuilder("<mediawiki>\n");
+    for (int id = 1; id <= 50; id++) {
+      xml.append(page(id));
+    }
+    xml.append("</mediawiki>\n");
+    byte[] bytes = xml.toString().getBytes(StandardCharsets.UTF_8);
+
+    File plain = folder.newFile("dump.xml");
+    try (OutputStream out = new FileOutputStream(plain)) {
+      out.write(bytes);
+    }
+    File gzip = folder.newFile("dump.xml.gz");
+    try (OutputStream out = new GZIPOutputStream(new FileOutputStream(gzip))) {
+      out.write(bytes);
+    }
+    File xz = folder.newFile("dump.xml.xz");
+    try (OutputStream out = new XZOutputStream(new FileOutputStream(xz), new LZMA2Options())) {
+      out.write(bytes);
+    }
+    File bzip2 = folder.newFile("dump.xml.bz2");
+    try (OutputStream out = new FileOutputStream(bzip2)) {
+      writeStream(out, xml.toString());
+    }
+
+    assertEquals("xml", InputCodecs.detect(plain).getName());
+    assertEquals("gz", InputCodecs.detect(gzip).getName());
+    assertEquals("xz", InputCodecs.detect(xz).getName());
+    assertEquals("bz2", InputCodecs.detect(bzip2).getName());
+
+    for (File file : new File[] {plain, gzip, xz, bzip2}) {
+      List<String> articles = new WikipediaArticlesDump(file).stream()
+          .collect(Collectors.toList());
+      assertEquals(50, articles.size());
+      for (int i = 0; i < articles.size(); i++) {
+        assertEquals(page(i + 1), articles.get(i));
+      }
+    }
+
+    // A single uncompressed article, as in the cleaner tests.
+    Iterator<String> iter =
+        new WikipediaArticlesDump(new File("src/test/resources/enwiki-20120104-id12.xml")).iterator();
+    WikiClean cleaner = new WikiClean.Builder().build();
+    assertEquals("Anarchism", cleaner.getTitle(iter.next()));
+    assertFalse(iter.hasNext());
+  }
+
+  @Test(expected = IOException.class)
+  public void testReadUnknownFormat() throws IOException {
+    File file = folder.newFile("dump.bin");
+    try (OutputStream out = new FileOutputStream(file)) {
+      out.write(new byte[] {0, 1, 2, 3});
+    }
+    new WikipediaArticlesDump(file);
+  }
+
+  @Test
+  public void testReadWithFilter() throws IOException {
+    byte[] tag = "<id>7</id>".getBytes(StandardCharsets.UTF_8);
+    PageFilter filter = (bytes, offset, length) -> {
+      for (int i = offset; i + tag.length <= offset + length; i++) {
+        int j = 0;
+        while (j < tag.length && bytes[i + j] == tag[j]) {
+          j++;
+        }
+        if (j == tag.length) {
+          return false;
+        }
+      }
+      return true;
+    };
+
+    File dump = folder.newFile("multistream.xml.bz2");
+    File index = folder.newFile("multistream-index.txt.bz2");
+    writeMultistreamDump(dump, index, 10, 5);
+
+    List<String> articles = new WikipediaArticlesDump(dump).stream(filter)
+        .collect(Collectors.toList());
+    assertEquals(9, articles.size());
+    assertEquals(page(6), articles.get(5));
+    assertEquals(page(8), articles.get(6));
+  }
+
+  @Test
+  public void testReadPages() throws IOException {
+    List<Page> pages = new WikipediaArticlesDump(new File("src/test/resources/article-stubs.xml.bz2"))
+        .pages().collect(Collectors.toList());
+
+    assertEquals(5, pages.size());
+    for (int i = 0; i < pages.size(); i++) {
+      assertEquals(i + 1, pages.get(i).getId());
+      assertEquals("Article" + (i + 1), pages.get(i).getTitle());
+      assertEquals(0, pages.get(i).getNamespace());
+    }
+  }
+
+  // Dump of 3000 pages, large enough to span several read-ahead batches.
+  private File largeDump() throws IOException {
+    File dump = folder.newFile("dump.xml");
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 50; i++) {
+      text.append("Some '''text''' of the article.\n");
+    }
+    try (OutputStream out = new FileOutputStream(dump)) {
+      out.write("<mediawiki>\n".getBytes(StandardCharsets.UTF_8));
+      for (int id = 1; id <= 3000; id++) {
+        out.write(page(id).replace("</text>", text + "</text>").getBytes(StandardCharsets.UTF_8));
+      }
+      out.write("</mediawiki>\n".getBytes(StandardCharsets.UTF_8));
+    }
+    return dump;
+  }
+
+  @Test
+  public void testParallelStream() throws IOException {
+    File dump = largeDump();
+
+    List<String> expected = new ArrayList<>();
+    new WikipediaArticlesDump(dump).iterator().forEachRemaining(expected::add);
+    assertEquals(3000, expected.size());
+
+    assertEquals(expected, new WikipediaArticlesDump(dump).stream().collect(Collectors.toList()));
+    assertEquals(expected,
+        new WikipediaArticlesDump(dump).stream().parallel().collect(Collectors.toList()));
+
+    WikiClean cleaner = new WikiClean.Builder().build();
+    List<String> cleaned = new WikipediaArticlesDump(dump).pages().parallel()
+        .map(cleaner::clean).collect(Collectors.toList());
+    assertEquals(expected.stream().map(cleaner::clean).collect(Collectors.toList()), cleaned);
+
+    // Splits are whole batches of known size, handed out in order.
+    Spliterator<String> spliterator = new WikipediaArticlesDump(dump).spliterator();
+    Spliterator<String> prefix = spliterator.trySplit();
+    assertTrue(prefix.hasCharacteristics(Spliterator.SIZED));
+    long size = prefix.estimateSize();
+    assertTrue(size > 0 && size < 3000);
+    List<String> first = new ArrayList<>();
+    prefix.forEachRemaining(first::add);
+    assertEquals(expected.subList(0, (int) size), first);
+    assertTrue(spliterator.tryAdvance(s -> assertEquals(expected.get((int) size), s)));
+  }
+
+  private static Set<Thread> readers() {
+    return Thread.getAllStackTraces().keySet().stream()
+        .filter(t -> t.getName().equals("wikiclean-reader")).collect(Collectors.toSet());
+  }
+
+  @Test
+  public void testReadAheadStops() throws Exception {
+    File dump = largeDump();
+
+    // A stream that is neither closed nor consumed to the end stops reading ahead once it is
+    // garbage collected.
+    Set<Thread> before = readers();
+    assertEquals(1, new WikipediaArticlesDump(dump).pages().findFirst().get().getId());
+    Set<Thread> started = readers();
+    started.removeAll(before);
+    assertEquals(1, started.size());
+    Thread reader = started.iterator().next();
+    for (int i = 0; i < 100 && reader.isAlive(); i++) {
+      System.gc();
+      reader.join(100);
+    }
+    assertFalse(reader.isAlive());
+
+    // Closing the stream stops it right away.
+    before = readers();
+    try (Stream<Page> pages = new WikipediaArticlesDump(dump).pages()) {
+      assertEquals(2, pages.skip(1).findFirst().get().getId());
+      started = readers();
+    }
+    started.removeAll(before);
+    assertEquals(1, started.size());
+    reader = started.iterator().next();
+    reader.join(10000);
+    assertFalse(reader.isAlive());
+  }
+
+  @Test
+  public void testResume() throws IOException {
+    File plain = folder.newFile("dump.xml");
+    File bz2 = folder.newFile("dump.xml.bz2");
+    try (OutputStream out = new FileOutputStream(plain)) {
+      out.write("<mediawiki>\n".getBytes(StandardCharsets.UTF_8));
+      for (int id = 1; id <= 500; id++) {
+        out.write(page(id).getBytes(StandardCharsets.UTF_8));
+      }
+      out.write("</mediawiki>\n".getBytes(StandardCharsets.UTF_8));
+    }
+    try (OutputStream out = new FileOutputStream(bz2)) {
+      out.write('B');
+      out.write('Z');
+      try (OutputStream compressed = new CBZip2OutputStream(out, 1)) {
+        compressed.write(Files.readAllBytes(plain.toPath()));
+      }
+    }
+    File multistream = folder.newFile("multistream.xml.bz2");
+    File index = folder.newFile("multistream-index.txt");
+    writeMultistreamDump(multistream, index, 500, 100);
+
+    for (int stop : new int[] {0, 1, 99, 100, 101, 333, 500}) {
+      for (int threads : new int[] {1, 4}) {
+        assertResume(() -> new WikipediaArticlesDump(plain, threads), stop);
+        assertResume(() -> new WikipediaArticlesDump(bz2, threads), stop);
+        assertResume(() -> new WikipediaArticlesDump(multistream, index, threads), stop);
+      }
+    }
+  }
+
+  private interface DumpSupplier {
+    WikipediaArticlesDump open() throws IOException;
+  }
+
+  // Reads some pages, takes a checkpoint, and checks that resuming reads the remaining ones.
+  private static void assertResume(DumpSupplier dumps, int stop) throws IOException {
+    List<String> pages = new ArrayList<>();
+    DumpCheckpoint checkpoint;
+    try (WikipediaArticlesDump dump = dumps.open()) {
+      Iterator<String> iterator = dump.iterator();
+      for (int i = 0; i < stop; i++) {
+        pages.add(iterator.next());
+      }
+      checkpoint = dump.checkpoint();
+    }
+    assertEquals(stop, checkpoint.getPages());
+    assertEquals(stop == 0 ? -1 : stop, checkpoint.getPageId());
+
+    try (WikipediaArticlesDump dump = dumps.open()) {
+      dump.resume(checkpoint);
+      dump.pages().forEach(page -> {
+        pages.add(page(pages.size() + 1));
+        assertEquals(pages.size(), page.getId());
+      });
+      assertEquals(500, dump.checkpoint().getPages());
+    }
+    assertEquals(500, pages.size());
+    for (int i = 0; i < stop; i++) {
+      assertEquals(page(i + 1), pages.get(i));
+    }
+  }
+
+  // Writes a multistream dump in the same layout as the official dumps: a header stream with the
+  // siteinfo, one bz2 stream per block of pages, and a trailing stream with the closing tag.
+  static void writeMultistreamDump(File dump, File index, int pages, int pagesPerStream)
+      throws IOException {
+    StringBuilder indexLines = new StringBuilder();
+    try (OutputStream out = new FileOutputStream(dump)) {
+      long offset = 0;
+      offset += writeStream(out, "<mediawiki>\n  <siteinfo>\n    <sitename>Test</sitename>\n" +
+          "  </siteinfo>\n");
+
+      for (int start = 1; start <= pages; start += pagesPerStream) {
+        StringBuilder block = new StringBuilder();
+        for (int id = start; id < Math.min(start + pagesPerStream, pages + 1); id++) {
+          block.append(page(id));
+          indexLines.append(offset).append(':').append(id).append(":Article").append(id)
+              .append('\n');
+        }
+        offset += writeStream(out, block.toString());
+      }
+
+      writeStream(out, "</mediawiki>\n");
+    }
+
+    try (OutputStream out = new FileOutputStream(index)) {
+      writeStream(out, indexLines.toString());
+    }
+  }
+
+  static String page(int id) {
+    return "  <page>\n" +
+        "    <title>Article" + id + "</title>\n" +
+        "    <ns>0</ns>\n" +
+        "    <id>" + id + "</id>\n" +
+        "    <revision>\n" +
+        "      <id>" + (1000 + id) + "</id>\n" +
+        "      <text xml:space=\"preserve\">Text of '''article''' " + id + ".</text>\n" +
+        "    </revision>\n" +
+        "  </page>\n";
+  }
+
+  static long writeStream(OutputStream out, String s) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    bytes.write('B');
+    bytes.write('Z');
+    try (OutputStream bz2 = new CBZip2OutputStream(bytes)) {
+      bz2.write(s.getBytes(StandardCharsets.UTF_8));
+    }
+    bytes.writeTo(out);
+    return bytes.size();
+  }
 }